@@ -0,0 +1,134 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.crio.qeats.models.RestaurantEntity;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fixed-schema binary layout of a list of restaurants:
+ * count, then per restaurant a bit mask of the non-null fields followed by those fields in
+ * declaration order. Strings are modified UTF-8 as written by {@link DataOutputStream#writeUTF},
+ * coordinates are raw doubles and attributes are a count followed by strings.
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+  public static final String NAME = "binary";
+
+  private static final int ID = 1;
+  private static final int RESTAURANT_ID = 1 << 1;
+  private static final int NAME_FIELD = 1 << 2;
+  private static final int CITY = 1 << 3;
+  private static final int IMAGE_URL = 1 << 4;
+  private static final int LATITUDE = 1 << 5;
+  private static final int LONGITUDE = 1 << 6;
+  private static final int OPENS_AT = 1 << 7;
+  private static final int CLOSES_AT = 1 << 8;
+  private static final int ATTRIBUTES = 1 << 9;
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte id() {
+    return 2;
+  }
+
+  @Override
+  public void write(List<RestaurantEntity> restaurantEntities, OutputStream out)
+      throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(restaurantEntities.size());
+    for (RestaurantEntity restaurantEntity : restaurantEntities) {
+      int present = (restaurantEntity.getId() != null ? ID : 0)
+          | (restaurantEntity.getRestaurantId() != null ? RESTAURANT_ID : 0)
+          | (restaurantEntity.getName() != null ? NAME_FIELD : 0)
+          | (restaurantEntity.getCity() != null ? CITY : 0)
+          | (restaurantEntity.getImageUrl() != null ? IMAGE_URL : 0)
+          | (restaurantEntity.getLatitude() != null ? LATITUDE : 0)
+          | (restaurantEntity.getLongitude() != null ? LONGITUDE : 0)
+          | (restaurantEntity.getOpensAt() != null ? OPENS_AT : 0)
+          | (restaurantEntity.getClosesAt() != null ? CLOSES_AT : 0)
+          | (restaurantEntity.getAttributes() != null ? ATTRIBUTES : 0);
+      data.writeShort(present);
+      writeString(data, restaurantEntity.getId());
+      writeString(data, restaurantEntity.getRestaurantId());
+      writeString(data, restaurantEntity.getName());
+      writeString(data, restaurantEntity.getCity());
+      writeString(data, restaurantEntity.getImageUrl());
+      if (restaurantEntity.getLatitude() != null) {
+        data.writeDouble(restaurantEntity.getLatitude());
+      }
+      if (restaurantEntity.getLongitude() != null) {
+        data.writeDouble(restaurantEntity.getLongitude());
+      }
+      writeString(data, restaurantEntity.getOpensAt());
+      writeString(data, restaurantEntity.getClosesAt());
+      if (restaurantEntity.getAttributes() != null) {
+        data.writeShort(restaurantEntity.getAttributes().size());
+        for (String attribute : restaurantEntity.getAttributes()) {
+          data.writeUTF(attribute);
+        }
+      }
+    }
+    data.flush();
+  }
+
+  @Override
+  public List<RestaurantEntity> read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    int count = data.readInt();
+    List<RestaurantEntity> restaurantEntities = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int present = data.readUnsignedShort();
+      RestaurantEntity restaurantEntity = new RestaurantEntity();
+      restaurantEntity.setId(readString(data, present, ID));
+      restaurantEntity.setRestaurantId(readString(data, present, RESTAURANT_ID));
+      restaurantEntity.setName(readString(data, present, NAME_FIELD));
+      restaurantEntity.setCity(readString(data, present, CITY));
+      restaurantEntity.setImageUrl(readString(data, present, IMAGE_URL));
+      restaurantEntity.setLatitude((present & LATITUDE) != 0 ? data.readDouble() : null);
+      restaurantEntity.setLongitude((present & LONGITUDE) != 0 ? data.readDouble() : null);
+      restaurantEntity.setOpensAt(readString(data, present, OPENS_AT));
+      restaurantEntity.setClosesAt(readString(data, present, CLOSES_AT));
+      if ((present & ATTRIBUTES) != 0) {
+        int attributeCount = data.readUnsignedShort();
+        List<String> attributes = new ArrayList<>(attributeCount);
+        for (int j = 0; j < attributeCount; j++) {
+          attributes.add(data.readUTF());
+        }
+        restaurantEntity.setAttributes(attributes);
+      } else {
+        restaurantEntity.setAttributes(null);
+      }
+      restaurantEntities.add(restaurantEntity);
+    }
+    return restaurantEntities;
+  }
+
+  private static void writeString(DataOutputStream data, String value) throws IOException {
+    if (value != null) {
+      data.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream data, int present, int field)
+      throws IOException {
+    return (present & field) != 0 ? data.readUTF() : null;
+  }
+
+}
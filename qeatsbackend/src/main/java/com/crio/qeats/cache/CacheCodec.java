@@ -0,0 +1,37 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.crio.qeats.models.RestaurantEntity;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Wire format of a cached list of restaurants.
+ * Implementations are picked up by {@link CacheSerializer}, which selects the one used for
+ * writing through qeats.cache.codec and tags every payload with {@link #id()} so entries written
+ * with another codec can still be read.
+ */
+public interface CacheCodec {
+
+  /**
+   * Name used to select this codec through qeats.cache.codec.
+   */
+  String name();
+
+  /**
+   * Identifier stored in the payload header; must be unique, stable and within 1 to 127.
+   */
+  byte id();
+
+  void write(List<RestaurantEntity> restaurantEntities, OutputStream out) throws IOException;
+
+  List<RestaurantEntity> read(InputStream in) throws IOException;
+
+}
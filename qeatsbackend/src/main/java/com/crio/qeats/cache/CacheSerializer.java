@@ -0,0 +1,115 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.crio.qeats.models.RestaurantEntity;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns cached restaurant lists into Redis values and back.
+ * A value is one header byte followed by the body written by a {@link CacheCodec}. The low seven
+ * bits of the header are the codec id and the high bit tells whether the body is deflated, which
+ * only happens once the body is larger than qeats.cache.compression-threshold-bytes.
+ */
+@Component
+public class CacheSerializer {
+
+  private static final int COMPRESSED = 0x80;
+  private static final int CODEC_ID_MASK = 0x7f;
+
+  @Autowired
+  private List<CacheCodec> cacheCodecs;
+
+  @Value("${qeats.cache.codec:" + BinaryCacheCodec.NAME + "}")
+  private String codecName;
+
+  @Value("${qeats.cache.compression-threshold-bytes:4096}")
+  private int compressionThresholdInBytes;
+
+  private CacheCodec writeCodec;
+  private final Map<Byte, CacheCodec> codecsById = new HashMap<>();
+
+  @PostConstruct
+  public void init() {
+    for (CacheCodec cacheCodec : cacheCodecs) {
+      if (codecsById.put(cacheCodec.id(), cacheCodec) != null) {
+        throw new IllegalStateException("Duplicate cache codec id " + cacheCodec.id());
+      }
+      if (cacheCodec.name().equals(codecName)) {
+        writeCodec = cacheCodec;
+      }
+    }
+    if (writeCodec == null) {
+      throw new IllegalStateException("Unknown qeats.cache.codec " + codecName);
+    }
+  }
+
+  public byte[] serialize(List<RestaurantEntity> restaurantEntities) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    writeCodec.write(restaurantEntities, body);
+
+    if (body.size() <= compressionThresholdInBytes) {
+      ByteArrayOutputStream value = new ByteArrayOutputStream(body.size() + 1);
+      value.write(writeCodec.id());
+      body.writeTo(value);
+      return value.toByteArray();
+    }
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(body.toByteArray());
+      deflater.finish();
+      ByteArrayOutputStream value = new ByteArrayOutputStream(body.size() / 2);
+      value.write(writeCodec.id() | COMPRESSED);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        value.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return value.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  public List<RestaurantEntity> deserialize(byte[] value) throws IOException {
+    if (value.length == 0) {
+      throw new IOException("Empty cache value");
+    }
+    int header = value[0] & 0xff;
+    CacheCodec cacheCodec = codecsById.get((byte) (header & CODEC_ID_MASK));
+    if (cacheCodec == null) {
+      throw new IOException("Unknown cache codec id " + (header & CODEC_ID_MASK));
+    }
+
+    InputStream body = new ByteArrayInputStream(value, 1, value.length - 1);
+    if ((header & COMPRESSED) == 0) {
+      return cacheCodec.read(body);
+    }
+    Inflater inflater = new Inflater();
+    try (InputStream inflated =
+        new BufferedInputStream(new InflaterInputStream(body, inflater))) {
+      return cacheCodec.read(inflated);
+    } finally {
+      inflater.end();
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.crio.qeats.models.RestaurantEntity;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.stereotype.Component;
+
+/**
+ * Restaurants as JSON arrays of positional values, e.g.
+ * [["5c...","10","A2B","Bengaluru",null,20.0,30.0,"18:00","23:00",["Tamil"]]].
+ * Kept as a human-readable fallback for {@link BinaryCacheCodec}.
+ */
+@Component
+public class JsonRowCacheCodec implements CacheCodec {
+
+  public static final String NAME = "json";
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+      .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte id() {
+    return 1;
+  }
+
+  @Override
+  public void write(List<RestaurantEntity> restaurantEntities, OutputStream out)
+      throws IOException {
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      generator.writeStartArray();
+      for (RestaurantEntity restaurantEntity : restaurantEntities) {
+        generator.writeStartArray();
+        generator.writeString(restaurantEntity.getId());
+        generator.writeString(restaurantEntity.getRestaurantId());
+        generator.writeString(restaurantEntity.getName());
+        generator.writeString(restaurantEntity.getCity());
+        generator.writeString(restaurantEntity.getImageUrl());
+        writeNumber(generator, restaurantEntity.getLatitude());
+        writeNumber(generator, restaurantEntity.getLongitude());
+        generator.writeString(restaurantEntity.getOpensAt());
+        generator.writeString(restaurantEntity.getClosesAt());
+        generator.writeStartArray();
+        if (restaurantEntity.getAttributes() != null) {
+          for (String attribute : restaurantEntity.getAttributes()) {
+            generator.writeString(attribute);
+          }
+        }
+        generator.writeEndArray();
+        generator.writeEndArray();
+      }
+      generator.writeEndArray();
+    }
+  }
+
+  @Override
+  public List<RestaurantEntity> read(InputStream in) throws IOException {
+    List<RestaurantEntity> restaurantEntities = new ArrayList<>();
+    try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+      expect(parser.nextToken(), JsonToken.START_ARRAY);
+      while (parser.nextToken() == JsonToken.START_ARRAY) {
+        RestaurantEntity restaurantEntity = new RestaurantEntity();
+        restaurantEntity.setId(nextString(parser));
+        restaurantEntity.setRestaurantId(nextString(parser));
+        restaurantEntity.setName(nextString(parser));
+        restaurantEntity.setCity(nextString(parser));
+        restaurantEntity.setImageUrl(nextString(parser));
+        restaurantEntity.setLatitude(nextNumber(parser));
+        restaurantEntity.setLongitude(nextNumber(parser));
+        restaurantEntity.setOpensAt(nextString(parser));
+        restaurantEntity.setClosesAt(nextString(parser));
+        expect(parser.nextToken(), JsonToken.START_ARRAY);
+        List<String> attributes = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+          attributes.add(parser.getText());
+        }
+        restaurantEntity.setAttributes(attributes);
+        expect(parser.nextToken(), JsonToken.END_ARRAY);
+        restaurantEntities.add(restaurantEntity);
+      }
+    }
+    return restaurantEntities;
+  }
+
+  private static void writeNumber(JsonGenerator generator, Double value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else {
+      generator.writeNumber(value);
+    }
+  }
+
+  private static String nextString(JsonParser parser) throws IOException {
+    return parser.nextToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+  }
+
+  private static Double nextNumber(JsonParser parser) throws IOException {
+    return parser.nextToken() == JsonToken.VALUE_NULL ? null : parser.getDoubleValue();
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+    if (actual != expected) {
+      throw new IOException("Expected " + expected + " but found " + actual);
+    }
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.crio.qeats.exchanges.GetMenuResponse;
+import com.crio.qeats.services.MenuService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache of the encoded GET /menu responses, keyed by restaurantId.
+ * A miss loads the menu through {@link MenuService} and encodes it once, so hits write the cached
+ * bytes as they are. Concurrent misses of one restaurant share a single load, and restaurants
+ * without a menu are cached too. The ETag is a hash of the bytes, so every instance hands out
+ * the same tag for the same menu. Entries are dropped when CatalogSync sees a menu change, and
+ * expire after qeats.menu.cache.ttl-seconds in case syncing is off.
+ */
+@Component
+public class MenuResponseCache {
+
+  @Autowired
+  private MenuService menuService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.menu.cache.maximum-size:10000}")
+  private long maximumSize;
+
+  @Value("${qeats.menu.cache.ttl-seconds:300}")
+  private long ttlInSeconds;
+
+  private LoadingCache<String, Optional<EncodedMenu>> menus;
+
+  @PostConstruct
+  public void init() {
+    menus = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build(CacheLoader.from(this::load));
+    GuavaCacheMetrics.monitor(meterRegistry, menus, "menu.responses");
+  }
+
+  /**
+   * Get the encoded menu response of the given restaurant, loading it on a miss.
+   * @return the response, or null if the restaurant has no menu
+   */
+  public EncodedMenu get(String restaurantId) {
+    try {
+      return menus.getUnchecked(restaurantId).orElse(null);
+    } catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  public void invalidate(String restaurantId) {
+    menus.invalidate(restaurantId);
+  }
+
+  public void invalidateAll() {
+    menus.invalidateAll();
+  }
+
+  private Optional<EncodedMenu> load(String restaurantId) {
+    GetMenuResponse getMenuResponse = menuService.findMenu(restaurantId);
+    if (getMenuResponse == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(new EncodedMenu(objectMapper.writeValueAsBytes(getMenuResponse)));
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * A GET /menu response body in UTF-8 JSON, with its strong ETag.
+   */
+  public static final class EncodedMenu {
+
+    private final byte[] body;
+    private final String etag;
+
+    EncodedMenu(byte[] body) {
+      this.body = body;
+      this.etag = "\"" + Hashing.murmur3_128().hashBytes(body) + "\"";
+    }
+
+    // Shared by every hit; callers must not modify it.
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * Checks an If-None-Match header against the ETag, with the weak comparison RFC 7232 asks
+     * for, so "*", lists of tags and W/ prefixes are understood.
+     */
+    public boolean matches(String ifNoneMatch) {
+      if (ifNoneMatch == null) {
+        return false;
+      }
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals("*") || tag.equals(etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,584 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.configs.CacheDestroyedEvent;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.globals.GlobalConstants;
+import com.crio.qeats.models.RestaurantEntity;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Response;
+
+/**
+ * Two-tier cache of nearby candidates, keyed by geohash cell, serving radius and open-hours
+ * bucket. An entry only holds the restaurants that can be within the radius of some point of the
+ * cell and that are open at some point of the bucket, so a hit costs work proportional to the
+ * number of results.
+ * The first tier is a bounded in-process cache, so hot cells are served without touching the
+ * network. The second tier is Redis, where values are written by {@link CacheSerializer}.
+ * In-process entries are dropped when a message arrives on
+ * {@link #INVALIDATION_CHANNEL}.
+ * Dropping everything bumps a generation counter kept in Redis that is part of every Redis key,
+ * so old entries are never read again and simply expire, without scanning for them. Redis keys
+ * are also listed per geohash-5 region, so {@link #invalidateAround} drops only the cells near a
+ * changed restaurant.
+ * {@link #getOrLoad} protects expiring keys from stampedes: concurrent misses of a key in one JVM
+ * share a single load, a lock in Redis lets one instance load a key while the others wait for
+ * its result, and hot keys are refreshed shortly before they expire with a probability growing
+ * as expiry approaches and with the time the last load took (XFetch), so most never miss.
+ */
+@Component
+@Log4j2
+public class NearbyRestaurantCache {
+
+  public static final int GEOHASH_PRECISION = 7;
+  public static final int OPEN_HOURS_BUCKET_IN_MINUTES = 30;
+
+  // Publish a cache key to drop that entry everywhere, a key prefix followed by * to drop every
+  // key starting with it, or INVALIDATE_ALL to drop everything.
+  public static final String INVALIDATION_CHANNEL = "nearby:invalidations";
+  public static final String INVALIDATE_ALL = "*";
+
+  static final String GENERATION_KEY = "nearby:generation";
+  // Sets of the Redis keys cached for the cells of each region, which is a geohash prefix.
+  static final String REGION_KEY_PREFIX = "nearby:region:";
+  static final int REGION_PRECISION = 5;
+
+  private static final String KEY_PREFIX = "nearby:";
+  private static final String WILDCARD = "*";
+  private static final double EARTH_RADIUS_IN_KMS = 6371.0;
+  // Geohash-5 cells are 180 / 2^12 degrees high and 360 / 2^13 degrees wide.
+  private static final double REGION_SIZE_IN_DEGREES = 180.0 / (1 << 12);
+  private static final String DELTA_SUFFIX = ":delta";
+  private static final String LOCK_SUFFIX = ":lock";
+  private static final long RESUBSCRIBE_DELAY_IN_MILLIS = 5000;
+  private static final long LOCK_POLL_INTERVAL_IN_MILLIS = 20;
+
+  // Deletes the lock only if it still holds our token, so an expired lock taken over by another
+  // instance is left alone.
+  private static final String RELEASE_LOCK_SCRIPT =
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) "
+          + "else return 0 end";
+
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private CacheSerializer cacheSerializer;
+
+  @Autowired
+  private RedisAccessor redisAccessor;
+
+  @Value("${qeats.cache.local.maximum-size:10000}")
+  private long localMaximumSize;
+
+  @Value("${qeats.cache.local.ttl-seconds:60}")
+  private long localTtlInSeconds;
+
+  @Value("${qeats.cache.redis.ttl-seconds:" + GlobalConstants.REDIS_ENTRY_EXPIRY_IN_SECONDS + "}")
+  private int redisTtlInSeconds;
+
+  // Upper bound of a load; other instances wait this long for the lock holder's result.
+  @Value("${qeats.cache.lock-timeout-ms:3000}")
+  private long lockTimeoutInMillis;
+
+  // Eagerness of early refreshes, 0 disables them.
+  @Value("${qeats.cache.early-refresh-beta:1.0}")
+  private double earlyRefreshBeta;
+
+  // Off only where no Redis is listening, such as in unit tests.
+  @Value("${qeats.cache.local.invalidation-listener:true}")
+  private boolean invalidationListenerEnabled;
+
+  private Cache<String, List<RestaurantEntity>> localCache;
+  private Counter remoteHits;
+  private Counter remoteMisses;
+  private Counter missLoads;
+  private Counter earlyRefreshLoads;
+  private Counter localWaits;
+  private Counter remoteWaits;
+  private final ConcurrentMap<String, CompletableFuture<List<RestaurantEntity>>> loadsInFlight =
+      new ConcurrentHashMap<>();
+  private volatile long generation;
+
+  private volatile boolean listening;
+  private volatile JedisPubSub invalidationSubscriber;
+  private Thread invalidationListener;
+
+  @PostConstruct
+  public void init() {
+    localCache = CacheBuilder.newBuilder()
+        .maximumSize(localMaximumSize)
+        .expireAfterWrite(localTtlInSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+    GuavaCacheMetrics.monitor(meterRegistry, localCache, "nearby.local");
+    // Same meter name and tags as the local tier, so hit ratios of both tiers read alike.
+    remoteHits = Counter.builder("cache.gets").tag("cache", "nearby.redis")
+        .tag("result", "hit").register(meterRegistry);
+    remoteMisses = Counter.builder("cache.gets").tag("cache", "nearby.redis")
+        .tag("result", "miss").register(meterRegistry);
+    missLoads = Counter.builder("cache.loads").tag("cache", "nearby.redis")
+        .tag("reason", "miss").register(meterRegistry);
+    earlyRefreshLoads = Counter.builder("cache.loads").tag("cache", "nearby.redis")
+        .tag("reason", "early-refresh").register(meterRegistry);
+    // Callers served by another caller's load instead of loading themselves.
+    localWaits = Counter.builder("cache.coalesced").tag("cache", "nearby.redis")
+        .tag("scope", "jvm").register(meterRegistry);
+    remoteWaits = Counter.builder("cache.coalesced").tag("cache", "nearby.redis")
+        .tag("scope", "cluster").register(meterRegistry);
+
+    if (invalidationListenerEnabled) {
+      listening = true;
+      invalidationListener = new Thread(this::listenForInvalidations,
+          "nearby-cache-invalidations");
+      invalidationListener.setDaemon(true);
+      invalidationListener.start();
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    listening = false;
+    JedisPubSub subscriber = invalidationSubscriber;
+    if (subscriber != null && subscriber.isSubscribed()) {
+      subscriber.unsubscribe();
+    }
+    if (invalidationListener != null) {
+      invalidationListener.interrupt();
+    }
+  }
+
+  /**
+   * Get the cache key for a user location.
+   * @return key of the form nearby:{geohash}:{radius}:{bucket}
+   */
+  public static String keyOf(GeoHash cell, Double servingRadiusInKms, LocalTime currentTime) {
+    return KEY_PREFIX + cell.toBase32() + ":" + servingRadiusInKms + ":"
+        + bucketOf(currentTime);
+  }
+
+  public static int bucketOf(LocalTime time) {
+    return time.toSecondOfDay() / (OPEN_HOURS_BUCKET_IN_MINUTES * 60);
+  }
+
+  public static LocalTime bucketStart(int bucket) {
+    return LocalTime.ofSecondOfDay((long) bucket * OPEN_HOURS_BUCKET_IN_MINUTES * 60);
+  }
+
+  /**
+   * Get the candidates for the given key from the in-process tier only.
+   * @return candidates, or null if not cached in this JVM
+   */
+  public List<RestaurantEntity> getLocal(String key) {
+    return localCache.getIfPresent(key);
+  }
+
+  /**
+   * Get the candidates for the given key from Redis, and keep them in the in-process tier.
+   * @return candidates, or null on a cache miss or unreadable entry
+   */
+  public List<RestaurantEntity> get(String key) {
+    return decode(key, redisAccessor.mget(Collections.singletonList(
+        versionedKey(key).getBytes(StandardCharsets.UTF_8))).get(0));
+  }
+
+  /**
+   * Get the candidates for the given key from Redis, loading and storing them on a miss or when
+   * the entry is due for an early refresh. At most one load per key runs in this JVM at a time,
+   * and across instances only the holder of the key's lock loads it.
+   * @return the candidates, which must not be modified
+   */
+  public List<RestaurantEntity> getOrLoad(String key, Supplier<List<RestaurantEntity>> loader) {
+    CompletableFuture<List<RestaurantEntity>> load = new CompletableFuture<>();
+    CompletableFuture<List<RestaurantEntity>> inFlight = loadsInFlight.putIfAbsent(key, load);
+    if (inFlight != null) {
+      localWaits.increment();
+      try {
+        return inFlight.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+    try {
+      List<RestaurantEntity> candidates = readOrLoad(key, loader);
+      load.complete(candidates);
+      return candidates;
+    } catch (RuntimeException e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loadsInFlight.remove(key, load);
+    }
+  }
+
+  private List<RestaurantEntity> readOrLoad(String key, Supplier<List<RestaurantEntity>> loader) {
+    Entry entry = read(key);
+    if (entry != null && !isDueForRefresh(entry)) {
+      return entry.candidates;
+    }
+
+    String lockKey = versionedKey(key) + LOCK_SUFFIX;
+    String token = UUID.randomUUID().toString();
+    if (tryLock(lockKey, token)) {
+      try {
+        if (entry == null) {
+          // The previous holder may have stored the entry and released the lock in between.
+          entry = read(key);
+          if (entry != null) {
+            return entry.candidates;
+          }
+        }
+        (entry == null ? missLoads : earlyRefreshLoads).increment();
+        return load(key, loader);
+      } finally {
+        unlock(lockKey, token);
+      }
+    }
+    if (entry != null) {
+      // Another instance is refreshing the entry, which is still valid meanwhile.
+      return entry.candidates;
+    }
+
+    remoteWaits.increment();
+    long deadline = System.currentTimeMillis() + lockTimeoutInMillis;
+    while (System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(LOCK_POLL_INTERVAL_IN_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      entry = read(key);
+      if (entry != null) {
+        return entry.candidates;
+      }
+    }
+    // The lock holder failed or is too slow, rather than failing the request load it here.
+    missLoads.increment();
+    return load(key, loader);
+  }
+
+  private List<RestaurantEntity> load(String key, Supplier<List<RestaurantEntity>> loader) {
+    long start = System.nanoTime();
+    List<RestaurantEntity> candidates = loader.get();
+    long deltaInMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return put(key, candidates, deltaInMillis);
+  }
+
+  // XFetch: refresh when now - delta * beta * ln(rand) reaches the expiry, rand in (0, 1].
+  private boolean isDueForRefresh(Entry entry) {
+    if (entry.deltaInMillis <= 0 || entry.ttlInMillis < 0) {
+      return false;
+    }
+    double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+    return -entry.deltaInMillis * earlyRefreshBeta * Math.log(random) >= entry.ttlInMillis;
+  }
+
+  private Entry read(String key) {
+    String versionedKey = versionedKey(key);
+    List<Response<?>> responses = new ArrayList<>();
+    redisAccessor.pipelined("get", pipeline -> {
+      responses.add(pipeline.get(versionedKey.getBytes(StandardCharsets.UTF_8)));
+      responses.add(pipeline.pttl(versionedKey));
+      responses.add(pipeline.get(versionedKey + DELTA_SUFFIX));
+    });
+    List<RestaurantEntity> candidates = decode(key, (byte[]) responses.get(0).get());
+    if (candidates == null) {
+      return null;
+    }
+    Long ttlInMillis = (Long) responses.get(1).get();
+    String deltaInMillis = (String) responses.get(2).get();
+    try {
+      return new Entry(candidates, ttlInMillis == null ? -1 : ttlInMillis,
+          deltaInMillis == null ? 0 : Long.parseLong(deltaInMillis));
+    } catch (NumberFormatException e) {
+      log.warn("Ignoring load time of {}: {}", key, e.getMessage());
+      return new Entry(candidates, -1, 0);
+    }
+  }
+
+  // Also keeps decoded candidates in the in-process tier.
+  private List<RestaurantEntity> decode(String key, byte[] value) {
+    if (value == null) {
+      remoteMisses.increment();
+      return null;
+    }
+    remoteHits.increment();
+    try {
+      List<RestaurantEntity> candidates = Collections.unmodifiableList(
+          cacheSerializer.deserialize(value));
+      localCache.put(key, candidates);
+      return candidates;
+    } catch (IOException e) {
+      log.warn("Unreadable cache entry {}: {}", key, e.getMessage());
+      return null;
+    }
+  }
+
+  private boolean tryLock(String lockKey, String token) {
+    return "OK".equals(redisAccessor.execute("set-nx",
+        jedis -> jedis.set(lockKey, token, "NX", "PX", lockTimeoutInMillis)));
+  }
+
+  private void unlock(String lockKey, String token) {
+    try {
+      redisAccessor.execute("eval", jedis -> jedis.eval(RELEASE_LOCK_SCRIPT,
+          Collections.singletonList(lockKey), Collections.singletonList(token)));
+    } catch (Exception e) {
+      // The lock expires on its own.
+      log.debug("Lock {} not released: {}", lockKey, e.getMessage());
+    }
+  }
+
+  /**
+   * Stores the candidates in the in-process tier only.
+   * @return the candidates as stored, which must not be modified
+   */
+  public List<RestaurantEntity> putLocal(String key, List<RestaurantEntity> candidates) {
+    List<RestaurantEntity> stored = Collections.unmodifiableList(new ArrayList<>(candidates));
+    localCache.put(key, stored);
+    return stored;
+  }
+
+  /**
+   * Stores the candidates in both tiers.
+   * @return the candidates as stored, which must not be modified
+   */
+  public List<RestaurantEntity> put(String key, List<RestaurantEntity> candidates) {
+    return put(key, candidates, 0);
+  }
+
+  // A known load time is stored next to the entry, with the same expiry, for early refreshes.
+  private List<RestaurantEntity> put(String key, List<RestaurantEntity> candidates,
+      long deltaInMillis) {
+    String versionedKey = versionedKey(key);
+    try {
+      List<byte[]> keys = new ArrayList<>();
+      List<byte[]> values = new ArrayList<>();
+      keys.add(versionedKey.getBytes(StandardCharsets.UTF_8));
+      values.add(cacheSerializer.serialize(candidates));
+      if (deltaInMillis > 0) {
+        keys.add((versionedKey + DELTA_SUFFIX).getBytes(StandardCharsets.UTF_8));
+        values.add(Long.toString(deltaInMillis).getBytes(StandardCharsets.UTF_8));
+      }
+      // Spread expiries, so entries written together do not all expire together.
+      int ttlInSeconds = redisTtlInSeconds
+          + ThreadLocalRandom.current().nextInt(redisTtlInSeconds / 10 + 1);
+      redisAccessor.setex(keys, values, ttlInSeconds);
+      String region = regionOf(key);
+      if (region != null) {
+        String regionKey = REGION_KEY_PREFIX + region;
+        redisAccessor.pipelined("sadd", pipeline -> {
+          pipeline.sadd(regionKey, versionedKey);
+          pipeline.expire(regionKey, redisTtlInSeconds + redisTtlInSeconds / 10 + 1);
+        });
+      }
+    } catch (IOException e) {
+      log.warn("Cache entry {} not written to Redis: {}", key, e.getMessage());
+    }
+    return putLocal(key, candidates);
+  }
+
+  /**
+   * Drops the given key, or every key for {@link #INVALIDATE_ALL}, from Redis and from the
+   * in-process tier of every instance.
+   */
+  public void invalidate(String key) {
+    redisAccessor.execute("invalidate", jedis -> {
+      if (INVALIDATE_ALL.equals(key)) {
+        generation = jedis.incr(GENERATION_KEY);
+      } else {
+        String versionedKey = versionedKey(key);
+        jedis.del(versionedKey, versionedKey + DELTA_SUFFIX);
+      }
+      return jedis.publish(INVALIDATION_CHANNEL, key);
+    });
+    invalidateLocal(key);
+  }
+
+  /**
+   * Drops, from Redis and from the in-process tier of every instance, the keys of every cell that
+   * has a point within the given radius of the given location, which are the only cells a
+   * restaurant there can be a candidate of.
+   */
+  public void invalidateAround(double latitude, double longitude, double radiusInKms) {
+    Set<String> regions = regionsAround(latitude, longitude, radiusInKms);
+    redisAccessor.execute("invalidate", jedis -> {
+      for (String region : regions) {
+        String regionKey = REGION_KEY_PREFIX + region;
+        List<String> staleKeys = new ArrayList<>();
+        staleKeys.add(regionKey);
+        for (String versionedKey : jedis.smembers(regionKey)) {
+          staleKeys.add(versionedKey);
+          staleKeys.add(versionedKey + DELTA_SUFFIX);
+        }
+        jedis.del(staleKeys.toArray(new String[0]));
+        jedis.publish(INVALIDATION_CHANNEL, KEY_PREFIX + region + WILDCARD);
+      }
+      return null;
+    });
+    for (String region : regions) {
+      invalidateLocal(KEY_PREFIX + region + WILDCARD);
+    }
+  }
+
+  // Geohash-5 regions overlapping the bounding box of the circle, found by sampling the box at
+  // steps no larger than a region, edges included.
+  static Set<String> regionsAround(double latitude, double longitude, double radiusInKms) {
+    double latitudeDelta = Math.toDegrees(radiusInKms / EARTH_RADIUS_IN_KMS);
+    double widestLatitude = Math.min(89.9, Math.abs(latitude) + latitudeDelta);
+    double longitudeDelta = Math.min(180, latitudeDelta / Math.cos(Math.toRadians(widestLatitude)));
+    double lastLatitude = Math.min(90, latitude + latitudeDelta);
+    double lastLongitude = longitude + longitudeDelta;
+
+    Set<String> regions = new TreeSet<>();
+    double sampleLatitude = Math.max(-90, latitude - latitudeDelta);
+    while (true) {
+      double sampleLongitude = longitude - longitudeDelta;
+      while (true) {
+        double wrappedLongitude = (sampleLongitude + 540) % 360 - 180;
+        regions.add(GeoHash.withCharacterPrecision(sampleLatitude, wrappedLongitude,
+            REGION_PRECISION).toBase32());
+        if (sampleLongitude >= lastLongitude) {
+          break;
+        }
+        sampleLongitude = Math.min(lastLongitude, sampleLongitude + REGION_SIZE_IN_DEGREES);
+      }
+      if (sampleLatitude >= lastLatitude) {
+        break;
+      }
+      sampleLatitude = Math.min(lastLatitude, sampleLatitude + REGION_SIZE_IN_DEGREES);
+    }
+    return regions;
+  }
+
+  // Region of a key built by keyOf, null for other keys.
+  private static String regionOf(String key) {
+    if (!key.startsWith(KEY_PREFIX)
+        || key.length() < KEY_PREFIX.length() + GEOHASH_PRECISION + 1
+        || key.charAt(KEY_PREFIX.length() + GEOHASH_PRECISION) != ':') {
+      return null;
+    }
+    return key.substring(KEY_PREFIX.length(), KEY_PREFIX.length() + REGION_PRECISION);
+  }
+
+  @EventListener
+  public void onCacheDestroyed(CacheDestroyedEvent event) {
+    generation = 0;
+    localCache.invalidateAll();
+  }
+
+  // Keys of generation 0 carry no suffix, so entries written before the first bump stay valid.
+  private String versionedKey(String key) {
+    long current = generation;
+    return current == 0 ? key : key + ":g" + current;
+  }
+
+  private void invalidateLocal(String key) {
+    if (INVALIDATE_ALL.equals(key)) {
+      localCache.invalidateAll();
+    } else if (key.endsWith(WILDCARD)) {
+      String prefix = key.substring(0, key.length() - WILDCARD.length());
+      localCache.asMap().keySet().removeIf(cached -> cached.startsWith(prefix));
+    } else {
+      localCache.invalidate(key);
+    }
+  }
+
+  private void refreshGeneration() {
+    try {
+      String current = redisAccessor.execute("get", jedis -> jedis.get(GENERATION_KEY));
+      generation = current == null ? 0 : Long.parseLong(current);
+    } catch (Exception e) {
+      log.debug("Cache generation not refreshed: {}", e.getMessage());
+    }
+  }
+
+  private void listenForInvalidations() {
+    while (listening) {
+      // Subscribing holds its connection until unsubscribed, so it bypasses RedisAccessor.
+      try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+        invalidationSubscriber = new JedisPubSub() {
+          @Override
+          public void onSubscribe(String channel, int subscribedChannels) {
+            // Invalidations published while not subscribed were missed. Entries are only
+            // dropped once Redis is back, so the in-process tier keeps serving during outages.
+            refreshGeneration();
+            localCache.invalidateAll();
+          }
+
+          @Override
+          public void onMessage(String channel, String message) {
+            if (INVALIDATE_ALL.equals(message)) {
+              refreshGeneration();
+            }
+            invalidateLocal(message);
+          }
+        };
+        jedis.subscribe(invalidationSubscriber, INVALIDATION_CHANNEL);
+      } catch (Exception e) {
+        log.debug("Not subscribed to {}: {}", INVALIDATION_CHANNEL, e.getMessage());
+      }
+      try {
+        Thread.sleep(RESUBSCRIBE_DELAY_IN_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final List<RestaurantEntity> candidates;
+    // Remaining time to live, negative if the key does not expire.
+    private final long ttlInMillis;
+    // Time the last load took, 0 if unknown.
+    private final long deltaInMillis;
+
+    Entry(List<RestaurantEntity> candidates, long ttlInMillis, long deltaInMillis) {
+      this.candidates = candidates;
+      this.ttlInMillis = ttlInMillis;
+      this.deltaInMillis = deltaInMillis;
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.crio.qeats.configs.RedisConfiguration;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * The one way cache reads and writes reach Redis.
+ * Every call borrows a connection from the pool of {@link RedisConfiguration} and always returns
+ * it, and connection failures are reported to its circuit breaker. The time spent waiting for a
+ * connection and running each command are recorded as histograms under redis.borrow and
+ * redis.commands, and pool usage is published under redis.pool.*, so the pool can be sized from
+ * what it actually does.
+ */
+@Component
+public class RedisAccessor {
+
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  // Keys per MGET or pipelined SETEX batch, so large batches do not block Redis for long.
+  @Value("${qeats.redis.batch-size:100}")
+  private int batchSize;
+
+  private Timer borrowTimer;
+  private final ConcurrentMap<String, Timer> commandTimers = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  public void init() {
+    borrowTimer = Timer.builder("redis.borrow")
+        .description("Time waited for a pooled Redis connection")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    registerPoolGauge("redis.pool.active", JedisPool::getNumActive);
+    registerPoolGauge("redis.pool.idle", JedisPool::getNumIdle);
+    registerPoolGauge("redis.pool.waiters", JedisPool::getNumWaiters);
+    registerPoolGauge("redis.pool.utilization",
+        pool -> (double) pool.getNumActive() / redisConfiguration.getMaxTotal());
+  }
+
+  /**
+   * Runs the given commands on a pooled connection that is returned afterwards.
+   * @param command name the latency is recorded under
+   */
+  public <T> T execute(String command, Function<Jedis, T> action) {
+    long start = System.nanoTime();
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      long borrowed = System.nanoTime();
+      borrowTimer.record(borrowed - start, TimeUnit.NANOSECONDS);
+      try {
+        return action.apply(jedis);
+      } finally {
+        commandTimer(command).record(System.nanoTime() - borrowed, TimeUnit.NANOSECONDS);
+      }
+    } catch (JedisConnectionException e) {
+      redisConfiguration.reportFailure(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Queues the given commands on a pipeline and sends them in one round trip; responses
+   * captured by the commands can be read once this returns.
+   */
+  public void pipelined(String command, Consumer<Pipeline> commands) {
+    execute(command, jedis -> {
+      Pipeline pipeline = jedis.pipelined();
+      commands.accept(pipeline);
+      pipeline.sync();
+      return null;
+    });
+  }
+
+  /**
+   * Reads the given keys with pipelined MGETs of at most qeats.redis.batch-size keys.
+   * @return values in key order, null for missing keys
+   */
+  public List<byte[]> mget(List<byte[]> keys) {
+    List<Response<List<byte[]>>> responses = new ArrayList<>();
+    pipelined("mget", pipeline -> {
+      for (int from = 0; from < keys.size(); from += batchSize) {
+        List<byte[]> batch = keys.subList(from, Math.min(from + batchSize, keys.size()));
+        responses.add(pipeline.mget(batch.toArray(new byte[0][])));
+      }
+    });
+    List<byte[]> values = new ArrayList<>(keys.size());
+    for (Response<List<byte[]>> response : responses) {
+      values.addAll(response.get());
+    }
+    return values;
+  }
+
+  /**
+   * Writes the given keys and values with the same expiry, pipelined in batches of at most
+   * qeats.redis.batch-size.
+   */
+  public void setex(List<byte[]> keys, List<byte[]> values, int ttlInSeconds) {
+    if (keys.size() != values.size()) {
+      throw new IllegalArgumentException("Got " + keys.size() + " keys for "
+          + values.size() + " values");
+    }
+    for (int from = 0; from < keys.size(); from += batchSize) {
+      int to = Math.min(from + batchSize, keys.size());
+      int batchStart = from;
+      pipelined("setex", pipeline -> {
+        for (int i = batchStart; i < to; i++) {
+          pipeline.setex(keys.get(i), ttlInSeconds, values.get(i));
+        }
+      });
+    }
+  }
+
+  private Timer commandTimer(String command) {
+    return commandTimers.computeIfAbsent(command, name -> Timer.builder("redis.commands")
+        .description("Latency of Redis commands, pool wait excluded")
+        .tag("command", name)
+        .publishPercentileHistogram()
+        .register(meterRegistry));
+  }
+
+  // The pool is looked up on every read, since initCache() may replace it.
+  private void registerPoolGauge(String name, ToDoubleFunction<JedisPool> value) {
+    Gauge.builder(name, redisConfiguration, configuration -> {
+      JedisPool pool = configuration.getJedisPool();
+      return pool == null || pool.isClosed() ? Double.NaN : value.applyAsDouble(pool);
+    }).register(meterRegistry);
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cart;
+
+import com.crio.qeats.cache.RedisAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Carts kept in Redis only, one hash per user at cart:{userId}: the restaurant under
+ * "restaurantId" and the quantity of each item under "item:{itemId}". Adding and removing items
+ * are single scripts that check the restaurant, update the quantity, refresh the expiry and
+ * return the whole cart, so a change costs one round trip and nothing is read from Mongo.
+ * Carts expire qeats.cart.ttl-seconds after their last change.
+ */
+@Component
+public class RedisCartStore {
+
+  static final String KEY_PREFIX = "cart:";
+  static final String RESTAURANT_FIELD = "restaurantId";
+  static final String ITEM_FIELD_PREFIX = "item:";
+
+  // KEYS[1] cart, ARGV restaurantId, item field, quantity, ttl. Returns nil if the cart holds
+  // items of another restaurant, else the cart.
+  private static final String ADD_SCRIPT =
+      "local current = redis.call('hget', KEYS[1], 'restaurantId') "
+          + "if current and current ~= ARGV[1] then return false end "
+          + "redis.call('hset', KEYS[1], 'restaurantId', ARGV[1]) "
+          + "redis.call('hincrby', KEYS[1], ARGV[2], ARGV[3]) "
+          + "redis.call('expire', KEYS[1], ARGV[4]) "
+          + "return redis.call('hgetall', KEYS[1])";
+
+  // KEYS[1] cart, ARGV item field, quantity, ttl. Items whose quantity drops to 0 are removed,
+  // and the cart goes with its last item. Returns the cart.
+  private static final String REMOVE_SCRIPT =
+      "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then "
+          + "  if redis.call('hincrby', KEYS[1], ARGV[1], 0 - tonumber(ARGV[2])) <= 0 then "
+          + "    redis.call('hdel', KEYS[1], ARGV[1]) "
+          + "  end "
+          + "  if redis.call('hlen', KEYS[1]) <= 1 then "
+          + "    redis.call('del', KEYS[1]) "
+          + "  else "
+          + "    redis.call('expire', KEYS[1], ARGV[3]) "
+          + "  end "
+          + "end "
+          + "return redis.call('hgetall', KEYS[1])";
+
+  // KEYS[1] cart. Returns the cart, which is deleted.
+  private static final String TAKE_SCRIPT =
+      "local cart = redis.call('hgetall', KEYS[1]) "
+          + "redis.call('del', KEYS[1]) "
+          + "return cart";
+
+  // KEYS[1] cart, ARGV restaurantId, ttl, then item field and quantity pairs. Returns 0 if the
+  // cart holds items of another restaurant, else adds the quantities back and returns 1.
+  private static final String RESTORE_SCRIPT =
+      "local current = redis.call('hget', KEYS[1], 'restaurantId') "
+          + "if current and current ~= ARGV[1] then return 0 end "
+          + "redis.call('hset', KEYS[1], 'restaurantId', ARGV[1]) "
+          + "for i = 3, #ARGV, 2 do redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+          + "redis.call('expire', KEYS[1], ARGV[2]) "
+          + "return 1";
+
+  @Autowired
+  private RedisAccessor redisAccessor;
+
+  @Value("${qeats.cart.ttl-seconds:86400}")
+  private int ttlInSeconds;
+
+  public StoredCart get(String userId) {
+    return redisAccessor.execute("hgetall", jedis -> toStoredCart(jedis.hgetAll(keyOf(userId))));
+  }
+
+  /**
+   * Adds the quantity of the item to the cart, which is started for the restaurant if empty.
+   * @return the cart, or null if it holds items of another restaurant
+   */
+  public StoredCart add(String userId, String restaurantId, String itemId, int quantity) {
+    Object cart = redisAccessor.execute("eval", jedis -> jedis.eval(ADD_SCRIPT,
+        Collections.singletonList(keyOf(userId)), Arrays.asList(restaurantId,
+            ITEM_FIELD_PREFIX + itemId, String.valueOf(quantity), String.valueOf(ttlInSeconds))));
+    return cart == null ? null : toStoredCart(cart);
+  }
+
+  public StoredCart remove(String userId, String itemId, int quantity) {
+    return toStoredCart(redisAccessor.execute("eval", jedis -> jedis.eval(REMOVE_SCRIPT,
+        Collections.singletonList(keyOf(userId)), Arrays.asList(ITEM_FIELD_PREFIX + itemId,
+            String.valueOf(quantity), String.valueOf(ttlInSeconds)))));
+  }
+
+  /**
+   * Reads and deletes the cart in one step, so a cart is ordered at most once and items added
+   * afterwards start a new cart.
+   * @return the cart as it was, empty if there was none
+   */
+  public StoredCart take(String userId) {
+    return toStoredCart(redisAccessor.execute("eval", jedis -> jedis.eval(TAKE_SCRIPT,
+        Collections.singletonList(keyOf(userId)), Collections.emptyList())));
+  }
+
+  /**
+   * Puts back a cart returned by {@link #take}, adding its quantities to any cart of the same
+   * restaurant started since.
+   * @return false if the user has since started a cart with another restaurant
+   */
+  public boolean restore(String userId, StoredCart storedCart) {
+    List<String> args = new ArrayList<>();
+    args.add(storedCart.getRestaurantId());
+    args.add(String.valueOf(ttlInSeconds));
+    for (Map.Entry<String, Integer> quantity : storedCart.getQuantities().entrySet()) {
+      args.add(ITEM_FIELD_PREFIX + quantity.getKey());
+      args.add(String.valueOf(quantity.getValue()));
+    }
+    Object restored = redisAccessor.execute("eval", jedis -> jedis.eval(RESTORE_SCRIPT,
+        Collections.singletonList(keyOf(userId)), args));
+    return Long.valueOf(1).equals(restored);
+  }
+
+  public void clear(String userId) {
+    redisAccessor.execute("del", jedis -> jedis.del(keyOf(userId)));
+  }
+
+  static String keyOf(String userId) {
+    return KEY_PREFIX + userId;
+  }
+
+  // HGETALL replies are field/value lists from scripts and maps from Jedis#hgetAll.
+  @SuppressWarnings("unchecked")
+  private static StoredCart toStoredCart(Object reply) {
+    String restaurantId = null;
+    Map<String, Integer> quantities = new TreeMap<>();
+    if (reply instanceof Map) {
+      for (Map.Entry<String, String> field : ((Map<String, String>) reply).entrySet()) {
+        restaurantId = read(field.getKey(), field.getValue(), restaurantId, quantities);
+      }
+    } else {
+      List<String> fields = (List<String>) reply;
+      for (int i = 0; i + 1 < fields.size(); i += 2) {
+        restaurantId = read(fields.get(i), fields.get(i + 1), restaurantId, quantities);
+      }
+    }
+    return new StoredCart(restaurantId, quantities);
+  }
+
+  private static String read(String field, String value, String restaurantId,
+      Map<String, Integer> quantities) {
+    if (RESTAURANT_FIELD.equals(field)) {
+      return value;
+    }
+    if (field.startsWith(ITEM_FIELD_PREFIX)) {
+      quantities.put(field.substring(ITEM_FIELD_PREFIX.length()), Integer.valueOf(value));
+    }
+    return restaurantId;
+  }
+
+  /**
+   * A cart as stored: its restaurant and the quantity of each item, by itemId.
+   */
+  public static final class StoredCart {
+
+    private final String restaurantId;
+    private final Map<String, Integer> quantities;
+
+    public StoredCart(String restaurantId, Map<String, Integer> quantities) {
+      this.restaurantId = restaurantId;
+      this.quantities = Collections.unmodifiableMap(new TreeMap<>(quantities));
+    }
+
+    public String getRestaurantId() {
+      return restaurantId;
+    }
+
+    // Sorted by itemId.
+    public Map<String, Integer> getQuantities() {
+      return quantities;
+    }
+
+    public boolean isEmpty() {
+      return quantities.isEmpty();
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Content hashes of the restaurants and menus collections, as computed by the dbHash command.
+ * Unlike a {@link CatalogVersion}, digests taken at two points in time differ after any write,
+ * in-place updates included, whether or not the writer set lastModifiedAt. The server reads
+ * every document to compute them, but nothing is sent back except the hashes.
+ */
+public final class CatalogDigest {
+
+  private final String restaurants;
+  private final String menus;
+
+  CatalogDigest(String restaurants, String menus) {
+    this.restaurants = restaurants;
+    this.menus = menus;
+  }
+
+  /**
+   * Reads the current digest with one dbHash command.
+   */
+  public static CatalogDigest of(MongoTemplate mongoTemplate) {
+    Document result = mongoTemplate.executeCommand(new Document("dbHash", 1)
+        .append("collections", Arrays.asList(CatalogSync.RESTAURANTS, CatalogSync.MENUS)));
+    // Collections that do not exist have no hash.
+    Document collections = result.get("collections", Document.class);
+    return new CatalogDigest(collections.getString(CatalogSync.RESTAURANTS),
+        collections.getString(CatalogSync.MENUS));
+  }
+
+  public boolean sameAs(CatalogDigest other) {
+    return Objects.equals(restaurants, other.restaurants) && Objects.equals(menus, other.menus);
+  }
+
+  void writeTo(DataOutput out) throws IOException {
+    writeHash(out, restaurants);
+    writeHash(out, menus);
+  }
+
+  static CatalogDigest readFrom(DataInput in) throws IOException {
+    return new CatalogDigest(readHash(in), readHash(in));
+  }
+
+  private static void writeHash(DataOutput out, String hash) throws IOException {
+    out.writeBoolean(hash != null);
+    if (hash != null) {
+      out.writeUTF(hash);
+    }
+  }
+
+  private static String readHash(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  @Override
+  public String toString() {
+    return "restaurants " + restaurants + ", menus " + menus;
+  }
+
+}
@@ -0,0 +1,375 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import com.crio.qeats.cache.BinaryCacheCodec;
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.search.RestaurantSearchIndex;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a copy of the restaurant and menu catalog in a local file, so a restarted instance can
+ * fill the grid and search indexes without reading every collection from Mongo.
+ * The file is read through a read-only memory mapping, so instances on the same host share the
+ * pages of the OS page cache. It starts with a header of magic, format version, creation time,
+ * length and CRC32 of the rest of the file, and the {@link CatalogDigest} the catalog was read
+ * at. Files of another format version, failing the checksum, of another catalog digest than
+ * the one in Mongo, or older than qeats.snapshot.max-age-minutes are ignored.
+ * Catalog changes rewrite the file qeats.snapshot.write-delay-seconds after the first of them, so
+ * a burst of changes costs one write. Enabled with qeats.snapshot.enabled=true.
+ */
+@Component
+@Log4j2
+public class CatalogSnapshotStore {
+
+  static final int MAGIC = 0x51454154;
+  // Bump whenever the payload layout changes, BinaryCacheCodec's included.
+  static final int FORMAT_VERSION = 3;
+  static final int HEADER_LENGTH_IN_BYTES = 4 + 4 + 8 + 4 + 4;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Autowired
+  private RestaurantGridIndex restaurantGridIndex;
+
+  @Autowired
+  private RestaurantSearchIndex restaurantSearchIndex;
+
+  @Autowired
+  private BinaryCacheCodec binaryCacheCodec;
+
+  @Value("${qeats.snapshot.enabled:false}")
+  private boolean enabled;
+
+  @Value("${qeats.snapshot.path:qeats_catalog.snapshot}")
+  private String path;
+
+  @Value("${qeats.snapshot.max-age-minutes:1440}")
+  private long maxAgeInMinutes;
+
+  @Value("${qeats.snapshot.write-delay-seconds:60}")
+  private long writeDelayInSeconds;
+
+  private ScheduledExecutorService writer;
+  private final AtomicBoolean writePending = new AtomicBoolean();
+
+  /**
+   * Fills the grid and search indexes from the snapshot file, or from Mongo when there is no
+   * usable snapshot, in which case a new snapshot is written.
+   * Runs before the search index preload, which then finds the index already built.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Order(Ordered.HIGHEST_PRECEDENCE)
+  public void warmUp() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      // Read before the collections, so writes made meanwhile make the new file stale.
+      CatalogDigest digest = CatalogDigest.of(mongoTemplate);
+      Catalog catalog = load(digest);
+      if (catalog == null) {
+        catalog = new Catalog(restaurantRepository.findAll(), menuRepository.findAll());
+        save(digest, catalog.getRestaurants(), catalog.getMenus());
+      }
+      restaurantGridIndex.rebuild(catalog.getRestaurants());
+      restaurantSearchIndex.rebuild(catalog.getRestaurants(), catalog.getMenus());
+    } catch (Exception e) {
+      log.warn("Catalog not warmed up, indexes will be built by the first requests", e);
+    }
+  }
+
+  /**
+   * Rewrites the snapshot from Mongo after qeats.snapshot.write-delay-seconds, unless a rewrite
+   * is already due, which will then include the latest changes.
+   */
+  public synchronized void scheduleSave() {
+    if (!enabled || !writePending.compareAndSet(false, true)) {
+      return;
+    }
+    if (writer == null) {
+      writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("catalog-snapshot").setDaemon(true).build());
+    }
+    writer.schedule(this::saveCurrent, writeDelayInSeconds, TimeUnit.SECONDS);
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    if (writer != null) {
+      writer.shutdownNow();
+    }
+  }
+
+  private void saveCurrent() {
+    // Changes from now on schedule another rewrite.
+    writePending.set(false);
+    try {
+      CatalogDigest digest = CatalogDigest.of(mongoTemplate);
+      save(digest, restaurantRepository.findAll(), menuRepository.findAll());
+    } catch (Exception e) {
+      log.warn("Catalog snapshot {} not rewritten: {}", path, e.getMessage());
+    }
+  }
+
+  /**
+   * Writes the catalog, read from Mongo at the given digest, to a temporary file next to the
+   * snapshot and moves it in place, so readers never see a partial file.
+   */
+  public void save(CatalogDigest digest, List<RestaurantEntity> restaurantEntities,
+      List<MenuEntity> menus) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(payload);
+    digest.writeTo(data);
+    data.flush();
+    binaryCacheCodec.write(restaurantEntities, payload);
+    writeMenus(menus, payload);
+    CRC32 crc = new CRC32();
+    crc.update(payload.toByteArray());
+
+    Path snapshot = Paths.get(path).toAbsolutePath();
+    Path temporary = Files.createTempFile(snapshot.getParent(), "qeats-catalog", ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(payload.size());
+        out.writeInt((int) crc.getValue());
+        payload.writeTo(out);
+      }
+      Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    log.info("Catalog snapshot of {} restaurants and {} menus written to {}",
+        restaurantEntities.size(), menus.size(), snapshot);
+  }
+
+  /**
+   * Reads the snapshot file.
+   * @param current digest of the catalog in Mongo
+   * @return the catalog, or null if there is no file or it is stale, corrupt or of another digest
+   */
+  public Catalog load(CatalogDigest current) throws IOException {
+    Path snapshot = Paths.get(path).toAbsolutePath();
+    if (!Files.isRegularFile(snapshot)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_LENGTH_IN_BYTES) {
+        log.warn("Ignoring catalog snapshot {}: truncated header", snapshot);
+        return null;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      int magic = buffer.getInt();
+      int version = buffer.getInt();
+      long createdAt = buffer.getLong();
+      int payloadLength = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (magic != MAGIC || version != FORMAT_VERSION) {
+        log.warn("Ignoring catalog snapshot {}: format version {}", snapshot, version);
+        return null;
+      }
+      if (System.currentTimeMillis() - createdAt > TimeUnit.MINUTES.toMillis(maxAgeInMinutes)) {
+        log.info("Ignoring catalog snapshot {}: older than {} minutes", snapshot,
+            maxAgeInMinutes);
+        return null;
+      }
+      if (payloadLength != buffer.remaining()) {
+        log.warn("Ignoring catalog snapshot {}: truncated payload", snapshot);
+        return null;
+      }
+      CRC32 crc = new CRC32();
+      crc.update(buffer.duplicate());
+      if ((int) crc.getValue() != checksum) {
+        log.warn("Ignoring catalog snapshot {}: checksum mismatch", snapshot);
+        return null;
+      }
+
+      DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+      CatalogDigest snapshotDigest = CatalogDigest.readFrom(in);
+      if (!snapshotDigest.sameAs(current)) {
+        log.info("Ignoring catalog snapshot {}: catalog changed from {} to {}", snapshot,
+            snapshotDigest, current);
+        return null;
+      }
+      List<RestaurantEntity> restaurantEntities = binaryCacheCodec.read(in);
+      List<MenuEntity> menus = readMenus(in);
+      log.info("Catalog snapshot of {} restaurants and {} menus read from {}",
+          restaurantEntities.size(), menus.size(), snapshot);
+      return new Catalog(restaurantEntities, menus);
+    }
+  }
+
+  private static void writeMenus(List<MenuEntity> menus, OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(menus.size());
+    for (MenuEntity menu : menus) {
+      writeString(data, menu.getId());
+      writeString(data, menu.getRestaurantId());
+      List<Item> items = menu.getItems() == null ? new ArrayList<>() : menu.getItems();
+      data.writeInt(items.size());
+      for (Item item : items) {
+        writeString(data, item.getId());
+        writeString(data, item.getItemId());
+        writeString(data, item.getName());
+        writeString(data, item.getImageUrl());
+        writeStrings(data, item.getAttributes());
+        data.writeInt(item.getPrice());
+      }
+    }
+    data.flush();
+  }
+
+  private static List<MenuEntity> readMenus(DataInputStream data) throws IOException {
+    int menuCount = data.readInt();
+    List<MenuEntity> menus = new ArrayList<>(menuCount);
+    for (int i = 0; i < menuCount; i++) {
+      MenuEntity menu = new MenuEntity();
+      menu.setId(readString(data));
+      menu.setRestaurantId(readString(data));
+      int itemCount = data.readInt();
+      List<Item> items = new ArrayList<>(itemCount);
+      for (int j = 0; j < itemCount; j++) {
+        items.add(new Item(readString(data), readString(data), readString(data),
+            readString(data), readStrings(data), data.readInt()));
+      }
+      menu.setItems(items);
+      menus.add(menu);
+    }
+    return menus;
+  }
+
+  private static void writeString(DataOutputStream data, String value) throws IOException {
+    data.writeBoolean(value != null);
+    if (value != null) {
+      data.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream data) throws IOException {
+    return data.readBoolean() ? data.readUTF() : null;
+  }
+
+  private static void writeStrings(DataOutputStream data, List<String> values)
+      throws IOException {
+    data.writeInt(values == null ? -1 : values.size());
+    if (values != null) {
+      for (String value : values) {
+        writeString(data, value);
+      }
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream data) throws IOException {
+    int count = data.readInt();
+    if (count < 0) {
+      return null;
+    }
+    List<String> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readString(data));
+    }
+    return values;
+  }
+
+  /**
+   * Restaurants and menus read from or written to a snapshot.
+   */
+  public static final class Catalog {
+
+    private final List<RestaurantEntity> restaurants;
+    private final List<MenuEntity> menus;
+
+    Catalog(List<RestaurantEntity> restaurants, List<MenuEntity> menus) {
+      this.restaurants = restaurants;
+      this.menus = menus;
+    }
+
+    public List<RestaurantEntity> getRestaurants() {
+      return restaurants;
+    }
+
+    public List<MenuEntity> getMenus() {
+      return menus;
+    }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+  }
+
+}
@@ -0,0 +1,521 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import com.crio.qeats.cache.MenuResponseCache;
+import com.crio.qeats.cache.NearbyRestaurantCache;
+import com.crio.qeats.configs.CacheAvailableEvent;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.globals.GlobalConstants;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.search.RestaurantSearchIndex;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies changes of the restaurants and menus collections to the in-memory indexes and to the
+ * Redis caches as they happen, instead of waiting for cache entries to expire.
+ * With qeats.sync.mode=change-stream the collections are tailed through MongoDB change streams,
+ * which need a replica set. They start at the cluster time read when the context is refreshed,
+ * before the catalog is read from Mongo or a snapshot, so changes made meanwhile are applied
+ * too. On a standalone server it falls back to polling, which every
+ * qeats.sync.poll-interval-ms reads the documents inserted past the last _id of the previous poll
+ * and those whose lastModifiedAt reached the latest one seen by it, so writers have to set
+ * lastModifiedAt to the current date on every update. Deletions, seen as fewer documents up to
+ * the last _id of the previous poll, and polls that find many changes rebuild everything.
+ * A changed restaurant only drops the cached nearby results of the cells within the largest
+ * serving radius of where it was and where it is now. Changes applied while Redis is bypassed or
+ * failing are remembered, and once Redis is usable again the geo set is reloaded and every cached
+ * nearby result dropped.
+ */
+@Component
+@Log4j2
+public class CatalogSync {
+
+  public static final String CHANGE_STREAM_MODE = "change-stream";
+  public static final String POLLING_MODE = "polling";
+
+  static final String RESTAURANTS = "restaurants";
+  static final String MENUS = "menus";
+
+  private static final double MAX_SERVING_RADIUS_IN_KMS = Math.max(
+      GlobalConstants.PEAK_HOURS_SERVING_RADIUS_IN_KMS,
+      GlobalConstants.NORMAL_HOURS_SERVING_RADIUS_IN_KMS);
+
+  // qeats.nearby.source under which nearby queries go through the GeoJSON location in Mongo.
+  static final String MONGO_NEARBY_SOURCE = "mongo";
+
+  // Above this many changed documents in one poll, a full rebuild is cheaper than upserts.
+  private static final int MAX_INCREMENTAL_CHANGES = 100;
+  private static final long RETRY_DELAY_IN_MILLIS = 5000;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Autowired
+  private RestaurantGridIndex restaurantGridIndex;
+
+  @Autowired
+  private RestaurantSearchIndex restaurantSearchIndex;
+
+  @Autowired
+  private RedisGeoRestaurantLocator redisGeoRestaurantLocator;
+
+  @Autowired
+  private NearbyRestaurantCache nearbyRestaurantCache;
+
+  @Autowired
+  private MenuResponseCache menuResponseCache;
+
+  @Autowired
+  private ItemResolver itemResolver;
+
+  @Autowired
+  private CatalogSnapshotStore catalogSnapshotStore;
+
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  // "change-stream", "polling", or anything else to turn syncing off.
+  @Value("${qeats.sync.mode:off}")
+  private String mode;
+
+  @Value("${qeats.sync.poll-interval-ms:5000}")
+  private long pollIntervalInMillis;
+
+  @Value("${qeats.cache.mode:geohash}")
+  private String cacheMode;
+
+  @Value("${qeats.nearby.source:grid}")
+  private String nearbySource;
+
+  private volatile boolean running;
+  private final List<Thread> workers = new ArrayList<>();
+
+  // Cluster time change streams start at, or null to start when they are opened.
+  private volatile BsonTimestamp startAtOperationTime;
+
+  private CatalogVersion polledVersion;
+
+  // By collection, the documents the previous poll applied that were modified at its latest
+  // lastModifiedAt, which the next poll reads again.
+  private final Map<String, Set<String>> appliedAtPolledVersion = new HashMap<>();
+
+  // Set when a change could not be written to Redis, cleared once it has been made up for.
+  private final AtomicBoolean redisBehind = new AtomicBoolean();
+
+  /**
+   * Records the current cluster time, which comes before any read of the catalog: those happen
+   * once the application is ready or serving requests.
+   */
+  @EventListener(ContextRefreshedEvent.class)
+  public synchronized void recordStartAtOperationTime() {
+    if (!CHANGE_STREAM_MODE.equals(mode) || startAtOperationTime != null) {
+      return;
+    }
+    try {
+      // Replica set members return the cluster time of every command as its operationTime.
+      Object operationTime = mongoTemplate.executeCommand(new Document("ping", 1))
+          .get("operationTime");
+      if (operationTime instanceof BsonTimestamp) {
+        startAtOperationTime = (BsonTimestamp) operationTime;
+      }
+    } catch (Exception e) {
+      log.warn("Cluster time not read, change streams start when opened: {}", e.getMessage());
+    }
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public synchronized void start() {
+    if (!CHANGE_STREAM_MODE.equals(mode) && !POLLING_MODE.equals(mode)) {
+      return;
+    }
+    running = true;
+    if (CHANGE_STREAM_MODE.equals(mode)) {
+      startWorker("catalog-sync-" + RESTAURANTS, () -> watch(RESTAURANTS));
+      startWorker("catalog-sync-" + MENUS, () -> watch(MENUS));
+    } else {
+      startWorker("catalog-sync-polling", this::poll);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stop() {
+    running = false;
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    workers.clear();
+  }
+
+  /**
+   * Makes a new or updated restaurant visible to nearby and search queries.
+   */
+  public void applyRestaurant(RestaurantEntity restaurantEntity) {
+    if (MONGO_NEARBY_SOURCE.equals(nearbySource)) {
+      syncLocation(restaurantEntity);
+    }
+    boolean indexed = restaurantGridIndex.isLoaded();
+    RestaurantEntity previous = restaurantGridIndex.findByRestaurantId(
+        restaurantEntity.getRestaurantId());
+    restaurantGridIndex.upsert(restaurantEntity);
+    restaurantSearchIndex.upsertRestaurant(restaurantEntity);
+    if (!redisConfiguration.isCacheAvailable()) {
+      redisBehind.set(true);
+    } else if (!catchUpRedis()) {
+      try {
+        if (RedisGeoRestaurantLocator.CACHE_MODE.equals(cacheMode)) {
+          redisGeoRestaurantLocator.upsert(restaurantEntity);
+        }
+        if (indexed) {
+          invalidateAround(previous, restaurantEntity);
+        } else {
+          // Where the restaurant was before is unknown.
+          nearbyRestaurantCache.invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+        }
+      } catch (RuntimeException e) {
+        redisBehind.set(true);
+        log.warn("Restaurant {} not written to Redis, caught up once Redis is back: {}",
+            restaurantEntity.getRestaurantId(), e.getMessage());
+      }
+    }
+    catalogSnapshotStore.scheduleSave();
+  }
+
+  /**
+   * Makes a new or updated menu visible to search queries, the menu API, carts and orders.
+   */
+  public void applyMenu(MenuEntity menu) {
+    restaurantSearchIndex.upsertMenu(menu);
+    menuResponseCache.invalidate(menu.getRestaurantId());
+    // Items dropped from the menu are not in it anymore, so every cached item may be stale.
+    itemResolver.invalidateAll();
+    catalogSnapshotStore.scheduleSave();
+  }
+
+  /**
+   * Rebuilds the indexes from the repositories and drops every cached nearby result and menu.
+   */
+  public void resync() {
+    List<RestaurantEntity> restaurantEntities = restaurantRepository.findAll();
+    restaurantGridIndex.rebuild(restaurantEntities);
+    restaurantSearchIndex.rebuild(restaurantEntities, menuRepository.findAll());
+    menuResponseCache.invalidateAll();
+    itemResolver.invalidateAll();
+    redisBehind.set(true);
+    if (redisConfiguration.isCacheAvailable()) {
+      catchUpRedis(() -> restaurantEntities);
+    }
+    catalogSnapshotStore.scheduleSave();
+  }
+
+  /**
+   * Makes up for changes that could not be written to Redis while it was unavailable.
+   */
+  @EventListener(CacheAvailableEvent.class)
+  public void onCacheAvailable() {
+    catchUpRedis();
+  }
+
+  /**
+   * Reloads the geo set and drops every cached nearby result if changes were missed.
+   * @return false if nothing was missed, or it could not be caught up
+   */
+  boolean catchUpRedis() {
+    return catchUpRedis(restaurantRepository::findAll);
+  }
+
+  private boolean catchUpRedis(Supplier<List<RestaurantEntity>> restaurantSource) {
+    if (!redisBehind.getAndSet(false)) {
+      return false;
+    }
+    try {
+      if (RedisGeoRestaurantLocator.CACHE_MODE.equals(cacheMode)) {
+        redisGeoRestaurantLocator.load(restaurantSource.get());
+      }
+      nearbyRestaurantCache.invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+      return true;
+    } catch (RuntimeException e) {
+      redisBehind.set(true);
+      log.warn("Redis not caught up with the catalog, retried with the next change: {}",
+          e.getMessage());
+      return false;
+    }
+  }
+
+  private void invalidateAround(RestaurantEntity previous, RestaurantEntity current) {
+    boolean moved = previous != null && (!Objects.equals(previous.getLatitude(),
+        current.getLatitude()) || !Objects.equals(previous.getLongitude(), current.getLongitude()));
+    if (moved && previous.getLatitude() != null && previous.getLongitude() != null) {
+      nearbyRestaurantCache.invalidateAround(previous.getLatitude(), previous.getLongitude(),
+          MAX_SERVING_RADIUS_IN_KMS);
+    }
+    if (current.getLatitude() != null && current.getLongitude() != null) {
+      nearbyRestaurantCache.invalidateAround(current.getLatitude(), current.getLongitude(),
+          MAX_SERVING_RADIUS_IN_KMS);
+    }
+  }
+
+  // Documents written outside this application carry no or an outdated GeoJSON location, which
+  // would leave them out of, or misplace them in, nearby queries served by Mongo. lastModifiedAt
+  // is left as is: the location follows from coordinates already applied, so polls can skip it.
+  private void syncLocation(RestaurantEntity restaurantEntity) {
+    GeoJsonPoint location = RestaurantEntity.locationOf(restaurantEntity.getLatitude(),
+        restaurantEntity.getLongitude());
+    if (location == null || location.equals(restaurantEntity.getLocation())) {
+      return;
+    }
+    mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(restaurantEntity.getId())),
+        Update.update("location", location), RestaurantEntity.class);
+    restaurantEntity.setLocation(location);
+  }
+
+  private void startWorker(String name, Runnable task) {
+    Thread worker = new Thread(task, name);
+    worker.setDaemon(true);
+    worker.start();
+    workers.add(worker);
+  }
+
+  private void watch(String collection) {
+    BsonDocument resumeToken = null;
+    while (running) {
+      try (MongoCursor<ChangeStreamDocument<Document>> changes = openChangeStream(collection,
+          resumeToken)) {
+        log.info("Watching changes of {}", collection);
+        while (running) {
+          ChangeStreamDocument<Document> change = changes.tryNext();
+          if (change != null) {
+            apply(collection, change);
+            resumeToken = change.getResumeToken();
+          }
+        }
+      } catch (MongoCommandException e) {
+        // Change streams need a replica set, so standalone servers are polled instead.
+        log.warn("Change streams unavailable for {}, polling instead: {}", collection,
+            e.getErrorMessage());
+        if (RESTAURANTS.equals(collection)) {
+          poll();
+        }
+        return;
+      } catch (Exception e) {
+        log.warn("Change stream of {} interrupted, resuming: {}", collection, e.getMessage());
+        if (!sleep(RETRY_DELAY_IN_MILLIS)) {
+          return;
+        }
+      }
+    }
+  }
+
+  private MongoCursor<ChangeStreamDocument<Document>> openChangeStream(String collection,
+      BsonDocument resumeToken) {
+    ChangeStreamIterable<Document> stream = mongoTemplate
+        .getCollection(collection)
+        .watch()
+        .fullDocument(FullDocument.UPDATE_LOOKUP)
+        .maxAwaitTime(1, TimeUnit.SECONDS);
+    if (resumeToken != null) {
+      stream = stream.resumeAfter(resumeToken);
+    } else if (startAtOperationTime != null) {
+      // Changes seen twice, before and after reopening, are applied twice, which is harmless.
+      stream = stream.startAtOperationTime(startAtOperationTime);
+    }
+    return stream.iterator();
+  }
+
+  private void apply(String collection, ChangeStreamDocument<Document> change) {
+    OperationType operationType = change.getOperationType();
+    Document document = change.getFullDocument();
+    if (document == null || operationType == OperationType.DELETE) {
+      // A deletion only carries the _id, which the indexes are not keyed by.
+      resync();
+    } else if (RESTAURANTS.equals(collection)) {
+      applyRestaurant(mongoTemplate.getConverter().read(RestaurantEntity.class, document));
+    } else {
+      applyMenu(mongoTemplate.getConverter().read(MenuEntity.class, document));
+    }
+  }
+
+  private void poll() {
+    for (String collection : new String[] {RESTAURANTS, MENUS}) {
+      try {
+        mongoTemplate.indexOps(collection).ensureIndex(
+            new Index().on(CatalogVersion.LAST_MODIFIED_AT, Sort.Direction.ASC));
+      } catch (Exception e) {
+        log.warn("No {} index on {}, polls scan the collection: {}",
+            CatalogVersion.LAST_MODIFIED_AT,
+            collection, e.getMessage());
+      }
+    }
+    while (running) {
+      try {
+        pollOnce();
+      } catch (Exception e) {
+        log.warn("Catalog poll failed: {}", e.getMessage());
+      }
+      if (!sleep(pollIntervalInMillis)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Applies the documents changed since the previous call; the first call only records where
+   * the collections stand.
+   */
+  synchronized void pollOnce() {
+    // Taken before reading changes, so writes made meanwhile are left to the next poll.
+    // Versions alike do not mean nothing changed: more writes may share the latest
+    // lastModifiedAt, so that millisecond is read again either way.
+    CatalogVersion version = CatalogVersion.of(mongoTemplate);
+    CatalogVersion previous = polledVersion;
+    polledVersion = version;
+    if (previous == null) {
+      return;
+    }
+
+    if (hasDeletions(RESTAURANTS, previous.restaurants())
+        || hasDeletions(MENUS, previous.menus())) {
+      appliedAtPolledVersion.clear();
+      resync();
+      return;
+    }
+    List<RestaurantEntity> changedRestaurants = findChanged(RESTAURANTS, RestaurantEntity.class,
+        RestaurantEntity::getId, RestaurantEntity::getLastModifiedAt, previous.restaurants(),
+        version.restaurants());
+    List<MenuEntity> changedMenus = findChanged(MENUS, MenuEntity.class, MenuEntity::getId,
+        MenuEntity::getLastModifiedAt, previous.menus(), version.menus());
+    if (changedRestaurants.size() + changedMenus.size() > MAX_INCREMENTAL_CHANGES) {
+      appliedAtPolledVersion.clear();
+      resync();
+      return;
+    }
+    for (RestaurantEntity restaurantEntity : changedRestaurants) {
+      applyRestaurant(restaurantEntity);
+    }
+    for (MenuEntity menu : changedMenus) {
+      applyMenu(menu);
+    }
+  }
+
+  // Inserts get growing ids, so documents up to the previous last id only become fewer when
+  // some were deleted.
+  private boolean hasDeletions(String collection, CatalogVersion.Mark previous) {
+    if (previous.lastId() == null) {
+      return false;
+    }
+    return mongoTemplate.count(Query.query(Criteria.where(CatalogVersion.ID)
+        .lte(previous.lastId())), collection) < previous.count();
+  }
+
+  // Inserts are found by _id whether or not their writer set lastModifiedAt, updates from the
+  // previous latest lastModifiedAt on, skipping what the previous poll applied at that time.
+  private <T> List<T> findChanged(String collection, Class<T> entityClass,
+      Function<T, String> idOf, Function<T, Date> lastModifiedAtOf,
+      CatalogVersion.Mark previous, CatalogVersion.Mark current) {
+    Map<String, T> changed = new LinkedHashMap<>();
+    if (current.lastId() != null) {
+      Criteria inserted = Criteria.where(CatalogVersion.ID);
+      if (previous.lastId() != null) {
+        inserted = inserted.gt(previous.lastId());
+      }
+      for (T entity : findAtMost(inserted.lte(current.lastId()), entityClass, collection)) {
+        changed.put(idOf.apply(entity), entity);
+      }
+    }
+    Set<String> applied = appliedAtPolledVersion.getOrDefault(collection,
+        Collections.emptySet());
+    if (current.lastModifiedAt() != null) {
+      Criteria modified = Criteria.where(CatalogVersion.LAST_MODIFIED_AT);
+      if (previous.lastModifiedAt() != null) {
+        modified = modified.gte(previous.lastModifiedAt());
+      }
+      for (T entity : findAtMost(modified.lte(current.lastModifiedAt()), entityClass,
+          collection)) {
+        String id = idOf.apply(entity);
+        if (!applied.contains(id)
+            || !Objects.equals(lastModifiedAtOf.apply(entity), previous.lastModifiedAt())) {
+          changed.putIfAbsent(id, entity);
+        }
+      }
+    }
+
+    Set<String> appliedNow = new HashSet<>();
+    if (Objects.equals(current.lastModifiedAt(), previous.lastModifiedAt())) {
+      appliedNow.addAll(applied);
+    }
+    for (Map.Entry<String, T> entity : changed.entrySet()) {
+      if (Objects.equals(lastModifiedAtOf.apply(entity.getValue()), current.lastModifiedAt())) {
+        appliedNow.add(entity.getKey());
+      }
+    }
+    appliedAtPolledVersion.put(collection, appliedNow);
+    return new ArrayList<>(changed.values());
+  }
+
+  // One more than needed tells a rebuild is due without reading every change.
+  private <T> List<T> findAtMost(Criteria criteria, Class<T> entityClass, String collection) {
+    return mongoTemplate.find(Query.query(criteria).limit(MAX_INCREMENTAL_CHANGES + 1),
+        entityClass, collection);
+  }
+
+  private static boolean sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import java.util.Date;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Where the restaurants and menus collections stand: for each, the document count, the largest
+ * _id and the latest lastModifiedAt. Versions taken at two points in time differ once documents
+ * were inserted, deleted, or updated with a new lastModifiedAt; in-place updates that leave
+ * lastModifiedAt alone go unnoticed, see {@link CatalogDigest} for a version of the content.
+ */
+public final class CatalogVersion {
+
+  static final String ID = "_id";
+  static final String LAST_MODIFIED_AT = "lastModifiedAt";
+
+  private final Mark restaurants;
+  private final Mark menus;
+
+  CatalogVersion(Mark restaurants, Mark menus) {
+    this.restaurants = restaurants;
+    this.menus = menus;
+  }
+
+  /**
+   * Reads the current version with two counts and four single-document index reads.
+   */
+  public static CatalogVersion of(MongoTemplate mongoTemplate) {
+    return new CatalogVersion(Mark.of(mongoTemplate, CatalogSync.RESTAURANTS),
+        Mark.of(mongoTemplate, CatalogSync.MENUS));
+  }
+
+  Mark restaurants() {
+    return restaurants;
+  }
+
+  Mark menus() {
+    return menus;
+  }
+
+  @Override
+  public String toString() {
+    return "restaurants " + restaurants + ", menus " + menus;
+  }
+
+  // Count, largest _id and latest lastModifiedAt of one collection.
+  static final class Mark {
+
+    private final long count;
+    private final Object lastId;
+    private final Date lastModifiedAt;
+
+    Mark(long count, Object lastId, Date lastModifiedAt) {
+      this.count = count;
+      this.lastId = lastId;
+      this.lastModifiedAt = lastModifiedAt;
+    }
+
+    static Mark of(MongoTemplate mongoTemplate, String collection) {
+      Object lastModifiedAt = lastValueOf(mongoTemplate, collection, LAST_MODIFIED_AT);
+      return new Mark(mongoTemplate.count(new Query(), collection),
+          lastValueOf(mongoTemplate, collection, ID),
+          lastModifiedAt instanceof Date ? (Date) lastModifiedAt : null);
+    }
+
+    private static Object lastValueOf(MongoTemplate mongoTemplate, String collection,
+        String field) {
+      Query query = new Query().with(Sort.by(Sort.Direction.DESC, field)).limit(1);
+      query.fields().include(field);
+      Document last = mongoTemplate.findOne(query, Document.class, collection);
+      return last == null ? null : last.get(field);
+    }
+
+    long count() {
+      return count;
+    }
+
+    Object lastId() {
+      return lastId;
+    }
+
+    Date lastModifiedAt() {
+      return lastModifiedAt;
+    }
+
+    @Override
+    public String toString() {
+      return count + " documents up to _id " + lastId + " modified up to " + lastModifiedAt;
+    }
+  }
+
+}
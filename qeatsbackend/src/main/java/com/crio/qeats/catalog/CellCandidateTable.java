@@ -0,0 +1,233 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import com.crio.qeats.utils.GeoUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Restaurants reachable from every geohash-6 cell around them, precomputed for a fixed set of
+ * serving radii.
+ * For each cell and radius the table lists the ordinals of the restaurants that can be within
+ * the radius of some point of the cell, with their distance from the cell center. Those within
+ * the radius of every point of the cell come first and are returned without any distance check;
+ * the others form the boundary ring, where the distance from the user to the cell center
+ * decides most of them and only the rest get an exact check.
+ * Cells are the 2^15 x 2^15 latitude/longitude partition of geohash-6, keyed by row and column.
+ */
+final class CellCandidateTable {
+
+  private static final int CELLS_PER_AXIS = 1 << 15;
+  private static final double CELL_HEIGHT_IN_DEGREES = 180.0 / CELLS_PER_AXIS;
+  private static final double CELL_WIDTH_IN_DEGREES = 360.0 / CELLS_PER_AXIS;
+  private static final double EARTH_RADIUS_IN_KMS = 6371.0;
+
+  // Covers the rounding of float distances and of the haversine formulas, in kilometers.
+  private static final double MARGIN_IN_KMS = 1e-3;
+
+  private final RestaurantSnapshot snapshot;
+  private final double[] radiiInKms;
+  private final List<Map<Long, Cell>> cellsByRadius;
+
+  CellCandidateTable(RestaurantSnapshot snapshot, double[] radiiInKms) {
+    this.snapshot = snapshot;
+    this.radiiInKms = radiiInKms.clone();
+    double maxRadiusInKms = Arrays.stream(radiiInKms).max().orElse(0);
+
+    List<Map<Long, CellBuilder>> builders = new ArrayList<>(radiiInKms.length);
+    for (int r = 0; r < radiiInKms.length; r++) {
+      builders.add(new HashMap<>());
+    }
+    double[] latitudes = snapshot.latitudes();
+    double[] longitudes = snapshot.longitudes();
+    for (int ordinal = 0; ordinal < snapshot.size(); ordinal++) {
+      if (!Double.isNaN(latitudes[ordinal]) && !Double.isNaN(longitudes[ordinal])) {
+        addToCellsAround(ordinal, latitudes[ordinal], longitudes[ordinal], maxRadiusInKms,
+            builders);
+      }
+    }
+
+    cellsByRadius = new ArrayList<>(radiiInKms.length);
+    for (Map<Long, CellBuilder> cellBuilders : builders) {
+      Map<Long, Cell> cells = new HashMap<>(cellBuilders.size() * 2);
+      for (Map.Entry<Long, CellBuilder> entry : cellBuilders.entrySet()) {
+        cells.put(entry.getKey(), entry.getValue().build());
+      }
+      cellsByRadius.add(cells);
+    }
+  }
+
+  RestaurantSnapshot snapshot() {
+    return snapshot;
+  }
+
+  boolean covers(double radiusInKms) {
+    return indexOf(radiusInKms) >= 0;
+  }
+
+  /**
+   * Finds the restaurants strictly within the given radius, which must be covered by the table,
+   * by the same distance as {@link GeoUtils#findWithinRadius}.
+   * @return ordinals in ascending order
+   */
+  int[] findWithinRadius(double latitude, double longitude, double radiusInKms) {
+    int row = rowOf(latitude);
+    int column = columnOf(longitude);
+    Cell cell = cellsByRadius.get(indexOf(radiusInKms)).get(cellKey(row, column));
+    if (cell == null) {
+      return new int[0];
+    }
+
+    int[] matches = new int[cell.ordinals.length];
+    int count = cell.innerCount;
+    System.arraycopy(cell.ordinals, 0, matches, 0, count);
+
+    double userToCenter = GeoUtils.findDistanceInKm(latitude, longitude, centerLatitudeOf(row),
+        centerLongitudeOf(column));
+    int[] undecided = new int[cell.ordinals.length - cell.innerCount];
+    int undecidedCount = 0;
+    for (int i = cell.innerCount; i < cell.ordinals.length; i++) {
+      double centerToRestaurant = cell.distancesInKms[i];
+      if (centerToRestaurant + userToCenter < radiusInKms - MARGIN_IN_KMS) {
+        matches[count++] = cell.ordinals[i];
+      } else if (centerToRestaurant - userToCenter <= radiusInKms + MARGIN_IN_KMS) {
+        undecided[undecidedCount++] = cell.ordinals[i];
+      }
+    }
+    int[] exact = new int[undecidedCount];
+    int exactCount = GeoUtils.findWithinRadius(latitude, longitude, snapshot.latitudes(),
+        snapshot.longitudes(), undecided, undecidedCount, radiusInKms, exact);
+    System.arraycopy(exact, 0, matches, count, exactCount);
+    count += exactCount;
+
+    Arrays.sort(matches, 0, count);
+    return Arrays.copyOf(matches, count);
+  }
+
+  private void addToCellsAround(int ordinal, double latitude, double longitude,
+      double maxRadiusInKms, List<Map<Long, CellBuilder>> builders) {
+    // Cells are at most 1.23 x 0.62 km, so a cell whose center is within this reach can hold
+    // a point within the largest radius.
+    double reachInKms = maxRadiusInKms + 0.7;
+    double latitudeDelta = Math.toDegrees(reachInKms / EARTH_RADIUS_IN_KMS);
+    double widestLatitude = Math.min(89.9, Math.abs(latitude) + latitudeDelta);
+    double longitudeDelta = Math.min(180, latitudeDelta / Math.cos(Math.toRadians(widestLatitude)));
+
+    int firstRow = rowOf(Math.max(-90, latitude - latitudeDelta));
+    int lastRow = rowOf(Math.min(90, latitude + latitudeDelta));
+    int firstColumn = (int) Math.floor((longitude - longitudeDelta + 180) / CELL_WIDTH_IN_DEGREES);
+    int lastColumn = Math.min(firstColumn + CELLS_PER_AXIS - 1,
+        (int) Math.floor((longitude + longitudeDelta + 180) / CELL_WIDTH_IN_DEGREES));
+
+    for (int row = firstRow; row <= lastRow; row++) {
+      double centerLatitude = centerLatitudeOf(row);
+      double halfDiagonalInKms = GeoUtils.findDistanceInKm(centerLatitude, 0,
+          centerLatitude + CELL_HEIGHT_IN_DEGREES / 2, CELL_WIDTH_IN_DEGREES / 2);
+      halfDiagonalInKms = Math.max(halfDiagonalInKms, GeoUtils.findDistanceInKm(centerLatitude,
+          0, centerLatitude - CELL_HEIGHT_IN_DEGREES / 2, CELL_WIDTH_IN_DEGREES / 2));
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        int wrappedColumn = Math.floorMod(column, CELLS_PER_AXIS);
+        double distanceInKms = GeoUtils.findDistanceInKm(centerLatitude,
+            centerLongitudeOf(wrappedColumn), latitude, longitude);
+        for (int r = 0; r < radiiInKms.length; r++) {
+          if (distanceInKms - halfDiagonalInKms > radiiInKms[r] + MARGIN_IN_KMS) {
+            continue;
+          }
+          boolean inner = distanceInKms + halfDiagonalInKms < radiiInKms[r] - MARGIN_IN_KMS;
+          builders.get(r).computeIfAbsent(cellKey(row, wrappedColumn), key -> new CellBuilder())
+              .add(ordinal, (float) distanceInKms, inner);
+        }
+      }
+    }
+  }
+
+  private int indexOf(double radiusInKms) {
+    for (int r = 0; r < radiiInKms.length; r++) {
+      if (radiiInKms[r] == radiusInKms) {
+        return r;
+      }
+    }
+    return -1;
+  }
+
+  private static int rowOf(double latitude) {
+    return Math.min(CELLS_PER_AXIS - 1, (int) Math.floor((latitude + 90) / CELL_HEIGHT_IN_DEGREES));
+  }
+
+  private static int columnOf(double longitude) {
+    return Math.floorMod((int) Math.floor((longitude + 180) / CELL_WIDTH_IN_DEGREES),
+        CELLS_PER_AXIS);
+  }
+
+  private static double centerLatitudeOf(int row) {
+    return -90 + (row + 0.5) * CELL_HEIGHT_IN_DEGREES;
+  }
+
+  private static double centerLongitudeOf(int column) {
+    return -180 + (column + 0.5) * CELL_WIDTH_IN_DEGREES;
+  }
+
+  private static long cellKey(int row, int column) {
+    return (long) row * CELLS_PER_AXIS + column;
+  }
+
+  // Ordinals within the radius of the whole cell first, then the boundary ring, each ascending.
+  private static final class Cell {
+
+    private final int[] ordinals;
+    private final float[] distancesInKms;
+    private final int innerCount;
+
+    Cell(int[] ordinals, float[] distancesInKms, int innerCount) {
+      this.ordinals = ordinals;
+      this.distancesInKms = distancesInKms;
+      this.innerCount = innerCount;
+    }
+  }
+
+  private static final class CellBuilder {
+
+    private int[] ordinals = new int[4];
+    private float[] distancesInKms = new float[4];
+    private boolean[] inner = new boolean[4];
+    private int size;
+    private int innerCount;
+
+    void add(int ordinal, float distanceInKms, boolean isInner) {
+      if (size == ordinals.length) {
+        ordinals = Arrays.copyOf(ordinals, size * 2);
+        distancesInKms = Arrays.copyOf(distancesInKms, size * 2);
+        inner = Arrays.copyOf(inner, size * 2);
+      }
+      ordinals[size] = ordinal;
+      distancesInKms[size] = distanceInKms;
+      inner[size] = isInner;
+      size++;
+      if (isInner) {
+        innerCount++;
+      }
+    }
+
+    Cell build() {
+      int[] sortedOrdinals = new int[size];
+      float[] sortedDistances = new float[size];
+      int nextInner = 0;
+      int nextRing = innerCount;
+      for (int i = 0; i < size; i++) {
+        int position = inner[i] ? nextInner++ : nextRing++;
+        sortedOrdinals[position] = ordinals[i];
+        sortedDistances[position] = distancesInKms[i];
+      }
+      return new Cell(sortedOrdinals, sortedDistances, innerCount);
+    }
+  }
+
+}
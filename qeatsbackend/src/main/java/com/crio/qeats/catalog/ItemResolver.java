@@ -0,0 +1,148 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.exceptions.ItemNotFoundInRestaurantMenuException;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves itemIds to the menu items of a restaurant, with their current prices, for carts and
+ * orders. The same itemId can be on the menus of several restaurants, so each itemId is cached
+ * with the item of every restaurant that serves it. All the itemIds missing from the cache in
+ * one call are loaded with a single findMenusByItemsItemIdIn query, so resolving an N-item cart
+ * costs at most one query instead of N. Menu changes seen by CatalogSync clear the cache.
+ */
+@Component
+public class ItemResolver {
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.items.cache.maximum-size:100000}")
+  private long maximumSize;
+
+  @Value("${qeats.items.cache.ttl-seconds:600}")
+  private long ttlInSeconds;
+
+  // itemId to the item on the menu of each restaurant serving it, by restaurantId.
+  private LoadingCache<String, Map<String, Item>> itemsByRestaurant;
+
+  @PostConstruct
+  public void init() {
+    itemsByRestaurant = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build(new CacheLoader<String, Map<String, Item>>() {
+          @Override
+          public Map<String, Item> load(String itemId) {
+            return loadAll(Collections.singleton(itemId)).get(itemId);
+          }
+
+          @Override
+          public Map<String, Map<String, Item>> loadAll(Iterable<? extends String> itemIds) {
+            return loadItems(itemIds);
+          }
+        });
+    GuavaCacheMetrics.monitor(meterRegistry, itemsByRestaurant, "menu.items");
+  }
+
+  /**
+   * Get the items of the given restaurant's menu with the given itemIds.
+   * @return items by itemId, without the itemIds that are not on the menu
+   */
+  public Map<String, Item> findItems(String restaurantId, Collection<String> itemIds) {
+    Map<String, Item> found = new LinkedHashMap<>();
+    if (itemIds.isEmpty()) {
+      return found;
+    }
+    Map<String, Map<String, Item>> owners;
+    try {
+      owners = itemsByRestaurant.getAll(itemIds);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    for (String itemId : itemIds) {
+      Item item = owners.get(itemId).get(restaurantId);
+      if (item != null) {
+        found.put(itemId, item);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Get the items of the given restaurant's menu with the given itemIds, all of which must be
+   * on it.
+   * @return items by itemId
+   * @throws ItemNotFoundInRestaurantMenuException if an item is not on the menu
+   */
+  public Map<String, Item> resolveItems(String restaurantId, Collection<String> itemIds) {
+    Map<String, Item> found = findItems(restaurantId, itemIds);
+    Set<String> missing = new LinkedHashSet<>(itemIds);
+    missing.removeAll(found.keySet());
+    if (!missing.isEmpty()) {
+      throw new ItemNotFoundInRestaurantMenuException("Items " + missing
+          + " are not on the menu of restaurant " + restaurantId);
+    }
+    return found;
+  }
+
+  public void invalidateAll() {
+    itemsByRestaurant.invalidateAll();
+  }
+
+  private Map<String, Map<String, Item>> loadItems(Iterable<? extends String> itemIds) {
+    Map<String, Map<String, Item>> loaded = new HashMap<>();
+    for (String itemId : itemIds) {
+      loaded.put(itemId, new HashMap<>());
+    }
+    List<MenuEntity> menus = menuRepository
+        .findMenusByItemsItemIdIn(new ArrayList<>(loaded.keySet()))
+        .orElse(Collections.emptyList());
+    for (MenuEntity menu : menus) {
+      for (Item item : menu.getItems()) {
+        // Menus come whole, but only the requested itemIds have all their restaurants here.
+        Map<String, Item> owners = loaded.get(item.getItemId());
+        if (owners != null) {
+          owners.put(menu.getRestaurantId(), item);
+        }
+      }
+    }
+    return loaded;
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import com.crio.qeats.cache.RedisAccessor;
+import com.crio.qeats.configs.CacheDestroyedEvent;
+import com.crio.qeats.models.RestaurantEntity;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.GeoCoordinate;
+import redis.clients.jedis.GeoRadiusResponse;
+import redis.clients.jedis.GeoUnit;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * Answers proximity queries from a Redis geo set instead of per-geohash JSON blobs.
+ * Coordinates live once in a sorted set queried with GEORADIUS, and every restaurant is a hash
+ * read back with pipelined HMGETs, so Redis memory grows with the number of restaurants only.
+ */
+@Component
+public class RedisGeoRestaurantLocator {
+
+  // Value of qeats.cache.mode that answers nearby queries through this locator.
+  public static final String CACHE_MODE = "redis-geo";
+
+  static final String GEO_KEY = "restaurants:geo";
+  static final String LOADED_KEY = "restaurants:geo:loaded";
+  static final String RESTAURANT_KEY_PREFIX = "restaurant:";
+
+  private static final String[] FIELDS = {"id", "restaurantId", "name", "city", "imageUrl",
+      "latitude", "longitude", "opensAt", "closesAt", "attributes"};
+  private static final String ATTRIBUTE_SEPARATOR = "\u001f";
+  private static final int LOAD_BATCH_SIZE = 500;
+
+  // Redis measures with a slightly larger earth radius than GeoUtils, so widen the search and
+  // let the caller do the exact cut.
+  private static final double RADIUS_SLACK = 1.001;
+
+  @Autowired
+  private RedisAccessor redisAccessor;
+
+  private volatile boolean loaded;
+
+  /**
+   * Loads the restaurants from the given source unless this or another instance already did.
+   */
+  public void ensureLoaded(Supplier<List<RestaurantEntity>> restaurantSource) {
+    if (loaded) {
+      return;
+    }
+    synchronized (this) {
+      if (loaded) {
+        return;
+      }
+      if (!redisAccessor.execute("exists", jedis -> jedis.exists(LOADED_KEY))) {
+        load(restaurantSource.get());
+      }
+      loaded = true;
+    }
+  }
+
+  /**
+   * Writes the restaurants into the geo set and their hashes, in pipelined batches.
+   */
+  public void load(List<RestaurantEntity> restaurantEntities) {
+    redisAccessor.execute("geo-load", jedis -> {
+      for (int from = 0; from < restaurantEntities.size(); from += LOAD_BATCH_SIZE) {
+        List<RestaurantEntity> batch = restaurantEntities.subList(from,
+            Math.min(from + LOAD_BATCH_SIZE, restaurantEntities.size()));
+        Pipeline pipeline = jedis.pipelined();
+        Map<String, GeoCoordinate> coordinates = new HashMap<>();
+        for (RestaurantEntity restaurantEntity : batch) {
+          if (restaurantEntity.getLatitude() == null || restaurantEntity.getLongitude() == null) {
+            continue;
+          }
+          pipeline.hmset(RESTAURANT_KEY_PREFIX + restaurantEntity.getRestaurantId(),
+              toHash(restaurantEntity));
+          coordinates.put(restaurantEntity.getRestaurantId(),
+              new GeoCoordinate(restaurantEntity.getLongitude(), restaurantEntity.getLatitude()));
+        }
+        if (!coordinates.isEmpty()) {
+          pipeline.geoadd(GEO_KEY, coordinates);
+        }
+        pipeline.sync();
+      }
+      return jedis.set(LOADED_KEY, String.valueOf(restaurantEntities.size()));
+    });
+  }
+
+  /**
+   * Adds or replaces a single restaurant. Like {@link #load}, restaurants without coordinates
+   * are left out, so one that lost them is removed.
+   */
+  public void upsert(RestaurantEntity restaurantEntity) {
+    if (restaurantEntity.getLatitude() == null || restaurantEntity.getLongitude() == null) {
+      remove(restaurantEntity.getRestaurantId());
+      return;
+    }
+    redisAccessor.pipelined("geo-upsert", pipeline -> {
+      pipeline.hmset(RESTAURANT_KEY_PREFIX + restaurantEntity.getRestaurantId(),
+          toHash(restaurantEntity));
+      pipeline.geoadd(GEO_KEY, restaurantEntity.getLongitude(), restaurantEntity.getLatitude(),
+          restaurantEntity.getRestaurantId());
+    });
+  }
+
+  /**
+   * Removes a single restaurant.
+   */
+  public void remove(String restaurantId) {
+    redisAccessor.pipelined("geo-remove", pipeline -> {
+      pipeline.zrem(GEO_KEY, restaurantId);
+      pipeline.del(RESTAURANT_KEY_PREFIX + restaurantId);
+    });
+  }
+
+  @EventListener
+  public void onCacheDestroyed(CacheDestroyedEvent event) {
+    loaded = false;
+  }
+
+  /**
+   * Get the restaurants whose coordinates are within (about) the given radius.
+   * Candidates still have to be checked for the exact distance by the caller.
+   */
+  public List<RestaurantEntity> findCandidates(double latitude, double longitude,
+      double radiusInKms) {
+    return redisAccessor.execute("geo-find", jedis -> {
+      List<GeoRadiusResponse> members = jedis.georadius(GEO_KEY, longitude, latitude,
+          radiusInKms * RADIUS_SLACK, GeoUnit.KM);
+      if (members.isEmpty()) {
+        return Collections.emptyList();
+      }
+
+      Pipeline pipeline = jedis.pipelined();
+      List<Response<List<String>>> responses = new ArrayList<>(members.size());
+      for (GeoRadiusResponse member : members) {
+        responses.add(pipeline.hmget(RESTAURANT_KEY_PREFIX + member.getMemberByString(), FIELDS));
+      }
+      pipeline.sync();
+
+      List<RestaurantEntity> candidates = new ArrayList<>(responses.size());
+      for (Response<List<String>> response : responses) {
+        List<String> values = response.get();
+        if (values.get(1) != null) {
+          candidates.add(fromHash(values));
+        }
+      }
+      return candidates;
+    });
+  }
+
+  private static Map<String, String> toHash(RestaurantEntity restaurantEntity) {
+    Map<String, String> hash = new HashMap<>();
+    putIfPresent(hash, FIELDS[0], restaurantEntity.getId());
+    putIfPresent(hash, FIELDS[1], restaurantEntity.getRestaurantId());
+    putIfPresent(hash, FIELDS[2], restaurantEntity.getName());
+    putIfPresent(hash, FIELDS[3], restaurantEntity.getCity());
+    putIfPresent(hash, FIELDS[4], restaurantEntity.getImageUrl());
+    putIfPresent(hash, FIELDS[5], restaurantEntity.getLatitude());
+    putIfPresent(hash, FIELDS[6], restaurantEntity.getLongitude());
+    putIfPresent(hash, FIELDS[7], restaurantEntity.getOpensAt());
+    putIfPresent(hash, FIELDS[8], restaurantEntity.getClosesAt());
+    if (restaurantEntity.getAttributes() != null) {
+      hash.put(FIELDS[9], String.join(ATTRIBUTE_SEPARATOR, restaurantEntity.getAttributes()));
+    }
+    return hash;
+  }
+
+  private static void putIfPresent(Map<String, String> hash, String field, Object value) {
+    if (value != null) {
+      hash.put(field, value.toString());
+    }
+  }
+
+  private static RestaurantEntity fromHash(List<String> values) {
+    RestaurantEntity restaurantEntity = new RestaurantEntity();
+    restaurantEntity.setId(values.get(0));
+    restaurantEntity.setRestaurantId(values.get(1));
+    restaurantEntity.setName(values.get(2));
+    restaurantEntity.setCity(values.get(3));
+    restaurantEntity.setImageUrl(values.get(4));
+    restaurantEntity.setLatitude(values.get(5) == null ? null : Double.valueOf(values.get(5)));
+    restaurantEntity.setLongitude(values.get(6) == null ? null : Double.valueOf(values.get(6)));
+    restaurantEntity.setOpensAt(values.get(7));
+    restaurantEntity.setClosesAt(values.get(8));
+    String attributes = values.get(9);
+    if (attributes != null && !attributes.isEmpty()) {
+      restaurantEntity.setAttributes(
+          new ArrayList<>(Arrays.asList(attributes.split(ATTRIBUTE_SEPARATOR))));
+    }
+    return restaurantEntity;
+  }
+
+}
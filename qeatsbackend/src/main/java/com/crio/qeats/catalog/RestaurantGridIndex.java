@@ -0,0 +1,415 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import com.crio.qeats.configs.CacheDestroyedEvent;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.globals.GlobalConstants;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.GeoUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resident uniform lat/long grid over the restaurants collection.
+ * A lookup only visits the cells overlapping the serving radius, so the cost of a nearby query
+ * depends on how many restaurants are around the user and not on the size of the collection.
+ * Restaurants are kept in a columnar {@link RestaurantSnapshot}, so lookups filter primitive
+ * columns and only build entities or DTOs for what they return.
+ * The grid itself is immutable; updates build a new one and swap it in, so readers never lock.
+ * A single upsert or remove copies only the columns and cells it changes, and a removed
+ * restaurant keeps its ordinal until enough of them pile up to compact the grid.
+ * With qeats.nearby.precomputed-cells=true, every new grid also gets a {@link CellCandidateTable}
+ * for the serving radii, built in the background; once it is ready, lookups with those radii
+ * read the candidates of the user's cell instead of scanning the grid.
+ */
+@Component
+@Log4j2
+public class RestaurantGridIndex {
+
+  // About 5.5 km along a meridian, so a 3 km or 5 km radius touches at most 3 x 3 cells.
+  static final double CELL_SIZE_IN_DEGREES = 0.05;
+
+  private static final double EARTH_RADIUS_IN_KMS = 6371.0;
+  private static final int COLUMNS = (int) Math.round(360 / CELL_SIZE_IN_DEGREES);
+
+  // Removed ordinals, as a fraction of all ordinals, above which remove() compacts the grid.
+  private static final double MAX_REMOVED_FRACTION = 0.25;
+
+  private static final double[] PRECOMPUTED_RADII_IN_KMS = {
+      GlobalConstants.PEAK_HOURS_SERVING_RADIUS_IN_KMS,
+      GlobalConstants.NORMAL_HOURS_SERVING_RADIUS_IN_KMS};
+
+  private final AtomicReference<Grid> grid = new AtomicReference<>();
+  private final AtomicReference<CellCandidateTable> cellTable = new AtomicReference<>();
+
+  @Value("${qeats.nearby.precomputed-cells:false}")
+  private boolean precomputeCells;
+
+  private ExecutorService cellTableBuilder;
+  private final AtomicBoolean cellTableBuildPending = new AtomicBoolean();
+
+  public boolean isLoaded() {
+    return grid.get() != null;
+  }
+
+  public synchronized void rebuild(List<RestaurantEntity> restaurantEntities) {
+    swap(new Grid(restaurantEntities));
+  }
+
+  /**
+   * Adds a restaurant to the index, or replaces the one with the same restaurantId.
+   * Does nothing until the index has been loaded.
+   */
+  public synchronized void upsert(RestaurantEntity restaurantEntity) {
+    Grid current = grid.get();
+    if (current == null) {
+      return;
+    }
+    int ordinal = current.snapshot.ordinalOf(restaurantEntity.getRestaurantId());
+    if (ordinal < 0) {
+      ordinal = current.snapshot.size();
+    }
+    swap(current.with(ordinal, current.snapshot.with(ordinal, restaurantEntity)));
+  }
+
+  /**
+   * Removes the restaurant with the given restaurantId from the index.
+   */
+  public synchronized void remove(String restaurantId) {
+    Grid current = grid.get();
+    if (current == null) {
+      return;
+    }
+    int ordinal = current.snapshot.ordinalOf(restaurantId);
+    if (ordinal < 0) {
+      return;
+    }
+    RestaurantSnapshot next = current.snapshot.without(ordinal);
+    if (next.removedCount() > next.size() * MAX_REMOVED_FRACTION) {
+      swap(new Grid(next.toEntities()));
+    } else {
+      swap(current.with(ordinal, next));
+    }
+  }
+
+  public synchronized void clear() {
+    grid.set(null);
+    cellTable.set(null);
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    if (cellTableBuilder != null) {
+      cellTableBuilder.shutdownNow();
+    }
+  }
+
+  /**
+   * Tells whether lookups with the given radius are served from precomputed cell candidates.
+   */
+  public boolean hasPrecomputedCells(double radiusInKms) {
+    Grid current = grid.get();
+    CellCandidateTable table = cellTable.get();
+    return current != null && table != null && table.snapshot() == current.snapshot
+        && table.covers(radiusInKms);
+  }
+
+  /**
+   * Builds the cell candidates of the current grid, unless they are already up to date.
+   */
+  void precomputeCells() {
+    Grid current = grid.get();
+    CellCandidateTable table = cellTable.get();
+    if (current == null || (table != null && table.snapshot() == current.snapshot)) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    CellCandidateTable built = new CellCandidateTable(current.snapshot, PRECOMPUTED_RADII_IN_KMS);
+    synchronized (this) {
+      // Not published if the grid changed meanwhile; the next build covers the new one.
+      if (grid.get() == current) {
+        cellTable.set(built);
+      }
+    }
+    log.info("Cell candidates of {} restaurants precomputed in {} ms", current.snapshot.size(),
+        System.currentTimeMillis() - start);
+  }
+
+  // Callers hold the monitor. Bursts of updates share one build of the latest grid.
+  private void swap(Grid next) {
+    grid.set(next);
+    if (!precomputeCells || !cellTableBuildPending.compareAndSet(false, true)) {
+      return;
+    }
+    if (cellTableBuilder == null) {
+      cellTableBuilder = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("cell-candidates").setDaemon(true).build());
+    }
+    cellTableBuilder.execute(() -> {
+      cellTableBuildPending.set(false);
+      try {
+        precomputeCells();
+      } catch (RuntimeException e) {
+        log.warn("Cell candidates not precomputed, grid lookups are used instead", e);
+      }
+    });
+  }
+
+  @EventListener
+  public void onCacheDestroyed(CacheDestroyedEvent event) {
+    clear();
+  }
+
+  /**
+   * Get the restaurant with the given restaurantId as it is indexed.
+   * @return the restaurant, or null if it is not indexed or the index is not loaded yet
+   */
+  public RestaurantEntity findByRestaurantId(String restaurantId) {
+    Grid current = grid.get();
+    if (current == null) {
+      return null;
+    }
+    int ordinal = current.snapshot.ordinalOf(restaurantId);
+    return ordinal < 0 ? null : current.snapshot.toEntity(ordinal);
+  }
+
+  /**
+   * Get the restaurants stored in the cells that intersect the given circle.
+   * Candidates still have to be checked for the exact distance by the caller.
+   * @return candidates in the order they were loaded, or an empty list if not loaded yet
+   */
+  public List<RestaurantEntity> findCandidates(double latitude, double longitude,
+      double radiusInKms) {
+    Grid current = grid.get();
+    if (current == null) {
+      return Collections.emptyList();
+    }
+    int[] ordinals = current.findCandidates(latitude, longitude, radiusInKms);
+    List<RestaurantEntity> candidates = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      candidates.add(current.snapshot.toEntity(ordinal));
+    }
+    return candidates;
+  }
+
+  /**
+   * Get the restaurants strictly within the given radius that are open at some time in
+   * [from, to), see {@link com.crio.qeats.models.OpeningHours#isOpenDuring}.
+   * @return restaurants in the order they were loaded, or an empty list if not loaded yet
+   */
+  public List<RestaurantEntity> findCandidatesOpenDuring(double latitude, double longitude,
+      double radiusInKms, LocalTime from, LocalTime to) {
+    Grid current = grid.get();
+    if (current == null) {
+      return Collections.emptyList();
+    }
+    boolean[] openHours = current.snapshot.openHoursDuring(from, to);
+    List<RestaurantEntity> candidates = new ArrayList<>();
+    for (int ordinal : current.findWithinRadius(latitude, longitude, radiusInKms)) {
+      if (current.snapshot.isOpen(openHours, ordinal)) {
+        candidates.add(current.snapshot.toEntity(ordinal));
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Get the restaurants strictly within the given radius that are open at the given time.
+   * @return restaurants in the order they were loaded, or an empty list if not loaded yet
+   */
+  public List<Restaurant> findOpenRestaurantsCloseBy(double latitude, double longitude,
+      double radiusInKms, LocalTime currentTime) {
+    List<Restaurant> restaurants = new ArrayList<>();
+    forEachOpenRestaurantCloseBy(latitude, longitude, radiusInKms, currentTime,
+        restaurants::add);
+    return restaurants;
+  }
+
+  /**
+   * Hands the restaurants strictly within the given radius that are open at the given time to
+   * the consumer one at a time, in the order they were loaded, each mapped only when its turn
+   * comes. Nothing is handed out if not loaded yet.
+   */
+  public void forEachOpenRestaurantCloseBy(double latitude, double longitude,
+      double radiusInKms, LocalTime currentTime, Consumer<Restaurant> consumer) {
+    Grid current = grid.get();
+    if (current == null) {
+      return;
+    }
+    CellCandidateTable table = cellTable.get();
+    int[] ordinals = table != null && table.snapshot() == current.snapshot
+        && table.covers(radiusInKms)
+        ? table.findWithinRadius(latitude, longitude, radiusInKms)
+        : current.findWithinRadius(latitude, longitude, radiusInKms);
+    boolean[] openHours = current.snapshot.openHoursAt(currentTime);
+    for (int ordinal : ordinals) {
+      if (current.snapshot.isOpen(openHours, ordinal)) {
+        consumer.accept(current.snapshot.toRestaurant(ordinal));
+      }
+    }
+  }
+
+  private static int rowOf(double latitude) {
+    return (int) Math.floor(latitude / CELL_SIZE_IN_DEGREES);
+  }
+
+  private static int columnOf(double longitude) {
+    return Math.floorMod((int) Math.floor(longitude / CELL_SIZE_IN_DEGREES) + COLUMNS / 2,
+        COLUMNS) - COLUMNS / 2;
+  }
+
+  private static long cellKey(int row, int column) {
+    return ((long) row << 32) | (column & 0xffffffffL);
+  }
+
+  private static final class Grid {
+
+    private final RestaurantSnapshot snapshot;
+    private final Map<Long, int[]> cells;
+
+    private Grid(RestaurantSnapshot snapshot, Map<Long, int[]> cells) {
+      this.snapshot = snapshot;
+      this.cells = cells;
+    }
+
+    Grid(List<RestaurantEntity> restaurantEntities) {
+      snapshot = new RestaurantSnapshot(restaurantEntities);
+      cells = new HashMap<>();
+      double[] latitudes = snapshot.latitudes();
+      double[] longitudes = snapshot.longitudes();
+
+      Map<Long, List<Integer>> buckets = new HashMap<>();
+      for (int i = 0; i < snapshot.size(); i++) {
+        if (Double.isNaN(latitudes[i]) || Double.isNaN(longitudes[i])) {
+          continue;
+        }
+        long key = cellKey(rowOf(latitudes[i]), columnOf(longitudes[i]));
+        buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+      }
+      for (Map.Entry<Long, List<Integer>> bucket : buckets.entrySet()) {
+        cells.put(bucket.getKey(),
+            bucket.getValue().stream().mapToInt(Integer::intValue).toArray());
+      }
+    }
+
+    /**
+     * Grid over the given snapshot, which differs from this one at most at the given ordinal.
+     * Only the cells the ordinal leaves or enters are copied.
+     */
+    Grid with(int ordinal, RestaurantSnapshot next) {
+      Long previousKey = ordinal < snapshot.size() ? cellKeyOf(snapshot, ordinal) : null;
+      Long nextKey = cellKeyOf(next, ordinal);
+      if (Objects.equals(previousKey, nextKey)) {
+        return new Grid(next, cells);
+      }
+      Map<Long, int[]> nextCells = new HashMap<>(cells);
+      if (previousKey != null) {
+        int[] cell = nextCells.get(previousKey);
+        int index = Arrays.binarySearch(cell, ordinal);
+        if (cell.length == 1) {
+          nextCells.remove(previousKey);
+        } else {
+          int[] patched = new int[cell.length - 1];
+          System.arraycopy(cell, 0, patched, 0, index);
+          System.arraycopy(cell, index + 1, patched, index, patched.length - index);
+          nextCells.put(previousKey, patched);
+        }
+      }
+      if (nextKey != null) {
+        int[] cell = nextCells.getOrDefault(nextKey, new int[0]);
+        int index = -Arrays.binarySearch(cell, ordinal) - 1;
+        int[] patched = new int[cell.length + 1];
+        System.arraycopy(cell, 0, patched, 0, index);
+        patched[index] = ordinal;
+        System.arraycopy(cell, index, patched, index + 1, cell.length - index);
+        nextCells.put(nextKey, patched);
+      }
+      return new Grid(next, nextCells);
+    }
+
+    // Null for an ordinal without coordinates, which is in no cell.
+    private static Long cellKeyOf(RestaurantSnapshot snapshot, int ordinal) {
+      double latitude = snapshot.latitudes()[ordinal];
+      double longitude = snapshot.longitudes()[ordinal];
+      if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+        return null;
+      }
+      return cellKey(rowOf(latitude), columnOf(longitude));
+    }
+
+    int[] findWithinRadius(double latitude, double longitude, double radiusInKms) {
+      int[] candidates = findCandidates(latitude, longitude, radiusInKms);
+      int[] matches = new int[candidates.length];
+      int count = GeoUtils.findWithinRadius(latitude, longitude, snapshot.latitudes(),
+          snapshot.longitudes(), candidates, candidates.length, radiusInKms, matches);
+      return Arrays.copyOf(matches, count);
+    }
+
+    int[] findCandidates(double latitude, double longitude, double radiusInKms) {
+      double angularRadius = radiusInKms / EARTH_RADIUS_IN_KMS;
+      double latitudeDelta = Math.toDegrees(angularRadius);
+      int firstRow = rowOf(Math.max(-90, latitude - latitudeDelta));
+      int lastRow = rowOf(Math.min(90, latitude + latitudeDelta));
+
+      // Widest longitude span of a spherical cap centered at the given latitude.
+      double sinRatio = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+      int firstColumn;
+      int lastColumn;
+      if (sinRatio >= 1 || latitude + latitudeDelta >= 90 || latitude - latitudeDelta <= -90) {
+        firstColumn = -COLUMNS / 2;
+        lastColumn = COLUMNS / 2 - 1;
+      } else {
+        double longitudeDelta = Math.toDegrees(Math.asin(sinRatio));
+        firstColumn = (int) Math.floor((longitude - longitudeDelta) / CELL_SIZE_IN_DEGREES);
+        lastColumn = (int) Math.floor((longitude + longitudeDelta) / CELL_SIZE_IN_DEGREES);
+        if (lastColumn - firstColumn + 1 >= COLUMNS) {
+          firstColumn = -COLUMNS / 2;
+          lastColumn = COLUMNS / 2 - 1;
+        }
+      }
+
+      int[] ordinals = new int[16];
+      int count = 0;
+      for (int row = firstRow; row <= lastRow; row++) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+          int wrappedColumn = Math.floorMod(column + COLUMNS / 2, COLUMNS) - COLUMNS / 2;
+          int[] cell = cells.get(cellKey(row, wrappedColumn));
+          if (cell == null) {
+            continue;
+          }
+          if (count + cell.length > ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, Math.max(ordinals.length * 2, count + cell.length));
+          }
+          System.arraycopy(cell, 0, ordinals, count, cell.length);
+          count += cell.length;
+        }
+      }
+
+      Arrays.sort(ordinals, 0, count);
+      return Arrays.copyOf(ordinals, count);
+    }
+  }
+
+}
@@ -0,0 +1,417 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.OpeningHours;
+import com.crio.qeats.models.RestaurantEntity;
+import java.time.LocalTime;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable column-wise copy of the restaurant catalog, one array per field indexed by ordinal.
+ * Coordinates are primitive doubles; cities, attributes and opening hours are dictionary encoded
+ * and repeated strings are shared, so a scan touches a few flat arrays instead of one object
+ * graph per restaurant. Entities and DTOs are only built for the ordinals a caller asks for.
+ * Single restaurants are changed copy-on-write with {@link #with} and {@link #without}, which
+ * copy the columns that change and share everything else with the original.
+ */
+final class RestaurantSnapshot {
+
+  private final int size;
+  private final String[] ids;
+  private final String[] restaurantIds;
+  private final String[] names;
+  private final String[] imageUrls;
+  private final double[] latitudes;
+  private final double[] longitudes;
+
+  private final int[] cityIds;
+  private final String[] cities;
+
+  // Attributes of ordinal i are attributeIds[attributeOffsets[i] .. attributeOffsets[i + 1]).
+  private final int[] attributeOffsets;
+  private final int[] attributeIds;
+  private final String[] attributes;
+
+  private final int[] hoursIds;
+  private final String[] opensAt;
+  private final String[] closesAt;
+  private final OpeningHours[] openingHours;
+
+  private final Map<String, Integer> ordinalsByRestaurantId;
+
+  // Ordinals removed by without(), which keep their slot until the next full build.
+  private final BitSet removed;
+
+  RestaurantSnapshot(List<RestaurantEntity> restaurantEntities) {
+    size = restaurantEntities.size();
+    ids = new String[size];
+    restaurantIds = new String[size];
+    names = new String[size];
+    imageUrls = new String[size];
+    latitudes = new double[size];
+    longitudes = new double[size];
+    cityIds = new int[size];
+    attributeOffsets = new int[size + 1];
+    hoursIds = new int[size];
+    ordinalsByRestaurantId = new HashMap<>(size * 2);
+    removed = new BitSet();
+
+    Map<String, String> strings = new HashMap<>();
+    Dictionary<String> cityDictionary = new Dictionary<>();
+    Dictionary<String> attributeDictionary = new Dictionary<>();
+    Dictionary<Map.Entry<String, String>> hoursDictionary = new Dictionary<>();
+    int[] attributeColumn = new int[size];
+    int attributeCount = 0;
+
+    for (int i = 0; i < size; i++) {
+      RestaurantEntity restaurantEntity = restaurantEntities.get(i);
+      ids[i] = restaurantEntity.getId();
+      restaurantIds[i] = restaurantEntity.getRestaurantId();
+      names[i] = share(strings, restaurantEntity.getName());
+      imageUrls[i] = share(strings, restaurantEntity.getImageUrl());
+      latitudes[i] = restaurantEntity.getLatitude() == null ? Double.NaN
+          : restaurantEntity.getLatitude();
+      longitudes[i] = restaurantEntity.getLongitude() == null ? Double.NaN
+          : restaurantEntity.getLongitude();
+      cityIds[i] = cityDictionary.idOf(restaurantEntity.getCity());
+      hoursIds[i] = hoursDictionary.idOf(new SimpleImmutableEntry<>(
+          restaurantEntity.getOpensAt(), restaurantEntity.getClosesAt()));
+
+      attributeOffsets[i] = attributeCount;
+      if (restaurantEntity.getAttributes() != null) {
+        for (String attribute : restaurantEntity.getAttributes()) {
+          if (attributeCount == attributeColumn.length) {
+            attributeColumn = Arrays.copyOf(attributeColumn, attributeColumn.length * 2 + 1);
+          }
+          attributeColumn[attributeCount++] = attributeDictionary.idOf(attribute);
+        }
+      }
+      ordinalsByRestaurantId.putIfAbsent(restaurantEntity.getRestaurantId(), i);
+    }
+    attributeOffsets[size] = attributeCount;
+    attributeIds = Arrays.copyOf(attributeColumn, attributeCount);
+
+    cities = cityDictionary.values.toArray(new String[0]);
+    attributes = attributeDictionary.values.toArray(new String[0]);
+    opensAt = new String[hoursDictionary.values.size()];
+    closesAt = new String[opensAt.length];
+    openingHours = new OpeningHours[opensAt.length];
+    for (int id = 0; id < opensAt.length; id++) {
+      Map.Entry<String, String> hours = hoursDictionary.values.get(id);
+      opensAt[id] = hours.getKey();
+      closesAt[id] = hours.getValue();
+      openingHours[id] = OpeningHours.parse(hours.getKey(), hours.getValue());
+    }
+  }
+
+  private RestaurantSnapshot(int size, String[] ids, String[] restaurantIds, String[] names,
+      String[] imageUrls, double[] latitudes, double[] longitudes, int[] cityIds,
+      String[] cities, int[] attributeOffsets, int[] attributeIds, String[] attributes,
+      int[] hoursIds, String[] opensAt, String[] closesAt, OpeningHours[] openingHours,
+      Map<String, Integer> ordinalsByRestaurantId, BitSet removed) {
+    this.size = size;
+    this.ids = ids;
+    this.restaurantIds = restaurantIds;
+    this.names = names;
+    this.imageUrls = imageUrls;
+    this.latitudes = latitudes;
+    this.longitudes = longitudes;
+    this.cityIds = cityIds;
+    this.cities = cities;
+    this.attributeOffsets = attributeOffsets;
+    this.attributeIds = attributeIds;
+    this.attributes = attributes;
+    this.hoursIds = hoursIds;
+    this.opensAt = opensAt;
+    this.closesAt = closesAt;
+    this.openingHours = openingHours;
+    this.ordinalsByRestaurantId = ordinalsByRestaurantId;
+    this.removed = removed;
+  }
+
+  /**
+   * Copy with the restaurant at the given ordinal replaced, or the restaurant appended if the
+   * ordinal is size(). The ordinal must hold the same restaurantId or be removed.
+   */
+  RestaurantSnapshot with(int ordinal, RestaurantEntity restaurantEntity) {
+    int newSize = Math.max(size, ordinal + 1);
+
+    String[] newCities = cities;
+    int cityId = indexOf(cities, restaurantEntity.getCity());
+    if (cityId < 0) {
+      cityId = cities.length;
+      newCities = appended(cities, restaurantEntity.getCity());
+    }
+
+    String[] newOpensAt = opensAt;
+    String[] newClosesAt = closesAt;
+    OpeningHours[] newOpeningHours = openingHours;
+    int hoursId = 0;
+    while (hoursId < opensAt.length
+        && !(Objects.equals(opensAt[hoursId], restaurantEntity.getOpensAt())
+        && Objects.equals(closesAt[hoursId], restaurantEntity.getClosesAt()))) {
+      hoursId++;
+    }
+    if (hoursId == opensAt.length) {
+      newOpensAt = appended(opensAt, restaurantEntity.getOpensAt());
+      newClosesAt = appended(closesAt, restaurantEntity.getClosesAt());
+      newOpeningHours = appended(openingHours, OpeningHours.parse(
+          restaurantEntity.getOpensAt(), restaurantEntity.getClosesAt()));
+    }
+
+    String[] newAttributes = attributes;
+    List<String> restaurantAttributes = restaurantEntity.getAttributes() == null
+        ? new ArrayList<>() : restaurantEntity.getAttributes();
+    int[] ordinalAttributeIds = new int[restaurantAttributes.size()];
+    for (int i = 0; i < ordinalAttributeIds.length; i++) {
+      int attributeId = indexOf(newAttributes, restaurantAttributes.get(i));
+      if (attributeId < 0) {
+        attributeId = newAttributes.length;
+        newAttributes = appended(newAttributes, restaurantAttributes.get(i));
+      }
+      ordinalAttributeIds[i] = attributeId;
+    }
+    int from = attributeOffsets[Math.min(ordinal, size)];
+    int to = ordinal < size ? attributeOffsets[ordinal + 1] : from;
+    int delta = ordinalAttributeIds.length - (to - from);
+    int[] newAttributeIds = attributeIds;
+    if (delta != 0 || !Arrays.equals(Arrays.copyOfRange(attributeIds, from, to),
+        ordinalAttributeIds)) {
+      newAttributeIds = new int[attributeIds.length + delta];
+      System.arraycopy(attributeIds, 0, newAttributeIds, 0, from);
+      System.arraycopy(ordinalAttributeIds, 0, newAttributeIds, from,
+          ordinalAttributeIds.length);
+      System.arraycopy(attributeIds, to, newAttributeIds, from + ordinalAttributeIds.length,
+          attributeIds.length - to);
+    }
+    int[] newAttributeOffsets = attributeOffsets;
+    if (newSize > size || delta != 0) {
+      newAttributeOffsets = Arrays.copyOf(attributeOffsets, newSize + 1);
+      for (int i = ordinal + 1; i <= newSize; i++) {
+        newAttributeOffsets[i] = (i <= size ? attributeOffsets[i] : attributeOffsets[size])
+            + delta;
+      }
+    }
+
+    Map<String, Integer> newOrdinals = ordinalsByRestaurantId;
+    if (!Integer.valueOf(ordinal).equals(
+        ordinalsByRestaurantId.get(restaurantEntity.getRestaurantId()))) {
+      newOrdinals = new HashMap<>(ordinalsByRestaurantId);
+      newOrdinals.put(restaurantEntity.getRestaurantId(), ordinal);
+    }
+    BitSet newRemoved = removed;
+    if (removed.get(ordinal)) {
+      newRemoved = (BitSet) removed.clone();
+      newRemoved.clear(ordinal);
+    }
+
+    return new RestaurantSnapshot(newSize,
+        set(ids, newSize, ordinal, restaurantEntity.getId()),
+        set(restaurantIds, newSize, ordinal, restaurantEntity.getRestaurantId()),
+        set(names, newSize, ordinal, restaurantEntity.getName()),
+        set(imageUrls, newSize, ordinal, restaurantEntity.getImageUrl()),
+        set(latitudes, newSize, ordinal, restaurantEntity.getLatitude() == null ? Double.NaN
+            : restaurantEntity.getLatitude()),
+        set(longitudes, newSize, ordinal, restaurantEntity.getLongitude() == null ? Double.NaN
+            : restaurantEntity.getLongitude()),
+        set(cityIds, newSize, ordinal, cityId), newCities, newAttributeOffsets, newAttributeIds,
+        newAttributes, set(hoursIds, newSize, ordinal, hoursId), newOpensAt, newClosesAt,
+        newOpeningHours, newOrdinals, newRemoved);
+  }
+
+  /**
+   * Copy without the restaurant at the given ordinal. The ordinal keeps its slot, without
+   * coordinates so that no lookup returns it, and the other ordinals are unchanged.
+   */
+  RestaurantSnapshot without(int ordinal) {
+    Map<String, Integer> newOrdinals = new HashMap<>(ordinalsByRestaurantId);
+    newOrdinals.remove(restaurantIds[ordinal], ordinal);
+    BitSet newRemoved = (BitSet) removed.clone();
+    newRemoved.set(ordinal);
+    return new RestaurantSnapshot(size, ids, restaurantIds, names, imageUrls,
+        set(latitudes, size, ordinal, Double.NaN), set(longitudes, size, ordinal, Double.NaN),
+        cityIds, cities, attributeOffsets, attributeIds, attributes, hoursIds, opensAt, closesAt,
+        openingHours, newOrdinals, newRemoved);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int removedCount() {
+    return removed.cardinality();
+  }
+
+  double[] latitudes() {
+    return latitudes;
+  }
+
+  double[] longitudes() {
+    return longitudes;
+  }
+
+  /**
+   * Get the ordinal of the restaurant with the given restaurantId.
+   * @return ordinal, or -1 if not in the snapshot
+   */
+  int ordinalOf(String restaurantId) {
+    Integer ordinal = ordinalsByRestaurantId.get(restaurantId);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * Evaluates every distinct opening hours once for the given time.
+   * @return flags indexed by hours id, to be passed to {@link #isOpen(boolean[], int)}
+   */
+  boolean[] openHoursAt(LocalTime time) {
+    boolean[] open = new boolean[openingHours.length];
+    for (int id = 0; id < openingHours.length; id++) {
+      open[id] = openingHours[id].isOpenAt(time);
+    }
+    return open;
+  }
+
+  /**
+   * Evaluates every distinct opening hours once for the given range, see
+   * {@link OpeningHours#isOpenDuring}.
+   */
+  boolean[] openHoursDuring(LocalTime from, LocalTime to) {
+    boolean[] open = new boolean[openingHours.length];
+    for (int id = 0; id < openingHours.length; id++) {
+      open[id] = openingHours[id].isOpenDuring(from, to);
+    }
+    return open;
+  }
+
+  boolean isOpen(boolean[] openHours, int ordinal) {
+    return openHours[hoursIds[ordinal]];
+  }
+
+  Restaurant toRestaurant(int ordinal) {
+    return new Restaurant(ids[ordinal], restaurantIds[ordinal], names[ordinal],
+        cities[cityIds[ordinal]], imageUrls[ordinal], boxed(latitudes[ordinal]),
+        boxed(longitudes[ordinal]), opensAt[hoursIds[ordinal]], closesAt[hoursIds[ordinal]],
+        attributesOf(ordinal));
+  }
+
+  RestaurantEntity toEntity(int ordinal) {
+    RestaurantEntity restaurantEntity = new RestaurantEntity();
+    restaurantEntity.setId(ids[ordinal]);
+    restaurantEntity.setRestaurantId(restaurantIds[ordinal]);
+    restaurantEntity.setName(names[ordinal]);
+    restaurantEntity.setCity(cities[cityIds[ordinal]]);
+    restaurantEntity.setImageUrl(imageUrls[ordinal]);
+    restaurantEntity.setLatitude(boxed(latitudes[ordinal]));
+    restaurantEntity.setLongitude(boxed(longitudes[ordinal]));
+    restaurantEntity.setOpensAt(opensAt[hoursIds[ordinal]]);
+    restaurantEntity.setClosesAt(closesAt[hoursIds[ordinal]]);
+    restaurantEntity.setAttributes(attributesOf(ordinal));
+    return restaurantEntity;
+  }
+
+  // Removed ordinals are left out.
+  List<RestaurantEntity> toEntities() {
+    List<RestaurantEntity> restaurantEntities = new ArrayList<>(size - removed.cardinality());
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      if (!removed.get(ordinal)) {
+        restaurantEntities.add(toEntity(ordinal));
+      }
+    }
+    return restaurantEntities;
+  }
+
+  private List<String> attributesOf(int ordinal) {
+    List<String> restaurantAttributes = new ArrayList<>(
+        attributeOffsets[ordinal + 1] - attributeOffsets[ordinal]);
+    for (int i = attributeOffsets[ordinal]; i < attributeOffsets[ordinal + 1]; i++) {
+      restaurantAttributes.add(attributes[attributeIds[i]]);
+    }
+    return restaurantAttributes;
+  }
+
+  private static <T> int indexOf(T[] values, T value) {
+    for (int i = 0; i < values.length; i++) {
+      if (Objects.equals(values[i], value)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static <T> T[] appended(T[] values, T value) {
+    T[] copy = Arrays.copyOf(values, values.length + 1);
+    copy[values.length] = value;
+    return copy;
+  }
+
+  // The column itself if the value is already there, else a copy of newSize with the value set.
+  private static <T> T[] set(T[] column, int newSize, int ordinal, T value) {
+    if (column.length == newSize && Objects.equals(column[ordinal], value)) {
+      return column;
+    }
+    T[] copy = Arrays.copyOf(column, newSize);
+    copy[ordinal] = value;
+    return copy;
+  }
+
+  private static double[] set(double[] column, int newSize, int ordinal, double value) {
+    if (column.length == newSize && Double.compare(column[ordinal], value) == 0) {
+      return column;
+    }
+    double[] copy = Arrays.copyOf(column, newSize);
+    copy[ordinal] = value;
+    return copy;
+  }
+
+  private static int[] set(int[] column, int newSize, int ordinal, int value) {
+    if (column.length == newSize && column[ordinal] == value) {
+      return column;
+    }
+    int[] copy = Arrays.copyOf(column, newSize);
+    copy[ordinal] = value;
+    return copy;
+  }
+
+  private static Double boxed(double value) {
+    return Double.isNaN(value) ? null : value;
+  }
+
+  private static String share(Map<String, String> strings, String value) {
+    if (value == null) {
+      return null;
+    }
+    String shared = strings.putIfAbsent(value, value);
+    return shared == null ? value : shared;
+  }
+
+  // Assigns dense ids to distinct values, null included, in order of first appearance.
+  private static final class Dictionary<T> {
+
+    private final Map<T, Integer> ids = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    int idOf(T value) {
+      Integer id = ids.get(value);
+      if (id == null) {
+        id = values.size();
+        ids.put(value, id);
+        values.add(value);
+      }
+      return id;
+    }
+  }
+
+}
@@ -0,0 +1,17 @@
+package com.crio.qeats.configs;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link RedisConfiguration} when Redis is reachable again after the cache was
+ * bypassed, so that writes skipped meanwhile can be made up for.
+ */
+public class CacheAvailableEvent extends ApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  public CacheAvailableEvent(Object source) {
+    super(source);
+  }
+
+}
@@ -0,0 +1,18 @@
+
+package com.crio.qeats.configs;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link RedisConfiguration#destroyCache()} so that in-process caches built on top
+ * of Redis drop their state together with it.
+ */
+public class CacheDestroyedEvent extends ApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  public CacheDestroyedEvent(Object source) {
+    super(source);
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.configs;
+
+import com.crio.qeats.globals.GlobalConstants;
+import com.crio.qeats.orders.OrderEventBatcher;
+import com.crio.qeats.orders.OrderPlacedEvent;
+import com.crio.qeats.orders.RabbitOrderEventPublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Order events over RabbitMQ, enabled with qeats.orders.broker=rabbitmq.
+ * Placed orders are published to the durable EXCHANGE_NAME exchange with ROUTING_KEY, and
+ * consumed from QUEUE_NAME. Consumed messages are left unacknowledged until the
+ * {@link OrderEventBatcher} has handled their batch, so the prefetch covers two batches.
+ */
+@Configuration
+@Log4j2
+@ConditionalOnProperty(name = "qeats.orders.broker", havingValue = "rabbitmq")
+public class RabbitMqConfiguration {
+
+  @Bean
+  public TopicExchange orderExchange() {
+    return new TopicExchange(GlobalConstants.EXCHANGE_NAME);
+  }
+
+  @Bean
+  public Queue orderQueue() {
+    return new Queue(GlobalConstants.QUEUE_NAME, true);
+  }
+
+  @Bean
+  public Binding orderBinding(Queue orderQueue, TopicExchange orderExchange) {
+    return BindingBuilder.bind(orderQueue).to(orderExchange).with(GlobalConstants.ROUTING_KEY);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  public RabbitOrderEventPublisher rabbitOrderEventPublisher(RabbitTemplate rabbitTemplate,
+      ObjectMapper objectMapper, MeterRegistry meterRegistry,
+      @Value("${qeats.orders.publish-queue-capacity:10000}") int queueCapacity) {
+    return new RabbitOrderEventPublisher(rabbitTemplate, objectMapper, meterRegistry,
+        queueCapacity);
+  }
+
+  @Bean
+  public SimpleMessageListenerContainer orderEventListenerContainer(
+      ConnectionFactory connectionFactory, OrderEventBatcher orderEventBatcher,
+      ObjectMapper objectMapper) {
+    SimpleMessageListenerContainer container =
+        new SimpleMessageListenerContainer(connectionFactory);
+    container.setQueueNames(GlobalConstants.QUEUE_NAME);
+    container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+    container.setPrefetchCount(orderEventBatcher.getBatchSize() * 2);
+    container.setMessageListener((ChannelAwareMessageListener) (message, channel) -> {
+      long deliveryTag = message.getMessageProperties().getDeliveryTag();
+      OrderPlacedEvent orderPlacedEvent;
+      try {
+        orderPlacedEvent = objectMapper.readValue(message.getBody(), OrderPlacedEvent.class);
+      } catch (IOException e) {
+        log.warn("Rejected an unreadable order event: {}", e.getMessage());
+        channel.basicReject(deliveryTag, false);
+        return;
+      }
+      orderEventBatcher.put(orderPlacedEvent, channel, deliveryTag);
+    });
+    return container;
+  }
+
+}
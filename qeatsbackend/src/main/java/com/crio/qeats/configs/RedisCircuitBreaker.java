@@ -0,0 +1,80 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.configs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks whether Redis should be used, so request threads only read a flag instead of probing.
+ * Closed lets requests through. It opens after failureThreshold consecutive failures, and after
+ * openDurationInMillis the next probe half-opens it: one successful probe closes it again, a
+ * failed one keeps it open for another period.
+ */
+final class RedisCircuitBreaker {
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openDurationInMillis;
+
+  private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private volatile long openedAt;
+
+  RedisCircuitBreaker(int failureThreshold, long openDurationInMillis) {
+    this.failureThreshold = failureThreshold;
+    this.openDurationInMillis = openDurationInMillis;
+  }
+
+  State getState() {
+    return state.get();
+  }
+
+  boolean isClosed() {
+    return state.get() == State.CLOSED;
+  }
+
+  void onSuccess() {
+    consecutiveFailures.set(0);
+    state.set(State.CLOSED);
+  }
+
+  /**
+   * Records a failed call or probe.
+   * @return true if this failure opened the breaker
+   */
+  boolean onFailure(long now) {
+    int failures = consecutiveFailures.incrementAndGet();
+    State current = state.get();
+    if (current == State.OPEN || (current == State.CLOSED && failures < failureThreshold)) {
+      return false;
+    }
+    return open(now);
+  }
+
+  /**
+   * Opens the breaker right away, as after a failed probe.
+   * @return true if it was not open before
+   */
+  boolean open(long now) {
+    openedAt = now;
+    return state.getAndSet(State.OPEN) != State.OPEN;
+  }
+
+  /**
+   * Moves an open breaker whose open period is over to half-open.
+   * @return true if the caller should now probe Redis
+   */
+  boolean tryHalfOpen(long now) {
+    return state.get() == State.OPEN && now - openedAt >= openDurationInMillis
+        && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+  }
+
+}
@@ -1,9 +1,17 @@
 
 package com.crio.qeats.configs;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
@@ -11,7 +19,14 @@ import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 
+/**
+ * Owns the Jedis pool and tracks whether Redis is usable.
+ * Availability is kept by a {@link RedisCircuitBreaker}: a background task pings Redis every
+ * qeats.redis.probe-interval-ms and callers report failed calls through {@link #reportFailure},
+ * so {@link #isCacheAvailable()} only reads a flag and requests skip Redis while it is down.
+ */
 @Component
+@Log4j2
 public class RedisConfiguration {
 
   // TODO: CRIO_TASK_MODULE_REDIS
@@ -33,6 +48,31 @@ public class RedisConfiguration {
   private JedisPool jedisPool;
   JedisPoolConfig poolConfig;
 
+  // Connect, read and pool wait timeout, so an unreachable Redis fails calls fast.
+  @Value("${qeats.redis.timeout-ms:500}")
+  private int timeoutInMillis;
+
+  @Value("${qeats.redis.pool.max-total:128}")
+  private int maxTotal;
+
+  @Value("${qeats.redis.pool.min-idle:16}")
+  private int minIdle;
+
+  @Value("${qeats.redis.breaker.failure-threshold:3}")
+  private int failureThreshold;
+
+  @Value("${qeats.redis.breaker.open-ms:5000}")
+  private long openDurationInMillis;
+
+  @Value("${qeats.redis.probe-interval-ms:1000}")
+  private long probeIntervalInMillis;
+
+  private RedisCircuitBreaker circuitBreaker;
+  private ScheduledExecutorService prober;
+
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+
   @Value("${spring.redis.port}")
   public void setRedisPort(int port) {
     System.out.println("setting up redis port to " + port);
@@ -44,39 +84,75 @@ public class RedisConfiguration {
    * TIP: Look in the direction of `JedisPool`.
    */
   @PostConstruct
-  public void initCache() {
+  public synchronized void initCache() {
     poolConfig = buildPoolConfig();
     try {
-      jedisPool = new JedisPool(poolConfig, "localhost", redisPort);
+      jedisPool = new JedisPool(poolConfig, "localhost", redisPort, timeoutInMillis);
     } catch (Exception e) {
       e.printStackTrace();
     }
+    if (circuitBreaker == null) {
+      circuitBreaker = new RedisCircuitBreaker(failureThreshold, openDurationInMillis);
+    }
+    probe(true);
+    if (prober == null) {
+      prober = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("redis-probe").setDaemon(true).build());
+      prober.scheduleWithFixedDelay(() -> probe(false), probeIntervalInMillis,
+          probeIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    if (prober != null) {
+      prober.shutdownNow();
+      prober = null;
+    }
   }
 
 
   /**
    * Checks is cache is intiailized and available.
-   * TIP: This would generally mean checking via {@link JedisPool}
+   * Only reads the state of the circuit breaker, Redis is probed in the background.
    * @return true / false if cache is available or not.
    */
   public boolean isCacheAvailable() {
-    //  try {
-    //    if (jedisPool.getResource() != null) {
-    //      return true;
-    //    }
-    //  } catch (Exception e) {
-    //    e.printStackTrace();
-    //    return false;
-    //  }
-    //  return false;
-    //}
-    if (jedisPool == null) {
-      return false;
+    RedisCircuitBreaker breaker = circuitBreaker;
+    return jedisPool != null && breaker != null && breaker.isClosed();
+  }
+
+  /**
+   * Records a failed Redis call; enough consecutive failures make the cache unavailable until a
+   * background probe succeeds.
+   */
+  public void reportFailure(Exception e) {
+    RedisCircuitBreaker breaker = circuitBreaker;
+    if (breaker != null && breaker.onFailure(System.currentTimeMillis())) {
+      log.warn("Redis calls failing, bypassing the cache: {}", e.getMessage());
     }
-    try (Jedis jedis = jedisPool.getResource()) {
-      return true; 
+  }
+
+  // An open breaker is only probed once its open period is over, unless forced.
+  private void probe(boolean force) {
+    long now = System.currentTimeMillis();
+    boolean wasClosed = circuitBreaker.isClosed();
+    if (!force && !wasClosed && !circuitBreaker.tryHalfOpen(now)) {
+      return;
+    }
+    try (Jedis jedis = getJedisPool().getResource()) {
+      jedis.ping();
+      circuitBreaker.onSuccess();
     } catch (Exception e) {
-      return false;
+      if (circuitBreaker.open(now)) {
+        log.warn("Redis unreachable, bypassing the cache: {}", e.getMessage());
+      }
+      return;
+    }
+    if (!wasClosed) {
+      log.info("Redis reachable, using the cache again");
+      // Outside the try, so that a failing listener does not open the breaker again.
+      applicationEventPublisher.publishEvent(new CacheAvailableEvent(this));
     }
   }
 
@@ -85,7 +161,10 @@ public class RedisConfiguration {
    * TIP: This is useful if cache is stale or while performing tests.
    */
   public void destroyCache() {
-    jedisPool.getResource().flushAll();
+    applicationEventPublisher.publishEvent(new CacheDestroyedEvent(this));
+    try (Jedis jedis = jedisPool.getResource()) {
+      jedis.flushAll();
+    }
     jedisPool.destroy();
   }
 
@@ -98,29 +177,35 @@ public class RedisConfiguration {
     }
     try {
       poolConfig = buildPoolConfig();
-      jedisPool = new JedisPool(poolConfig, "localhost", redisPort);
+      jedisPool = new JedisPool(poolConfig, "localhost", redisPort, timeoutInMillis);
     } catch (Exception e) {
       e.printStackTrace();
     }
     return jedisPool;
   }
 
+  public int getMaxTotal() {
+    return maxTotal;
+  }
+
   //public void setJedisPool(JedisPool jedisPool) {
   //  this.jedisPool = jedisPool;
   //}
 
   private JedisPoolConfig buildPoolConfig() {
     final JedisPoolConfig poolConfig = new JedisPoolConfig();
-    poolConfig.setMaxTotal(128);
-    poolConfig.setMaxIdle(128);
-    poolConfig.setMinIdle(16);
-    poolConfig.setTestOnBorrow(true);
-    poolConfig.setTestOnReturn(true);
+    poolConfig.setMaxTotal(maxTotal);
+    poolConfig.setMaxIdle(maxTotal);
+    poolConfig.setMinIdle(minIdle);
+    // Health is tracked by the probe, so connections are only tested while idle.
+    poolConfig.setTestOnBorrow(false);
+    poolConfig.setTestOnReturn(false);
     poolConfig.setTestWhileIdle(true);
     poolConfig.setMinEvictableIdleTimeMillis(Duration.ofSeconds(60).toMillis());
     poolConfig.setTimeBetweenEvictionRunsMillis(Duration.ofSeconds(30).toMillis());
     poolConfig.setNumTestsPerEvictionRun(3);
     poolConfig.setBlockWhenExhausted(true);
+    poolConfig.setMaxWaitMillis(timeoutInMillis);
     return poolConfig;
   }
 
@@ -0,0 +1,56 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.configs;
+
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Runs streamed GET /restaurants bodies, when qeats.restaurants.streaming.enabled is set, on a
+ * bounded pool. Spring Boot only provides one when the context has no other Executor bean, and
+ * the search executor is one, so without this every streamed response would get a new thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "qeats.restaurants.streaming.enabled", havingValue = "true")
+public class ResponseStreamingConfiguration implements WebMvcConfigurer {
+
+  @Value("${qeats.restaurants.streaming.threads:16}")
+  private int threads;
+
+  @Value("${qeats.restaurants.streaming.queue-capacity:256}")
+  private int queueCapacity;
+
+  private ThreadPoolTaskExecutor responseExecutor;
+
+  @Override
+  public synchronized void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    if (responseExecutor == null) {
+      responseExecutor = new ThreadPoolTaskExecutor();
+      responseExecutor.setCorePoolSize(threads);
+      responseExecutor.setMaxPoolSize(threads);
+      responseExecutor.setQueueCapacity(queueCapacity);
+      responseExecutor.setThreadNamePrefix("response-");
+      responseExecutor.setDaemon(true);
+      responseExecutor.initialize();
+    }
+    configurer.setTaskExecutor(responseExecutor);
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    if (responseExecutor != null) {
+      responseExecutor.shutdown();
+      responseExecutor = null;
+    }
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.configs;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SearchExecutorConfiguration {
+
+  public static final String SEARCH_EXECUTOR = "searchExecutor";
+
+  /**
+   * Thread pool running the search categories of qeats.search.mode=parallel.
+   * The queue is bounded and full-queue submissions are rejected, so a burst of searches cannot
+   * pile up work behind request threads. Pool size, queue and task timings are published under
+   * executor.* with name=search.
+   */
+  @Bean(name = SEARCH_EXECUTOR, destroyMethod = "shutdown")
+  public ExecutorService searchExecutor(MeterRegistry meterRegistry,
+      @Value("${qeats.search.threads:8}") int threads,
+      @Value("${qeats.search.queue-capacity:64}") int queueCapacity) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("search-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+    return ExecutorServiceMetrics.monitor(meterRegistry, executor, "search");
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.controller;
+
+import com.crio.qeats.dto.Restaurant;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes streamed GET /restaurants bodies with a JsonGenerator, one restaurant at a time as the
+ * repository layer hands them out, so neither the list of restaurants nor its encoded copy is
+ * held, and the body goes out chunked every flush-every restaurants. Compression is left to
+ * server.compression. The JSON is the same as the buffered GetRestaurantsResponse.
+ */
+@Component
+public class GetRestaurantsResponseWriter {
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${qeats.restaurants.streaming.flush-every:64}")
+  private int flushEvery;
+
+  // Flushing is left to write(), which flushes every flushEvery restaurants.
+  private ObjectWriter restaurantWriter;
+
+  /**
+   * Hands restaurants to the given consumer one at a time.
+   */
+  @FunctionalInterface
+  public interface RestaurantSource {
+
+    void forEach(Consumer<Restaurant> consumer);
+  }
+
+  @PostConstruct
+  public void init() {
+    restaurantWriter = objectMapper.writerFor(Restaurant.class)
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
+
+  /**
+   * Writes each restaurant of the source as soon as the source hands it out.
+   * @param restaurants where the restaurants come from, or null for a null list
+   * @param partial value of the partial field, left out when null
+   * @return how many restaurants were written
+   */
+  public int write(RestaurantSource restaurants, Boolean partial, OutputStream out)
+      throws IOException {
+    JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    generator.writeStartObject();
+    generator.writeFieldName("restaurants");
+    int[] written = new int[1];
+    if (restaurants == null) {
+      generator.writeNull();
+    } else {
+      generator.writeStartArray();
+      try {
+        restaurants.forEach(restaurant -> {
+          try {
+            restaurantWriter.writeValue(generator, restaurant);
+            if (++written[0] % flushEvery == 0) {
+              generator.flush();
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      generator.writeEndArray();
+    }
+    if (partial != null) {
+      generator.writeBooleanField("partial", partial);
+    }
+    generator.writeEndObject();
+    generator.close();
+    out.flush();
+    return written[0];
+  }
+
+}
@@ -6,27 +6,44 @@
 
 package com.crio.qeats.controller;
 
+import com.crio.qeats.cache.MenuResponseCache;
+import com.crio.qeats.cache.MenuResponseCache.EncodedMenu;
+import com.crio.qeats.dto.Cart;
+import com.crio.qeats.dto.Order;
+import com.crio.qeats.dto.OrderItem;
 import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.exceptions.EmptyCartException;
+import com.crio.qeats.exceptions.ItemNotFoundInRestaurantMenuException;
+import com.crio.qeats.exceptions.ItemNotFromSameRestaurantException;
+import com.crio.qeats.exchanges.CartItemRequest;
+import com.crio.qeats.exchanges.GetOrdersResponse;
 import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.exchanges.PostOrderRequest;
+import com.crio.qeats.services.CartAndOrderService;
 import com.crio.qeats.services.RestaurantService;
 import java.time.LocalTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.LogManager;
 
 import javax.validation.Valid;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import redis.clients.jedis.exceptions.JedisException;
 
 // TODO: CRIO_TASK_MODULE_RESTAURANTSAPI
 // Implement Controller using Spring annotations.
@@ -49,12 +66,22 @@ public class RestaurantController {
   @Autowired
   private RestaurantService restaurantService;
 
+  @Autowired
+  private MenuResponseCache menuResponseCache;
+
+  @Autowired
+  private CartAndOrderService cartAndOrderService;
+
   @RequestMapping("/trial")
   public String trial() {
     return "Trial";
   }
 
 
+  /**
+   * Close-by requests, without searchFor, go to {@link StreamingRestaurantController} instead
+   * when qeats.restaurants.streaming.enabled is set.
+   */
   @GetMapping(RESTAURANTS_API)
   public ResponseEntity<GetRestaurantsResponse> getRestaurants(
       GetRestaurantsRequest getRestaurantsRequest) {
@@ -62,19 +89,7 @@ public class RestaurantController {
     log.info("getRestaurants called with {}", getRestaurantsRequest);
     GetRestaurantsResponse getRestaurantsResponse;
 
-    if (getRestaurantsRequest.getLatitude() ==  null
-        || getRestaurantsRequest.getLongitude() == null) {
-      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-    }
-
-    if (getRestaurantsRequest.getLatitude() == null
-        || getRestaurantsRequest.getLongitude() == null
-        || getRestaurantsRequest.getLatitude().isNaN()
-        || getRestaurantsRequest.getLongitude().isNaN()
-        || getRestaurantsRequest.getLatitude().doubleValue() > 90
-        || getRestaurantsRequest.getLatitude().doubleValue() < -90
-        || getRestaurantsRequest.getLongitude().doubleValue() > 180
-        || getRestaurantsRequest.getLongitude().doubleValue() < -180) {
+    if (!hasValidLocation(getRestaurantsRequest)) {
       return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
     }
 
@@ -83,29 +98,38 @@ public class RestaurantController {
       //CHECKSTYLE:OFF
       getRestaurantsResponse = restaurantService
           .findAllRestaurantsCloseBy(getRestaurantsRequest, LocalTime.now());
-      log.info("getRestaurants returned {}", getRestaurantsResponse);
       //CHECKSTYLE:ON
-      if (getRestaurantsResponse != null) {
-        List<Restaurant> responseRestaurants = new ArrayList<>();
-        outer: for (Restaurant restaurant : getRestaurantsResponse.getRestaurants()) {
-          String name = restaurant.getName();
-          char[] letters = name.toCharArray();
-          for (int i = 0; i < letters.length; i++) {
-            if (letters[i] == 233) {
-              letters[i] = 'e';
-            }
-          }
-          restaurant.setName(new String(letters));
-          responseRestaurants.add(restaurant);
-        }
-        getRestaurantsResponse.setRestaurants(responseRestaurants);
-        return new ResponseEntity<>(getRestaurantsResponse, HttpStatus.OK);
-      } else {
+      if (getRestaurantsResponse == null) {
         return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
       }
+      for (Restaurant restaurant : getRestaurantsResponse.getRestaurants()) {
+        normalizeName(restaurant);
+      }
     } else {
-      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      //CHECKSTYLE:OFF
+      getRestaurantsResponse = restaurantService
+          .findRestaurantsBySearchQuery(getRestaurantsRequest, LocalTime.now());
+      //CHECKSTYLE:ON
     }
+    log.info("getRestaurants returned {} restaurants",
+        getRestaurantsResponse.getRestaurants().size());
+    return new ResponseEntity<>(getRestaurantsResponse, HttpStatus.OK);
+  }
+
+  static boolean hasValidLocation(GetRestaurantsRequest getRestaurantsRequest) {
+    return getRestaurantsRequest.getLatitude() != null
+        && getRestaurantsRequest.getLongitude() != null
+        && !getRestaurantsRequest.getLatitude().isNaN()
+        && !getRestaurantsRequest.getLongitude().isNaN()
+        && getRestaurantsRequest.getLatitude() <= 90
+        && getRestaurantsRequest.getLatitude() >= -90
+        && getRestaurantsRequest.getLongitude() <= 180
+        && getRestaurantsRequest.getLongitude() >= -180;
+  }
+
+  static Restaurant normalizeName(Restaurant restaurant) {
+    restaurant.setName(restaurant.getName().replace((char) 233, 'e'));
+    return restaurant;
   }
 
   // TIP(MODULE_MENUAPI): Model Implementation for getting menu given a restaurantId.
@@ -140,18 +164,120 @@ public class RestaurantController {
   //          : 5xx, if server side error.
   // Eg:
   // curl -X GET "http://localhost:8081/qeats/v1/menu?restaurantId=11"
-      
 
+  // The body is written as cached, already encoded. Clients revalidate with If-None-Match and
+  // get a 304 without a body while the menu is unchanged.
+  @GetMapping(MENU_API)
+  public ResponseEntity<byte[]> getMenu(
+      @RequestParam(value = "restaurantId", required = false) String restaurantId,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
+    if (isEmpty(restaurantId)) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
 
+    EncodedMenu encodedMenu = menuResponseCache.get(restaurantId);
+    if (encodedMenu == null) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    if (encodedMenu.matches(ifNoneMatch)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+          .eTag(encodedMenu.getEtag())
+          .cacheControl(CacheControl.noCache())
+          .build();
+    }
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON_UTF8)
+        .eTag(encodedMenu.getEtag())
+        .cacheControl(CacheControl.noCache())
+        .body(encodedMenu.getBody());
+  }
 
+  @GetMapping(CART_API)
+  public ResponseEntity<Cart> getCart(
+      @RequestParam(value = "userId", required = false) String userId) {
+    if (isEmpty(userId)) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    return new ResponseEntity<>(cartAndOrderService.getCart(userId), HttpStatus.OK);
+  }
 
+  @PostMapping(CART_ITEM_API)
+  public ResponseEntity<Cart> addItemToCart(@RequestBody CartItemRequest cartItemRequest) {
+    if (isEmpty(cartItemRequest.getUserId()) || isEmpty(cartItemRequest.getRestaurantId())
+        || isEmpty(cartItemRequest.getItemId()) || cartItemRequest.getQuantity() <= 0) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    return new ResponseEntity<>(cartAndOrderService.addItemToCart(cartItemRequest.getUserId(),
+        cartItemRequest.getRestaurantId(), cartItemRequest.getItemId(),
+        cartItemRequest.getQuantity()), HttpStatus.OK);
+  }
 
+  @DeleteMapping(CART_ITEM_API)
+  public ResponseEntity<Cart> removeItemFromCart(@RequestBody CartItemRequest cartItemRequest) {
+    if (isEmpty(cartItemRequest.getUserId()) || isEmpty(cartItemRequest.getItemId())
+        || cartItemRequest.getQuantity() <= 0) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    return new ResponseEntity<>(cartAndOrderService.removeItemFromCart(
+        cartItemRequest.getUserId(), cartItemRequest.getItemId(), cartItemRequest.getQuantity()),
+        HttpStatus.OK);
+  }
 
+  @PutMapping(CART_CLEAR_API)
+  public ResponseEntity<Cart> clearCart(
+      @RequestParam(value = "userId", required = false) String userId) {
+    if (isEmpty(userId)) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    return new ResponseEntity<>(cartAndOrderService.clearCart(userId), HttpStatus.OK);
+  }
 
+  // Orders the given items, or the user's cart if there are none. Returns once the order is
+  // saved; the user and the restaurant are notified afterwards.
+  @PostMapping(POST_ORDER_API)
+  public ResponseEntity<Order> postOrder(@RequestBody PostOrderRequest postOrderRequest) {
+    if (isEmpty(postOrderRequest.getUserId())) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    if (postOrderRequest.getItems() != null && !postOrderRequest.getItems().isEmpty()) {
+      if (isEmpty(postOrderRequest.getRestaurantId())) {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      }
+      for (OrderItem item : postOrderRequest.getItems()) {
+        if (item == null || isEmpty(item.getItemId()) || item.getQuantity() <= 0) {
+          return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+      }
+    }
+    return new ResponseEntity<>(cartAndOrderService.postOrder(postOrderRequest), HttpStatus.OK);
+  }
+
+  @GetMapping(GET_ORDERS_API)
+  public ResponseEntity<GetOrdersResponse> getOrders(
+      @RequestParam(value = "userId", required = false) String userId) {
+    if (isEmpty(userId)) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+    return new ResponseEntity<>(cartAndOrderService.getOrders(userId), HttpStatus.OK);
+  }
 
+  @ExceptionHandler({ItemNotFromSameRestaurantException.class,
+      ItemNotFoundInRestaurantMenuException.class, EmptyCartException.class})
+  public ResponseEntity<Void> handleInvalidCart(RuntimeException e) {
+    log.info("Rejected cart request: {}", e.getMessage());
+    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+  }
 
+  // Carts only live in Redis, so they are unavailable while it is.
+  @ExceptionHandler(JedisException.class)
+  public ResponseEntity<Void> handleRedisFailure(JedisException e) {
+    log.warn("Redis unavailable: {}", e.getMessage());
+    return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+  }
 
+  private static boolean isEmpty(String value) {
+    return value == null || value.trim().isEmpty();
+  }
 
 }
-
@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.controller;
+
+import com.crio.qeats.exchanges.GetRestaurantsRequest;
+import com.crio.qeats.services.RestaurantService;
+import java.time.LocalTime;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Streams close-by GET /restaurants responses when qeats.restaurants.streaming.enabled is set.
+ * Requests without searchFor match this mapping ahead of
+ * {@link RestaurantController#getRestaurants}, which keeps answering searches, and all requests
+ * when streaming is off, synchronously.
+ */
+@RestController
+@Log4j2
+@ConditionalOnProperty(name = "qeats.restaurants.streaming.enabled", havingValue = "true")
+@RequestMapping(RestaurantController.RESTAURANT_API_ENDPOINT)
+public class StreamingRestaurantController {
+
+  @Autowired
+  private RestaurantService restaurantService;
+
+  @Autowired
+  private GetRestaurantsResponseWriter getRestaurantsResponseWriter;
+
+  @GetMapping(value = RestaurantController.RESTAURANTS_API, params = "!searchFor")
+  public ResponseEntity<StreamingResponseBody> streamRestaurants(
+      GetRestaurantsRequest getRestaurantsRequest) {
+
+    log.info("streamRestaurants called with {}", getRestaurantsRequest);
+    if (!RestaurantController.hasValidLocation(getRestaurantsRequest)) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    //CHECKSTYLE:OFF
+    LocalTime currentTime = LocalTime.now();
+    //CHECKSTYLE:ON
+    // Restaurants are looked up while the body is written, after the headers went out.
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(out -> {
+      int written = getRestaurantsResponseWriter.write(
+          consumer -> restaurantService.forEachRestaurantCloseBy(getRestaurantsRequest,
+              currentTime,
+              restaurant -> consumer.accept(RestaurantController.normalizeName(restaurant))),
+          null, out);
+      log.info("streamRestaurants wrote {} restaurants", written);
+    });
+  }
+
+}
@@ -0,0 +1,29 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Cart {
+
+  private String userId;
+
+  // Null while the cart is empty.
+  private String restaurantId;
+
+  private List<CartItem> items = new ArrayList<>();
+
+  private double total;
+
+}
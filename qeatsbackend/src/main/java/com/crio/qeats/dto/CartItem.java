@@ -0,0 +1,32 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.dto;
+
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItem {
+
+  @NotNull
+  private String itemId;
+
+  // Null if the item is no longer on the menu.
+  private String name;
+
+  @NotNull
+  private int quantity;
+
+  // Current unit price, 0 if the item is no longer on the menu.
+  @NotNull
+  private double price;
+
+}
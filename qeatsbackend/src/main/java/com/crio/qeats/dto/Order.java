@@ -0,0 +1,35 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Order {
+
+  private String id;
+
+  private String userId;
+
+  private String restaurantId;
+
+  private List<OrderItem> items = new ArrayList<>();
+
+  private double total;
+
+  private String status;
+
+  // Epoch milliseconds.
+  private long placedAt;
+
+}
@@ -0,0 +1,30 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.exchanges;
+
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItemRequest {
+
+  @NotNull
+  private String userId;
+
+  // Only needed to add items.
+  private String restaurantId;
+
+  @NotNull
+  private String itemId;
+
+  private int quantity = 1;
+
+}
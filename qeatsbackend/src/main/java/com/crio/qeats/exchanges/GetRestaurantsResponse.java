@@ -7,6 +7,7 @@
 package com.crio.qeats.exchanges;
 
 import com.crio.qeats.dto.Restaurant;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,6 +20,14 @@ public class GetRestaurantsResponse {
 
   List<Restaurant> restaurants;
 
+  // True when some search categories did not finish in time; left out of the JSON otherwise.
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  Boolean partial;
+
+  public GetRestaurantsResponse(List<Restaurant> restaurants) {
+    this.restaurants = restaurants;
+  }
+
   public void setRestaurants(List<Restaurant> restaurants) {
     this.restaurants = restaurants;
   }
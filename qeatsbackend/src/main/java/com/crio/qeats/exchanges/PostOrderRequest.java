@@ -0,0 +1,30 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.exchanges;
+
+import com.crio.qeats.dto.OrderItem;
+import java.util.ArrayList;
+import java.util.List;
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostOrderRequest {
+
+  @NotNull
+  private String userId;
+
+  // Both left out to order the user's cart.
+  private String restaurantId;
+
+  private List<OrderItem> items = new ArrayList<>();
+
+}
@@ -6,6 +6,10 @@ public class GlobalConstants {
   // Amount of time after which the redis entries should expire.
   public static final int REDIS_ENTRY_EXPIRY_IN_SECONDS = 3600;
 
+  // Serving radius during the breakfast, lunch and dinner peaks, and outside them.
+  public static final double PEAK_HOURS_SERVING_RADIUS_IN_KMS = 3.0;
+  public static final double NORMAL_HOURS_SERVING_RADIUS_IN_KMS = 5.0;
+
   // TIP(MODULE_RABBITMQ): RabbitMQ related configs.
   public static final String EXCHANGE_NAME = "rabbitmq-exchange";
   public static final String QUEUE_NAME = "rabbitmq-queue";
@@ -8,13 +8,16 @@
 package com.crio.qeats.models;
 
 import com.crio.qeats.dto.Item;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import javax.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
@@ -27,9 +30,15 @@ public class MenuEntity {
   private String id;
 
   @NotNull
+  @Indexed
   private String restaurantId;
 
   @NotNull
   private List<Item> items = new ArrayList();
 
+  // When the document was last inserted or updated, which every writer has to set so that
+  // CatalogSync can poll for changes.
+  @JsonIgnore
+  private Date lastModifiedAt;
+
 }
@@ -0,0 +1,114 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.models;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening hours of a restaurant, parsed once from its opensAt and closesAt strings into
+ * time-of-day ranges, so checking them does not parse or allocate.
+ * Several slots are written as comma separated lists paired by position, e.g. opensAt
+ * "11:00,18:00" with closesAt "15:00,23:00". A slot closing before it opens runs past
+ * midnight, one opening and closing at the same time runs around the clock, and "24:00" closes
+ * at the end of the day. A restaurant is open strictly between opening and closing time.
+ */
+public final class OpeningHours {
+
+  private static final String SLOT_SEPARATOR = ",";
+  private static final String END_OF_DAY = "24:00";
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final long NANOS_PER_DAY = TimeUnit.DAYS.toNanos(1);
+
+  private static final OpeningHours CLOSED = new OpeningHours(new long[0], new long[0]);
+
+  private final long[] opens;
+  private final long[] closes;
+
+  private OpeningHours(long[] opens, long[] closes) {
+    this.opens = opens;
+    this.closes = closes;
+  }
+
+  /**
+   * Parses the given opening and closing times.
+   * @return opening hours, never open if either value is missing
+   * @throws IllegalArgumentException if the number of opening and closing times differ
+   * @throws java.time.format.DateTimeParseException if a time cannot be parsed
+   */
+  public static OpeningHours parse(String opensAt, String closesAt) {
+    if (opensAt == null || closesAt == null) {
+      return CLOSED;
+    }
+    String[] openingTimes = opensAt.split(SLOT_SEPARATOR);
+    String[] closingTimes = closesAt.split(SLOT_SEPARATOR);
+    if (openingTimes.length != closingTimes.length) {
+      throw new IllegalArgumentException("Opening hours " + opensAt + " and closing hours "
+          + closesAt + " do not pair up");
+    }
+
+    long[] opens = new long[openingTimes.length];
+    long[] closes = new long[closingTimes.length];
+    for (int i = 0; i < openingTimes.length; i++) {
+      opens[i] = toNanoOfDay(openingTimes[i].trim());
+      closes[i] = toNanoOfDay(closingTimes[i].trim());
+    }
+    return new OpeningHours(opens, closes);
+  }
+
+  /**
+   * Check whether the restaurant is open at the given time.
+   * @return true if some slot is open at the given time
+   */
+  public boolean isOpenAt(LocalTime time) {
+    long now = time.toNanoOfDay();
+    for (int i = 0; i < opens.length; i++) {
+      long open = opens[i];
+      long close = closes[i];
+      if (open == close
+          || (open < close && open < now && now < close)
+          || (open > close && (open < now || now < close))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check whether the restaurant is open at some time in [from, to), where a to of midnight
+   * stands for the end of the day.
+   * @return true if isOpenAt holds for some time in the range
+   */
+  public boolean isOpenDuring(LocalTime from, LocalTime to) {
+    long start = from.toNanoOfDay();
+    long end = to.equals(LocalTime.MIDNIGHT) ? NANOS_PER_DAY : to.toNanoOfDay();
+    for (int i = 0; i < opens.length; i++) {
+      long open = opens[i];
+      long close = closes[i];
+      if (open == close
+          || (open < close && overlaps(open, close, start, end))
+          || (open > close && (overlaps(open, NANOS_PER_DAY, start, end) || start < close))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // True if some time in the open range (open, close) falls in [start, end).
+  private static boolean overlaps(long open, long close, long start, long end) {
+    long earliest = Math.max(open, start);
+    return earliest < close && earliest < end;
+  }
+
+  private static long toNanoOfDay(String time) {
+    if (END_OF_DAY.equals(time)) {
+      return NANOS_PER_DAY;
+    }
+    return LocalTime.parse(time).toSecondOfDay() * NANOS_PER_SECOND;
+  }
+
+}
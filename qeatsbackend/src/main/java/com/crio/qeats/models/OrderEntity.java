@@ -0,0 +1,61 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.models;
+
+import com.crio.qeats.dto.OrderItem;
+import java.util.ArrayList;
+import java.util.List;
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Document(collection = "orders")
+// Lets OrderEventSweeper find the orders left PLACED without scanning the others.
+@CompoundIndex(name = "status_placedAt", def = "{'status': 1, 'placedAt': 1}")
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEntity {
+
+  // Saved by POST /order, before any side effect ran.
+  public static final String PLACED = "PLACED";
+  // The user and the restaurant have been notified.
+  public static final String NOTIFIED = "NOTIFIED";
+
+  @Id
+  private String id;
+
+  @NotNull
+  @Indexed
+  private String userId;
+
+  @NotNull
+  private String restaurantId;
+
+  @NotNull
+  private List<OrderItem> items = new ArrayList<>();
+
+  // Priced when the order was placed.
+  @NotNull
+  private double total;
+
+  @NotNull
+  private String status;
+
+  // Epoch milliseconds.
+  @NotNull
+  private long placedAt;
+
+  // Epoch milliseconds of the last time OrderEventSweeper claimed the order, null before that.
+  private Long republishedAt;
+
+}
@@ -0,0 +1,50 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.models;
+
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A notification about an order, waiting to be delivered to the user or to the restaurant.
+ * The id is derived from the order and the recipient, so writing it again is harmless.
+ */
+@Data
+@Document(collection = "order_notifications")
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderNotificationEntity {
+
+  public static final String USER = "user";
+  public static final String RESTAURANT = "restaurant";
+
+  @Id
+  private String id;
+
+  @NotNull
+  private String orderId;
+
+  // USER or RESTAURANT.
+  @NotNull
+  private String recipientType;
+
+  @NotNull
+  private String recipientId;
+
+  // Epoch milliseconds.
+  @NotNull
+  private long createdAt;
+
+  public static String idOf(String orderId, String recipientType) {
+    return orderId + ":" + recipientType;
+  }
+
+}
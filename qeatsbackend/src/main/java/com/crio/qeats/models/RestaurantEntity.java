@@ -6,12 +6,19 @@
 
 package com.crio.qeats.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import javax.validation.constraints.NotNull;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 // Java class that maps to Mongo collection.
@@ -50,5 +57,59 @@ public class RestaurantEntity {
   @NotNull
   private List<String> attributes = new ArrayList<>();
 
-}
+  // GeoJSON copy of latitude/longitude, queried through the 2dsphere index when
+  // qeats.nearby.source=mongo. The coordinate setters keep it in step, so saving an entity
+  // saves its current location. It is not part of the cached JSON.
+  @JsonIgnore
+  private GeoJsonPoint location;
+
+  // When the document was last inserted or updated, which every writer has to set so that
+  // CatalogSync can poll for changes. It is not part of the cached JSON.
+  @JsonIgnore
+  private Date lastModifiedAt;
+
+  // Parsed form of opensAt and closesAt, built on first use and dropped when either changes.
+  @Transient
+  @JsonIgnore
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  private transient OpeningHours openingHours;
+
+  public void setLatitude(Double latitude) {
+    this.latitude = latitude;
+    this.location = locationOf(latitude, longitude);
+  }
+
+  public void setLongitude(Double longitude) {
+    this.longitude = longitude;
+    this.location = locationOf(latitude, longitude);
+  }
 
+  public void setOpensAt(String opensAt) {
+    this.opensAt = opensAt;
+    this.openingHours = null;
+  }
+
+  public void setClosesAt(String closesAt) {
+    this.closesAt = closesAt;
+    this.openingHours = null;
+  }
+
+  public OpeningHours getOpeningHours() {
+    OpeningHours hours = openingHours;
+    if (hours == null) {
+      hours = OpeningHours.parse(opensAt, closesAt);
+      openingHours = hours;
+    }
+    return hours;
+  }
+
+  /**
+   * Get the GeoJSON location of the given coordinates.
+   * @return the location, or null unless both coordinates are known
+   */
+  public static GeoJsonPoint locationOf(Double latitude, Double longitude) {
+    return latitude == null || longitude == null ? null : new GeoJsonPoint(longitude, latitude);
+  }
+
+}
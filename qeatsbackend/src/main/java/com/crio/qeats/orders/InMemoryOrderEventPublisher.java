@@ -0,0 +1,36 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands events straight to the {@link OrderEventBatcher} of this JVM, in place of a broker.
+ * Events dropped from a full queue, or still queued when the process dies, are left to the
+ * {@link OrderEventSweeper}.
+ */
+@Component
+@Log4j2
+@ConditionalOnProperty(name = "qeats.orders.broker", havingValue = "in-memory",
+    matchIfMissing = true)
+public class InMemoryOrderEventPublisher implements OrderEventPublisher {
+
+  @Autowired
+  private OrderEventBatcher orderEventBatcher;
+
+  @Override
+  public void publish(OrderPlacedEvent orderPlacedEvent) {
+    if (!orderEventBatcher.offer(orderPlacedEvent)) {
+      log.warn("Order event queue full, dropped the event of order {}",
+          orderPlacedEvent.getOrderId());
+    }
+  }
+
+}
@@ -0,0 +1,231 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects order events into batches for the {@link OrderEventHandler}, on one background
+ * thread. A batch is handed over once it holds qeats.orders.batch-size events, or
+ * qeats.orders.batch-wait-ms after its first event arrived. Failed batches are retried a few
+ * times; the handler is idempotent, so events handled twice do no harm.
+ * Events received from RabbitMQ are acknowledged once their batch is handled, with one
+ * multiple-ack per channel, or rejected without requeueing if it kept failing.
+ */
+@Component
+@Log4j2
+public class OrderEventBatcher {
+
+  private static final long RETRY_DELAY_IN_MILLIS = 200;
+  private static final long POLL_INTERVAL_IN_MILLIS = 1000;
+
+  @Autowired
+  private OrderEventHandler orderEventHandler;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.orders.batch-size:100}")
+  private int batchSize;
+
+  @Value("${qeats.orders.batch-wait-ms:50}")
+  private long batchWaitInMillis;
+
+  @Value("${qeats.orders.queue-capacity:10000}")
+  private int queueCapacity;
+
+  @Value("${qeats.orders.max-attempts:3}")
+  private int maxAttempts;
+
+  private BlockingQueue<Delivery> deliveries;
+  private Counter handled;
+  private Counter failed;
+  private Counter dropped;
+  private DistributionSummary batchSizes;
+
+  private volatile boolean running;
+  private Thread worker;
+
+  @PostConstruct
+  public void init() {
+    deliveries = new ArrayBlockingQueue<>(queueCapacity);
+    handled = Counter.builder("orders.events").tag("result", "handled").register(meterRegistry);
+    failed = Counter.builder("orders.events").tag("result", "failed").register(meterRegistry);
+    dropped = Counter.builder("orders.events").tag("result", "dropped").register(meterRegistry);
+    batchSizes = DistributionSummary.builder("orders.events.batch")
+        .description("Order events handled together")
+        .register(meterRegistry);
+    Gauge.builder("orders.events.pending", deliveries, BlockingQueue::size)
+        .register(meterRegistry);
+
+    running = true;
+    worker = new Thread(this::run, "order-events");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    worker.interrupt();
+    worker.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Queues an event published in this JVM, without blocking.
+   * @return false if the queue is full and the event was dropped
+   */
+  public boolean offer(OrderPlacedEvent orderPlacedEvent) {
+    boolean queued = deliveries.offer(new Delivery(orderPlacedEvent, null, 0));
+    if (!queued) {
+      dropped.increment();
+    }
+    return queued;
+  }
+
+  /**
+   * Queues an event delivered by RabbitMQ, waiting while the queue is full; it is acknowledged
+   * on the given channel once handled.
+   */
+  public void put(OrderPlacedEvent orderPlacedEvent, Channel channel, long deliveryTag)
+      throws InterruptedException {
+    deliveries.put(new Delivery(orderPlacedEvent, channel, deliveryTag));
+  }
+
+  private void run() {
+    List<Delivery> batch = new ArrayList<>(batchSize);
+    while (running) {
+      try {
+        collect(batch);
+      } catch (InterruptedException e) {
+        // Stopping; what was collected is still handled below.
+      }
+      if (!batch.isEmpty()) {
+        process(batch);
+        batch.clear();
+      }
+    }
+    // Events already handed over are handled before the application stops.
+    while (deliveries.drainTo(batch, batchSize) > 0) {
+      process(batch);
+      batch.clear();
+    }
+  }
+
+  private void collect(List<Delivery> batch) throws InterruptedException {
+    Delivery first = deliveries.poll(POLL_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return;
+    }
+    batch.add(first);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitInMillis);
+    while (batch.size() < batchSize) {
+      deliveries.drainTo(batch, batchSize - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() == batchSize || remaining <= 0) {
+        return;
+      }
+      Delivery next = deliveries.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+    }
+  }
+
+  private void process(List<Delivery> batch) {
+    List<OrderPlacedEvent> events = new ArrayList<>(batch.size());
+    for (Delivery delivery : batch) {
+      events.add(delivery.event);
+    }
+    boolean succeeded = false;
+    for (int attempt = 1; attempt <= maxAttempts && !succeeded; attempt++) {
+      try {
+        orderEventHandler.handle(events);
+        succeeded = true;
+      } catch (Exception e) {
+        log.warn("Handling {} order events failed, attempt {} of {}: {}", events.size(), attempt,
+            maxAttempts, e.getMessage());
+        if (attempt < maxAttempts && !sleep(RETRY_DELAY_IN_MILLIS * attempt)) {
+          break;
+        }
+      }
+    }
+    batchSizes.record(events.size());
+    (succeeded ? handled : failed).increment(events.size());
+    acknowledge(batch, succeeded);
+  }
+
+  // Deliveries of a channel arrive in tag order, so acknowledging the highest tag with
+  // multiple=true covers the whole batch on that channel.
+  private static void acknowledge(List<Delivery> batch, boolean succeeded) {
+    Map<Channel, Long> lastTags = new LinkedHashMap<>();
+    for (Delivery delivery : batch) {
+      if (delivery.channel != null) {
+        lastTags.merge(delivery.channel, delivery.deliveryTag, Math::max);
+      }
+    }
+    for (Map.Entry<Channel, Long> entry : lastTags.entrySet()) {
+      try {
+        if (succeeded) {
+          entry.getKey().basicAck(entry.getValue(), true);
+        } else {
+          entry.getKey().basicNack(entry.getValue(), true, false);
+        }
+      } catch (IOException e) {
+        // The broker redelivers unacknowledged messages once the channel is gone.
+        log.warn("Could not acknowledge order events: {}", e.getMessage());
+      }
+    }
+  }
+
+  private static boolean sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static final class Delivery {
+
+    private final OrderPlacedEvent event;
+    private final Channel channel;
+    private final long deliveryTag;
+
+    Delivery(OrderPlacedEvent event, Channel channel, long deliveryTag) {
+      this.event = event;
+      this.channel = channel;
+      this.deliveryTag = deliveryTag;
+    }
+  }
+
+}
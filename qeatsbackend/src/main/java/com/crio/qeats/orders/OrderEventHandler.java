@@ -0,0 +1,74 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import com.crio.qeats.models.OrderEntity;
+import com.crio.qeats.models.OrderNotificationEntity;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the side effects of placed orders, a batch at a time: queues a notification for the user
+ * and one for the restaurant, then marks the orders NOTIFIED. Each batch costs one bulk write and
+ * one multi-update, whatever its size. Notifications are upserted by id, so a batch handled again
+ * after a redelivery changes nothing.
+ */
+@Component
+public class OrderEventHandler {
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  public void handle(List<OrderPlacedEvent> orderPlacedEvents) {
+    if (orderPlacedEvents.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    BulkOperations notifications = mongoTemplate.bulkOps(BulkMode.UNORDERED,
+        OrderNotificationEntity.class);
+    List<String> orderIds = new ArrayList<>(orderPlacedEvents.size());
+    for (OrderPlacedEvent event : orderPlacedEvents) {
+      notifications.upsert(
+          notificationQuery(event.getOrderId(), OrderNotificationEntity.USER),
+          notificationUpdate(event.getOrderId(), OrderNotificationEntity.USER,
+              event.getUserId(), now));
+      notifications.upsert(
+          notificationQuery(event.getOrderId(), OrderNotificationEntity.RESTAURANT),
+          notificationUpdate(event.getOrderId(), OrderNotificationEntity.RESTAURANT,
+              event.getRestaurantId(), now));
+      orderIds.add(event.getOrderId());
+    }
+    notifications.execute();
+
+    mongoTemplate.updateMulti(
+        new Query(Criteria.where("_id").in(orderIds).and("status").is(OrderEntity.PLACED)),
+        Update.update("status", OrderEntity.NOTIFIED), OrderEntity.class);
+  }
+
+  private static Query notificationQuery(String orderId, String recipientType) {
+    return new Query(
+        Criteria.where("_id").is(OrderNotificationEntity.idOf(orderId, recipientType)));
+  }
+
+  private static Update notificationUpdate(String orderId, String recipientType,
+      String recipientId, long now) {
+    return new Update()
+        .setOnInsert("orderId", orderId)
+        .setOnInsert("recipientType", recipientType)
+        .setOnInsert("recipientId", recipientId)
+        .setOnInsert("createdAt", now);
+  }
+
+}
@@ -0,0 +1,18 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+public interface OrderEventPublisher {
+
+  /**
+   * Hands the event over to the consumers without waiting for them.
+   * Failures are logged and counted but not thrown, since the order is already saved and stays
+   * PLACED until its event is handled; {@link OrderEventSweeper} publishes it again later.
+   */
+  void publish(OrderPlacedEvent orderPlacedEvent);
+
+}
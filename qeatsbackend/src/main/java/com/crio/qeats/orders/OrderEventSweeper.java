@@ -0,0 +1,122 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import com.crio.qeats.models.OrderEntity;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes again, every qeats.orders.sweep-interval-ms, the events of orders still PLACED
+ * qeats.orders.republish-after-seconds after they were placed. That recovers events which never
+ * got handled: failed publishes, events dropped by a full or crashed in-memory queue, and
+ * batches rejected after their last attempt. The handler is idempotent, so an event that was
+ * only slow is handled twice without harm. Each sweep republishes at most
+ * qeats.orders.sweep-batch-size orders, oldest first.
+ * Every instance sweeps, so each order is first claimed with a findAndModify that stamps its
+ * republishedAt; other instances skip it until republish-after-seconds have passed again.
+ */
+@Component
+@Log4j2
+public class OrderEventSweeper {
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private OrderEventPublisher orderEventPublisher;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.orders.republish-after-seconds:60}")
+  private long republishAfterInSeconds;
+
+  // 0 disables sweeping.
+  @Value("${qeats.orders.sweep-interval-ms:30000}")
+  private long sweepIntervalInMillis;
+
+  @Value("${qeats.orders.sweep-batch-size:500}")
+  private int sweepBatchSize;
+
+  private Counter republished;
+  private ScheduledExecutorService sweeper;
+
+  @PostConstruct
+  public synchronized void init() {
+    republished = Counter.builder("orders.events").tag("result", "republished")
+        .register(meterRegistry);
+    if (sweepIntervalInMillis > 0) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("order-sweeper").setDaemon(true).build());
+      sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepIntervalInMillis,
+          sweepIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Claims and republishes the events of the oldest orders left PLACED for too long.
+   * @return how many events were republished
+   */
+  public int sweep() {
+    long now = System.currentTimeMillis();
+    long cutoff = now - TimeUnit.SECONDS.toMillis(republishAfterInSeconds);
+    Query query = Query.query(Criteria.where("status").is(OrderEntity.PLACED)
+        .and("placedAt").lt(cutoff)
+        .orOperator(Criteria.where("republishedAt").exists(false),
+            Criteria.where("republishedAt").lt(cutoff)))
+        .with(Sort.by(Sort.Direction.ASC, "placedAt"));
+    Update claim = Update.update("republishedAt", now);
+    int count = 0;
+    while (count < sweepBatchSize) {
+      OrderEntity orderEntity = mongoTemplate.findAndModify(query, claim, OrderEntity.class);
+      if (orderEntity == null) {
+        break;
+      }
+      orderEventPublisher.publish(OrderPlacedEvent.of(orderEntity));
+      count++;
+    }
+    if (count > 0) {
+      republished.increment(count);
+      log.info("Republished the events of {} orders still PLACED", count);
+    }
+    return count;
+  }
+
+  // An exception would cancel the schedule.
+  private void sweepQuietly() {
+    try {
+      sweep();
+    } catch (Exception e) {
+      log.warn("Order sweep failed: {}", e.getMessage());
+    }
+  }
+
+}
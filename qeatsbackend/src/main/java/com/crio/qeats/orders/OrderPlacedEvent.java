@@ -0,0 +1,41 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import com.crio.qeats.dto.OrderItem;
+import com.crio.qeats.models.OrderEntity;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Published once an order is saved, so its side effects run after POST /order has returned.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPlacedEvent {
+
+  private String orderId;
+
+  private String userId;
+
+  private String restaurantId;
+
+  private List<OrderItem> items = new ArrayList<>();
+
+  // Epoch milliseconds.
+  private long placedAt;
+
+  public static OrderPlacedEvent of(OrderEntity orderEntity) {
+    return new OrderPlacedEvent(orderEntity.getId(), orderEntity.getUserId(),
+        orderEntity.getRestaurantId(), orderEntity.getItems(), orderEntity.getPlacedAt());
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import com.crio.qeats.globals.GlobalConstants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * Publishes persistent JSON messages to the qeats.postorder routing key of the order exchange.
+ * Sends run on one background thread behind a bounded queue, so a slow, blocked or unreachable
+ * broker never holds up POST /order. Events that do not fit in the queue or fail to send are
+ * counted and left to {@link OrderEventSweeper}.
+ */
+@Log4j2
+public class RabbitOrderEventPublisher implements OrderEventPublisher {
+
+  private final RabbitTemplate rabbitTemplate;
+  private final ObjectMapper objectMapper;
+  private final Counter failures;
+  private final ExecutorService sender;
+
+  public RabbitOrderEventPublisher(RabbitTemplate rabbitTemplate, ObjectMapper objectMapper,
+      MeterRegistry meterRegistry, int queueCapacity) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.objectMapper = objectMapper;
+    this.failures = Counter.builder("orders.events").tag("result", "publish-failed")
+        .register(meterRegistry);
+    this.sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("order-publisher").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  @Override
+  public void publish(OrderPlacedEvent orderPlacedEvent) {
+    try {
+      sender.execute(() -> send(orderPlacedEvent));
+    } catch (RejectedExecutionException e) {
+      failures.increment();
+      log.warn("Could not queue the event of order {} for publishing",
+          orderPlacedEvent.getOrderId());
+    }
+  }
+
+  public void shutdown() {
+    sender.shutdownNow();
+  }
+
+  private void send(OrderPlacedEvent orderPlacedEvent) {
+    try {
+      rabbitTemplate.send(GlobalConstants.EXCHANGE_NAME, GlobalConstants.ROUTING_KEY,
+          MessageBuilder.withBody(objectMapper.writeValueAsBytes(orderPlacedEvent))
+              .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+              .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+              .build());
+    } catch (AmqpException | JsonProcessingException e) {
+      failures.increment();
+      log.warn("Could not publish the event of order {}: {}", orderPlacedEvent.getOrderId(),
+          e.getMessage());
+    }
+  }
+
+}
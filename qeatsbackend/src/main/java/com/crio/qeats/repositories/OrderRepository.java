@@ -0,0 +1,17 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositories;
+
+import com.crio.qeats.models.OrderEntity;
+import java.util.List;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface OrderRepository extends MongoRepository<OrderEntity, String> {
+
+  List<OrderEntity> findOrdersByUserIdOrderByPlacedAtDesc(String userId);
+
+}
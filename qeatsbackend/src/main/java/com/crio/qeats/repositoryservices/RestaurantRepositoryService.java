@@ -7,9 +7,12 @@
 package com.crio.qeats.repositoryservices;
 
 import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.search.SearchCategory;
 import java.time.LocalTime;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import org.springframework.scheduling.annotation.Async;
 
 public interface RestaurantRepositoryService {
@@ -28,6 +31,14 @@ public interface RestaurantRepositoryService {
   List<Restaurant> findAllRestaurantsCloseBy(Double latitude, Double longitude,
       LocalTime currentTime, Double servingRadiusInKms);
 
+  /**
+   * Same restaurants as findAllRestaurantsCloseBy, handed to the consumer one at a time as they
+   * are found instead of collected into a list first.
+   * @param consumer called once per open restaurant within the radius
+   */
+  void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> consumer);
+
 
   /**
    * Get the list of open restaurants within the specified serving radius.
@@ -68,6 +79,25 @@ public interface RestaurantRepositoryService {
   List<Restaurant> findRestaurantsByItemAttributes(Double latitude, Double longitude,
       String searchString, LocalTime currentTime, Double servingRadiusInKms);
 
+  /**
+   * Get the list of open restaurants within the specified serving radius that match the search
+   * string by name, attributes, item name or item attributes, in that order of priority.
+   * The nearby restaurants are only looked up once.
+   * @param searchString The restaurant name, cuisine, food item or item attribute to search for
+   * @return list of restaurants, each one at most once, ranked as documented by
+   *     RestaurantService#findRestaurantsBySearchQuery
+   */
+  List<Restaurant> searchRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms);
+
+  /**
+   * Same as {@link #searchRestaurants(Double, Double, String, LocalTime, Double)}, but only
+   * matches in the given categories count.
+   */
+  List<Restaurant> searchRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms,
+      Set<SearchCategory> categories);
+
 }
 
 
@@ -2,6 +2,7 @@
 package com.crio.qeats.repositoryservices;
 
 import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.search.SearchCategory;
 import com.crio.qeats.utils.FixtureHelpers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -9,8 +10,10 @@ import java.io.IOException;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
@@ -43,6 +46,13 @@ public class RestaurantRepositoryServiceDummyImpl implements RestaurantRepositor
     return restaurantList;
   }
 
+  @Override
+  public void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> consumer) {
+    findAllRestaurantsCloseBy(latitude, longitude, currentTime, servingRadiusInKms)
+        .forEach(consumer);
+  }
+
 
 
   public List<Restaurant> findRestaurantsByName(Double latitude, Double longitude,
@@ -71,6 +81,17 @@ public class RestaurantRepositoryServiceDummyImpl implements RestaurantRepositor
     return null;
   }
 
+  public List<Restaurant> searchRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    return null;
+  }
+
+  public List<Restaurant> searchRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms,
+      Set<SearchCategory> categories) {
+    return null;
+  }
+
 
 }
 
@@ -0,0 +1,95 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+/**
+ * Variant of {@link RestaurantRepositoryServiceImpl} that lets MongoDB do the radius filtering
+ * with a 2dsphere index, so only restaurants inside the serving radius leave the database.
+ * Enabled with qeats.nearby.source=mongo.
+ */
+@Service
+@Log4j2
+@ConditionalOnProperty(name = "qeats.nearby.source", havingValue = "mongo")
+public class RestaurantRepositoryServiceGeoQueryImpl extends RestaurantRepositoryServiceImpl {
+
+  private static final double EARTH_RADIUS_IN_KMS = 6371.0;
+
+  // Mongo and GeoUtils do not round the same way, so query a slightly larger sphere and
+  // leave the exact cut to the haversine check.
+  private static final double RADIUS_SLACK = 1.001;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  /**
+   * Makes sure every restaurant document carries a GeoJSON location and that the 2dsphere index
+   * on it exists. Later writes keep the location in step: RestaurantEntity sets it with the
+   * coordinates, and CatalogSync fixes documents written outside this application.
+   */
+  @PostConstruct
+  public void ensureGeoIndex() {
+    Query missingLocation = new Query(Criteria.where("location").exists(false));
+    missingLocation.fields().include("latitude").include("longitude");
+
+    BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED,
+        RestaurantEntity.class);
+    int pendingUpdates = 0;
+    for (RestaurantEntity restaurantEntity
+        : mongoTemplate.find(missingLocation, RestaurantEntity.class)) {
+      if (restaurantEntity.getLatitude() == null || restaurantEntity.getLongitude() == null) {
+        continue;
+      }
+      bulkOperations.updateOne(Query.query(Criteria.where("_id").is(restaurantEntity.getId())),
+          Update.update("location", RestaurantEntity.locationOf(restaurantEntity.getLatitude(),
+              restaurantEntity.getLongitude())));
+      pendingUpdates++;
+    }
+    if (pendingUpdates > 0) {
+      bulkOperations.execute();
+      log.info("Added GeoJSON location to {} restaurants", pendingUpdates);
+    }
+
+    mongoTemplate.indexOps(RestaurantEntity.class)
+        .ensureIndex(new GeospatialIndex("location").typed(GeoSpatialIndexType.GEO_2DSPHERE));
+  }
+
+  @Override
+  public void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> consumer) {
+
+    // $geoWithin keeps the natural collection order, unlike $nearSphere which sorts by distance.
+    Circle servingArea = new Circle(new Point(longitude, latitude),
+        servingRadiusInKms * RADIUS_SLACK / EARTH_RADIUS_IN_KMS);
+    List<RestaurantEntity> candidates = mongoTemplate.find(
+        new Query(Criteria.where("location").withinSphere(servingArea)), RestaurantEntity.class);
+
+    forEachOpenRestaurantCloseBy(candidates, latitude, longitude, currentTime,
+        servingRadiusInKms, consumer);
+  }
+
+}
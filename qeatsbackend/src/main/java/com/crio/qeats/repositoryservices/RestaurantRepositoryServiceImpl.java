@@ -6,47 +6,60 @@
 
 package com.crio.qeats.repositoryservices;
 
+import ch.hsr.geohash.BoundingBox;
 import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import com.crio.qeats.cache.NearbyRestaurantCache;
+import com.crio.qeats.catalog.RedisGeoRestaurantLocator;
+import com.crio.qeats.catalog.RestaurantGridIndex;
 import com.crio.qeats.configs.RedisConfiguration;
 import com.crio.qeats.dto.Item;
 import com.crio.qeats.dto.Restaurant;
-import com.crio.qeats.globals.GlobalConstants;
 import com.crio.qeats.models.ItemEntity;
 import com.crio.qeats.models.MenuEntity;
 import com.crio.qeats.models.RestaurantEntity;
 import com.crio.qeats.repositories.ItemRepository;
 import com.crio.qeats.repositories.MenuRepository;
 import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.search.RestaurantSearchEngine;
+import com.crio.qeats.search.SearchCategory;
+import com.crio.qeats.utils.EntityMappers;
 import com.crio.qeats.utils.GeoLocation;
 import com.crio.qeats.utils.GeoUtils;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.IOException;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import javax.inject.Provider;
-import org.modelmapper.ModelMapper;
+import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
 
 
 @Service
+@Log4j2
+@ConditionalOnProperty(name = "qeats.nearby.source", havingValue = "grid", matchIfMissing = true)
 public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryService {
 
+  static final String REDIS_GEO_CACHE_MODE = RedisGeoRestaurantLocator.CACHE_MODE;
 
   @Autowired
   private RestaurantRepository restaurantRepository;
@@ -61,13 +74,24 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   private MongoTemplate mongoTemplate;
 
   @Autowired
-  private Provider<ModelMapper> modelMapperProvider;
+  private RestaurantGridIndex restaurantGridIndex;
 
-  private boolean isOpenNow(LocalTime time, RestaurantEntity res) {
-    LocalTime openingTime = LocalTime.parse(res.getOpensAt());
-    LocalTime closingTime = LocalTime.parse(res.getClosesAt());
+  @Autowired
+  private RedisGeoRestaurantLocator redisGeoRestaurantLocator;
+
+  @Autowired
+  private NearbyRestaurantCache nearbyRestaurantCache;
+
+  @Autowired
+  private RestaurantSearchEngine restaurantSearchEngine;
 
-    return time.isAfter(openingTime) && time.isBefore(closingTime);
+  // "geohash" caches nearby candidates per geohash cell, "redis-geo" answers nearby queries
+  // straight from the Redis geo set.
+  @Value("${qeats.cache.mode:geohash}")
+  private String cacheMode;
+
+  private boolean isOpenNow(LocalTime time, RestaurantEntity res) {
+    return res.getOpeningHours().isOpenAt(time);
   }
 
   // TODO: CRIO_TASK_MODULE_NOSQL
@@ -77,51 +101,147 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   // Check RestaurantRepositoryService.java file for the interface contract.
   public List<Restaurant> findAllRestaurantsCloseBy(Double latitude,
       Double longitude, LocalTime currentTime, Double servingRadiusInKms) {
-
     List<Restaurant> restaurants = new ArrayList<>();
-    if (!redisConfiguration.isCacheAvailable()) {
-      redisConfiguration.initCache();
-    }
-    Jedis jedis = redisConfiguration.getJedisPool().getResource();
-    GeoHash geoHash = GeoHash.withCharacterPrecision(latitude, longitude, 7);
-    String restaurantJson = jedis.get(geoHash.toBase32());
-    List<RestaurantEntity> restaurantEntityList = new ArrayList<>();
-    ObjectMapper objectMapper = new ObjectMapper();
-    if (redisConfiguration.isCacheAvailable() && restaurantJson != null) {
-      try {
-        RestaurantEntity[] restEntArr = objectMapper.readValue(restaurantJson,
-         RestaurantEntity[].class);
-        restaurantEntityList = Arrays.asList(restEntArr);
-      } catch (IOException | NullPointerException e) {
-        e.printStackTrace();
+    forEachOpenRestaurantCloseBy(latitude, longitude, currentTime, servingRadiusInKms,
+        restaurants::add);
+    return restaurants;
+  }
+
+  @Override
+  public void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> consumer) {
+
+    if (REDIS_GEO_CACHE_MODE.equals(cacheMode)) {
+      List<RestaurantEntity> candidates = null;
+      if (redisConfiguration.isCacheAvailable()) {
+        try {
+          redisGeoRestaurantLocator.ensureLoaded(restaurantRepository::findAll);
+          candidates = redisGeoRestaurantLocator.findCandidates(latitude, longitude,
+              servingRadiusInKms);
+        } catch (JedisException e) {
+          log.debug("Redis lookup failed, using the grid: {}", e.getMessage());
+        }
       }
-    } else {
-      try {
-        restaurantEntityList = restaurantRepository.findAll();
-        jedis.setex(geoHash.toBase32(), 3600, objectMapper.writeValueAsString(
-            restaurantEntityList));
-      } catch (JsonProcessingException j) {
-        j.printStackTrace();
+      if (candidates == null) {
+        forEachOpenRestaurantInGrid(latitude, longitude, currentTime, servingRadiusInKms,
+            consumer);
+      } else {
+        forEachOpenRestaurantCloseBy(candidates, latitude, longitude, currentTime,
+            servingRadiusInKms, consumer);
       }
+      return;
+    }
+
+    if (restaurantGridIndex.hasPrecomputedCells(servingRadiusInKms)) {
+      // A lookup of the user's cell is cheaper than a round trip to Redis.
+      restaurantGridIndex.forEachOpenRestaurantCloseBy(latitude, longitude,
+          servingRadiusInKms, currentTime, consumer);
+      return;
     }
-    for (RestaurantEntity restaurantEntity : restaurantEntityList) {
-      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime,
-            latitude, longitude, servingRadiusInKms)) {
-        ModelMapper mapper = modelMapperProvider.get();
-        Restaurant restaurant2 = mapper.map(restaurantEntity, Restaurant.class);
-        restaurants.add(restaurant2);
+
+    GeoHash cell = GeoHash.withCharacterPrecision(latitude, longitude,
+        NearbyRestaurantCache.GEOHASH_PRECISION);
+    String cacheKey = NearbyRestaurantCache.keyOf(cell, servingRadiusInKms, currentTime);
+    List<RestaurantEntity> candidates = nearbyRestaurantCache.getLocal(cacheKey);
+    if (candidates == null && redisConfiguration.isCacheAvailable()) {
+      // Connection failures reach the circuit breaker through RedisAccessor.
+      try {
+        candidates = findCandidatesThroughRedis(cacheKey, cell, servingRadiusInKms, currentTime);
+      } catch (JedisException e) {
+        log.debug("Redis lookup failed, using the grid: {}", e.getMessage());
       }
     }
-    // TODO: CRIO_TASK_MODULE_REDIS
-    // We want to use cache to speed things up. Write methods that perform the same functionality,
-    // but using the cache if it is present and reachable.
-    // Remember, you must ensure that if cache is not present, the queries are directed at the
-    // database instead.
+    if (candidates == null) {
+      forEachOpenRestaurantInGrid(latitude, longitude, currentTime, servingRadiusInKms,
+          consumer);
+      return;
+    }
 
+    forEachOpenRestaurantCloseBy(candidates, latitude, longitude, currentTime,
+        servingRadiusInKms, consumer);
+  }
 
-    //CHECKSTYLE:OFF
-    //CHECKSTYLE:ON
-    return restaurants;
+  // Without Redis, filtering the columns of the resident grid is as cheap as a cache hit.
+  private void forEachOpenRestaurantInGrid(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> consumer) {
+    ensureGridLoaded();
+    restaurantGridIndex.forEachOpenRestaurantCloseBy(latitude, longitude,
+        servingRadiusInKms, currentTime, consumer);
+  }
+
+  // TODO: CRIO_TASK_MODULE_REDIS
+  // We want to use cache to speed things up. Write methods that perform the same functionality,
+  // but using the cache if it is present and reachable.
+  // Remember, you must ensure that if cache is not present, the queries are directed at the
+  // database instead.
+  private List<RestaurantEntity> findCandidatesThroughRedis(String cacheKey, GeoHash cell,
+      Double servingRadiusInKms, LocalTime currentTime) {
+    return nearbyRestaurantCache.getOrLoad(cacheKey,
+        () -> findCellCandidates(cell, servingRadiusInKms, currentTime));
+  }
+
+  // Candidates of a cell are the restaurants that can be within the serving radius of any point
+  // in the cell and that are open at some point of the current open-hours bucket.
+  private List<RestaurantEntity> findCellCandidates(GeoHash cell, Double servingRadiusInKms,
+      LocalTime currentTime) {
+    ensureGridLoaded();
+
+    WGS84Point center = cell.getBoundingBoxCenter();
+    BoundingBox boundingBox = cell.getBoundingBox();
+    double reachInKms = servingRadiusInKms + Math.max(
+        GeoUtils.findDistanceInKm(center.getLatitude(), center.getLongitude(),
+            boundingBox.getNorthLatitude(), boundingBox.getEastLongitude()),
+        GeoUtils.findDistanceInKm(center.getLatitude(), center.getLongitude(),
+            boundingBox.getSouthLatitude(), boundingBox.getEastLongitude()));
+
+    LocalTime bucketStart = NearbyRestaurantCache.bucketStart(
+        NearbyRestaurantCache.bucketOf(currentTime));
+    LocalTime bucketEnd = bucketStart.plusMinutes(
+        NearbyRestaurantCache.OPEN_HOURS_BUCKET_IN_MINUTES);
+
+    return restaurantGridIndex.findCandidatesOpenDuring(center.getLatitude(),
+        center.getLongitude(), reachInKms, bucketStart, bucketEnd);
+  }
+
+  // Concurrent first requests would each read the whole collection, so only one of them does.
+  private void ensureGridLoaded() {
+    if (!restaurantGridIndex.isLoaded()) {
+      synchronized (restaurantGridIndex) {
+        if (!restaurantGridIndex.isLoaded()) {
+          restaurantGridIndex.rebuild(restaurantRepository.findAll());
+        }
+      }
+    }
+  }
+
+  /**
+   * Hands the candidates that are open and strictly within the serving radius to the consumer,
+   * in candidate order, each mapped only when its turn comes.
+   */
+  protected void forEachOpenRestaurantCloseBy(List<RestaurantEntity> candidates,
+      Double latitude, Double longitude, LocalTime currentTime, Double servingRadiusInKms,
+      Consumer<Restaurant> consumer) {
+    int count = candidates.size();
+    double[] latitudes = new double[count];
+    double[] longitudes = new double[count];
+    for (int i = 0; i < count; i++) {
+      RestaurantEntity restaurantEntity = candidates.get(i);
+      // Restaurants without coordinates become NaN, which is never within the radius.
+      latitudes[i] = restaurantEntity.getLatitude() == null ? Double.NaN
+          : restaurantEntity.getLatitude();
+      longitudes[i] = restaurantEntity.getLongitude() == null ? Double.NaN
+          : restaurantEntity.getLongitude();
+    }
+    int[] closeBy = new int[count];
+    int closeByCount = GeoUtils.findWithinRadius(latitude, longitude, latitudes, longitudes,
+        count, servingRadiusInKms, closeBy);
+
+    for (int i = 0; i < closeByCount; i++) {
+      RestaurantEntity restaurantEntity = candidates.get(closeBy[i]);
+      if (isOpenNow(currentTime, restaurantEntity)) {
+        consumer.accept(EntityMappers.toRestaurant(restaurantEntity));
+      }
+    }
   }
 
   // TODO: CRIO_TASK_MODULE_NOSQL
@@ -231,63 +351,13 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   public List<Restaurant> findRestaurantsByItemName(
       Double latitude, Double longitude,
       String searchString, LocalTime currentTime, Double servingRadiusInKms) {
-
-
-    List<Restaurant> restaurantList = new ArrayList<>();
     if (searchString == null) {
-      return restaurantList;
+      return new ArrayList<>();
     }
 
-    List<Restaurant> closerest = findAllRestaurantsCloseBy(latitude,
-        longitude, currentTime, servingRadiusInKms);
-
-    List<RestaurantEntity> allrest = restaurantRepository.findAll();
-
-
-    List<MenuEntity> menus = menuRepository.findAll();
-    //exact match
-    for (int i = 0; i < menus.size(); i++) {
-      List<Item> items = menus.get(i).getItems();
-      for (int j = 0; j < items.size(); j++) {
-        if (items.get(j).getName().equals(searchString)) {
-          RestaurantEntity temp = new RestaurantEntity();
-          for (int k = 0; k < allrest.size(); k++) {
-            if (allrest.get(k).getRestaurantId().equals(menus.get(i).getRestaurantId())) {
-              temp = allrest.get(j);
-              break;
-            }
-          }
-
-          if (closerest.contains(changeto(temp)) && !allrest.contains(temp)) {
-            restaurantList.add(changeto(temp));
-          }
-
-        }
-      }
-    }
-    //partial match
-    for (int i = 0; i < menus.size(); i++) {
-      List<Item> items = menus.get(i).getItems();
-      for (int j = 0; j < items.size(); j++) {
-        if (items.get(j).getName().contains(searchString)) {
-          RestaurantEntity temp = new RestaurantEntity();
-          for (int k = 0; k < allrest.size(); k++) {
-            if (allrest.get(k).getRestaurantId().equals(menus.get(i).getRestaurantId())) {
-              temp = allrest.get(j);
-              break;
-            }
-          }
-
-          if (closerest.contains(changeto(temp)) && !allrest.contains(temp)) {
-            restaurantList.add(changeto(temp));
-          }
-
-        }
-      }
-
-    }
-
-    return restaurantList;
+    return findRestaurantsByItems(latitude, longitude, currentTime, servingRadiusInKms,
+        item -> searchString.equals(item.getName()),
+        item -> item.getName() != null && item.getName().contains(searchString));
   }
 
   // TODO: CRIO_TASK_MODULE_RESTAURANTSEARCH
@@ -296,98 +366,77 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   @Override
   public List<Restaurant> findRestaurantsByItemAttributes(Double latitude, Double longitude,
       String searchString, LocalTime currentTime, Double servingRadiusInKms) {
-
-    List<Restaurant> restaurantList = new ArrayList<>();
     if (searchString == null || searchString.isEmpty()) {
-      return restaurantList;
+      return new ArrayList<>();
     }
 
-    List<Restaurant> closerest = findAllRestaurantsCloseBy(latitude,
-        longitude, currentTime, servingRadiusInKms);
+    return findRestaurantsByItems(latitude, longitude, currentTime, servingRadiusInKms,
+        item -> item.getAttributes() != null && item.getAttributes().contains(searchString),
+        item -> item.getAttributes() != null && item.getAttributes().stream()
+            .anyMatch(attribute -> attribute != null && attribute.contains(searchString)));
+  }
 
-    List<RestaurantEntity> allrest = restaurantRepository.findAll();
-
-
-    List<MenuEntity> menus = menuRepository.findAll();
-    //exact match
-    for (int i = 0; i < menus.size(); i++) {
-      List<Item> items = menus.get(i).getItems();
-      for (int j = 0; j < items.size(); j++) {
-        if (items.get(j).getAttributes().contains(searchString)) {
-          RestaurantEntity temp = new RestaurantEntity();
-          for (int k = 0; k < allrest.size(); k++) {
-            if (allrest.get(k).getRestaurantId().equals(menus.get(i).getRestaurantId())) {
-              temp = allrest.get(j);
-              break;
-            }
-          }
-          if (closerest.contains(changeto(temp)) && !allrest.contains(temp)) {
-            restaurantList.add(changeto(temp));
-          }
+  // Nearby restaurants serving an item that matches exactly, then those serving an item that
+  // matches partially, each restaurant once. Only the menus of nearby restaurants are read, and
+  // the restaurant of a menu is found by restaurantId in a hash map.
+  private List<Restaurant> findRestaurantsByItems(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Predicate<Item> exactMatch,
+      Predicate<Item> partialMatch) {
+    Map<String, Restaurant> closeBy = new LinkedHashMap<>();
+    for (Restaurant restaurant : findAllRestaurantsCloseBy(latitude, longitude, currentTime,
+        servingRadiusInKms)) {
+      closeBy.putIfAbsent(restaurant.getRestaurantId(), restaurant);
+    }
+    if (closeBy.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    Set<String> exactMatches = new LinkedHashSet<>();
+    Set<String> partialMatches = new LinkedHashSet<>();
+    for (MenuEntity menu : menuRepository.findMenusByRestaurantIdIn(closeBy.keySet())) {
+      if (menu.getItems() == null) {
+        continue;
+      }
+      for (Item item : menu.getItems()) {
+        if (exactMatch.test(item)) {
+          exactMatches.add(menu.getRestaurantId());
+          break;
+        }
+        if (partialMatch.test(item)) {
+          partialMatches.add(menu.getRestaurantId());
         }
       }
     }
-    //partial match
-    for (int i = 0; i < menus.size(); i++) {
-      List<Item> items = menus.get(i).getItems();
-      for (int j = 0; j < items.size(); j++) {
-        List<String> atts = items.get(j).getAttributes();
-        for (int l = 0; l < atts.size(); l++) {
-          if (atts.get(j).contains(searchString)) {
-            RestaurantEntity temp = new RestaurantEntity();
-            for (int k = 0; k < allrest.size(); k++) {
-              if (allrest.get(k).getRestaurantId().equals(menus.get(i).getRestaurantId())) {
-                temp = allrest.get(j);
-                break;
-              }
-            }
-            if (closerest.contains(changeto(temp)) && !allrest.contains(temp)) {
-              restaurantList.add(changeto(temp));
-            }
 
-          }
-        }
+    List<Restaurant> restaurantList = new ArrayList<>();
+    for (String restaurantId : exactMatches) {
+      restaurantList.add(closeBy.get(restaurantId));
+    }
+    for (String restaurantId : partialMatches) {
+      if (!exactMatches.contains(restaurantId)) {
+        restaurantList.add(closeBy.get(restaurantId));
       }
     }
     return restaurantList;
   }
 
-
-
-
-
-  /**
-   * Utility method to check if a restaurant is within the serving radius at a given time.
-   * @return boolean True if restaurant falls within serving radius and is open, false otherwise
-   */
-  private boolean isRestaurantCloseByAndOpen(RestaurantEntity restaurantEntity,
-      LocalTime currentTime, Double latitude, Double longitude, Double servingRadiusInKms) {
-    if (isOpenNow(currentTime, restaurantEntity)) {
-      return GeoUtils.findDistanceInKm(latitude, longitude,
-          restaurantEntity.getLatitude(), restaurantEntity.getLongitude())
-          < servingRadiusInKms;
-    }
-
-    return false;
+  @Override
+  public List<Restaurant> searchRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    return searchRestaurants(latitude, longitude, searchString, currentTime, servingRadiusInKms,
+        EnumSet.allOf(SearchCategory.class));
   }
 
+  @Override
+  public List<Restaurant> searchRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms,
+      Set<SearchCategory> categories) {
+    if (searchString == null || searchString.trim().isEmpty()) {
+      return new ArrayList<>();
+    }
 
-  private Restaurant changeto(RestaurantEntity restaurant) {
-    Restaurant temp = new Restaurant();
-    temp.setAttributes(restaurant.getAttributes());
-    temp.setId(restaurant.getId());
-    temp.setRestaurantId(restaurant.getRestaurantId());
-    temp.setName(restaurant.getName());
-    temp.setCity(restaurant.getCity());
-    temp.setImageUrl(restaurant.getImageUrl());
-    temp.setLatitude(restaurant.getLatitude());
-    temp.setLongitude(restaurant.getLongitude());
-    temp.setOpensAt(restaurant.getOpensAt());
-    temp.setClosesAt(restaurant.getClosesAt());
-
-    return temp;
+    return restaurantSearchEngine.search(findAllRestaurantsCloseBy(latitude, longitude,
+        currentTime, servingRadiusInKms), searchString, categories);
   }
 
-
 }
-
@@ -0,0 +1,175 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.search;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ranks nearby restaurants against a search query in a single pass.
+ * Every candidate gets the best of the ranks below, restaurants are then ordered by rank and keep
+ * their candidate order within a rank. Ranks come from the {@link RestaurantSearchIndex}; menus
+ * are only read, with one query, for candidates the index does not know yet and that did not
+ * match on their own name or attributes.
+ * Matching ignores case and surrounding whitespace.
+ */
+@Component
+public class RestaurantSearchEngine {
+
+  static final int NAME_EXACT = 0;
+  static final int NAME_PARTIAL = 1;
+  static final int ATTRIBUTE = 2;
+  static final int ITEM_NAME_EXACT = 3;
+  static final int ITEM_NAME_PARTIAL = 4;
+  static final int ITEM_ATTRIBUTE = 5;
+  static final int NO_MATCH = 6;
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Autowired
+  private RestaurantSearchIndex restaurantSearchIndex;
+
+  /**
+   * Get the candidates matching the search string, in the order documented by
+   * {@link com.crio.qeats.services.RestaurantService#findRestaurantsBySearchQuery}.
+   * @param candidates open restaurants within the serving radius
+   * @return matching restaurants, each one once, or an empty list for a blank search string
+   */
+  public List<Restaurant> search(List<Restaurant> candidates, String searchString) {
+    return search(candidates, searchString, EnumSet.allOf(SearchCategory.class));
+  }
+
+  /**
+   * Same as {@link #search(List, String)}, but only matches in the given categories count.
+   */
+  public List<Restaurant> search(List<Restaurant> candidates, String searchString,
+      Set<SearchCategory> categories) {
+    List<Restaurant> results = new ArrayList<>();
+    if (searchString == null || searchString.trim().isEmpty()) {
+      return results;
+    }
+    String query = normalize(searchString);
+
+    List<List<Restaurant>> ranked = new ArrayList<>(NO_MATCH);
+    for (int rank = 0; rank < NO_MATCH; rank++) {
+      ranked.add(new ArrayList<>());
+    }
+
+    Map<String, Restaurant> unique = new LinkedHashMap<>();
+    for (Restaurant restaurant : candidates) {
+      unique.putIfAbsent(restaurant.getRestaurantId(), restaurant);
+    }
+
+    restaurantSearchIndex.ensureLoaded();
+    Map<String, Integer> indexedRanks = restaurantSearchIndex.rank(unique.keySet(), query,
+        categories);
+    Map<String, Restaurant> unmatched = new LinkedHashMap<>();
+    for (Map.Entry<String, Restaurant> entry : unique.entrySet()) {
+      Integer rank = indexedRanks.get(entry.getKey());
+      if (rank == null) {
+        rank = rankByRestaurant(entry.getValue(), query, categories);
+        if (rank == NO_MATCH) {
+          unmatched.put(entry.getKey(), entry.getValue());
+        }
+      }
+      if (rank != NO_MATCH) {
+        ranked.get(rank).add(entry.getValue());
+      }
+    }
+
+    // Restaurants missing from the index are matched against their menus.
+    if (!unmatched.isEmpty() && (categories.contains(SearchCategory.ITEM_NAME)
+        || categories.contains(SearchCategory.ITEM_ATTRIBUTES))) {
+      Map<String, Integer> itemRanks = new HashMap<>();
+      for (MenuEntity menu : menuRepository.findMenusByRestaurantIdIn(unmatched.keySet())) {
+        itemRanks.merge(menu.getRestaurantId(), rankByItems(menu.getItems(), query, categories),
+            Math::min);
+      }
+      for (Map.Entry<String, Restaurant> entry : unmatched.entrySet()) {
+        int rank = itemRanks.getOrDefault(entry.getKey(), NO_MATCH);
+        if (rank != NO_MATCH) {
+          ranked.get(rank).add(entry.getValue());
+        }
+      }
+    }
+
+    for (List<Restaurant> restaurants : ranked) {
+      results.addAll(restaurants);
+    }
+    return results;
+  }
+
+  static String normalize(String text) {
+    return text.trim().toLowerCase(Locale.ROOT);
+  }
+
+  static int rankByRestaurant(Restaurant restaurant, String query,
+      Set<SearchCategory> categories) {
+    if (categories.contains(SearchCategory.RESTAURANT_NAME) && restaurant.getName() != null) {
+      String name = normalize(restaurant.getName());
+      if (name.equals(query)) {
+        return NAME_EXACT;
+      }
+      if (name.contains(query)) {
+        return NAME_PARTIAL;
+      }
+    }
+    return categories.contains(SearchCategory.RESTAURANT_ATTRIBUTES)
+        && anyContains(restaurant.getAttributes(), query) ? ATTRIBUTE : NO_MATCH;
+  }
+
+  static int rankByItems(List<Item> items, String query, Set<SearchCategory> categories) {
+    int best = NO_MATCH;
+    if (items == null) {
+      return best;
+    }
+    boolean byName = categories.contains(SearchCategory.ITEM_NAME);
+    boolean byAttributes = categories.contains(SearchCategory.ITEM_ATTRIBUTES);
+    for (Item item : items) {
+      if (byName && item.getName() != null) {
+        String name = normalize(item.getName());
+        if (name.equals(query)) {
+          return ITEM_NAME_EXACT;
+        }
+        if (name.contains(query)) {
+          best = ITEM_NAME_PARTIAL;
+          continue;
+        }
+      }
+      if (byAttributes && best == NO_MATCH && anyContains(item.getAttributes(), query)) {
+        best = ITEM_ATTRIBUTE;
+      }
+    }
+    return best;
+  }
+
+  private static boolean anyContains(List<String> values, String query) {
+    if (values == null) {
+      return false;
+    }
+    for (String value : values) {
+      if (value != null && normalize(value).contains(query)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
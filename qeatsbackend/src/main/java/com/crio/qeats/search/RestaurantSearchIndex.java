@@ -0,0 +1,414 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.search;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.repositories.RestaurantRepository;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inverted index over restaurant names and attributes and over the names and attributes of the
+ * items on their menus.
+ * Every restaurant gets a dense ordinal, and every normalized value and every trigram of it maps
+ * to a {@link BitSet} of ordinals. A partial match is resolved by intersecting the posting lists
+ * of the trigrams of the query and checking the few surviving values, instead of scanning menus.
+ * Lookups need no locking. The posting lists of a published index are never modified: updates
+ * swap modified copies into its concurrent maps, so a lookup running during an update may see
+ * some posting lists from before it and some from after, but never a half-updated one. A rebuild
+ * fills its fresh index in place and publishes it whole.
+ */
+@Component
+@Log4j2
+public class RestaurantSearchIndex {
+
+  static final int GRAM_LENGTH = 3;
+
+  enum Field {
+    NAME(true), ATTRIBUTE(false), ITEM_NAME(true), ITEM_ATTRIBUTE(false);
+
+    // Whether whole values are indexed too, for the exact-match ranks.
+    private final boolean exactLookups;
+
+    Field(boolean exactLookups) {
+      this.exactLookups = exactLookups;
+    }
+  }
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Value("${qeats.search.index.preload:true}")
+  private boolean preload;
+
+  private volatile State state;
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void preload() {
+    if (!preload) {
+      return;
+    }
+    try {
+      ensureLoaded();
+    } catch (Exception e) {
+      log.warn("Search index not preloaded, it will be built by the first search", e);
+    }
+  }
+
+  public boolean isLoaded() {
+    return state != null;
+  }
+
+  /**
+   * Builds the index from the repositories unless it is already built.
+   */
+  public void ensureLoaded() {
+    if (state != null) {
+      return;
+    }
+    synchronized (this) {
+      if (state == null) {
+        rebuild(restaurantRepository.findAll(), menuRepository.findAll());
+      }
+    }
+  }
+
+  public synchronized void rebuild(List<RestaurantEntity> restaurantEntities,
+      List<MenuEntity> menus) {
+    State fresh = new State();
+    for (RestaurantEntity restaurantEntity : restaurantEntities) {
+      fresh.put(restaurantEntity.getRestaurantId(),
+          Document.of(restaurantEntity, Collections.emptyList()));
+    }
+    for (MenuEntity menu : menus) {
+      fresh.put(menu.getRestaurantId(),
+          fresh.document(menu.getRestaurantId()).withItems(menu.getItems()));
+    }
+    fresh.published = true;
+    state = fresh;
+    log.info("Search index built for {} restaurants", fresh.ordinals.size());
+  }
+
+  /**
+   * Adds a restaurant, or replaces the name and attributes of an indexed one.
+   * Does nothing until the index has been built.
+   */
+  public synchronized void upsertRestaurant(RestaurantEntity restaurantEntity) {
+    State current = state;
+    if (current != null) {
+      current.put(restaurantEntity.getRestaurantId(), Document.of(restaurantEntity,
+          current.document(restaurantEntity.getRestaurantId()).items));
+    }
+  }
+
+  /**
+   * Replaces the items of a restaurant. Does nothing until the index has been built.
+   */
+  public synchronized void upsertMenu(MenuEntity menu) {
+    State current = state;
+    if (current != null) {
+      current.put(menu.getRestaurantId(),
+          current.document(menu.getRestaurantId()).withItems(menu.getItems()));
+    }
+  }
+
+  public synchronized void removeRestaurant(String restaurantId) {
+    State current = state;
+    if (current != null) {
+      current.remove(restaurantId);
+    }
+  }
+
+  /**
+   * Get the search rank of the given restaurants, as defined by {@link RestaurantSearchEngine}.
+   * @param query normalized search string
+   * @param categories categories whose matches count
+   * @return rank by restaurantId; restaurants that are not indexed are left out
+   */
+  public Map<String, Integer> rank(Collection<String> restaurantIds, String query,
+      Set<SearchCategory> categories) {
+    State current = state;
+    Map<String, Integer> ranks = new HashMap<>();
+    if (current == null) {
+      return ranks;
+    }
+
+    boolean byName = categories.contains(SearchCategory.RESTAURANT_NAME);
+    boolean byAttributes = categories.contains(SearchCategory.RESTAURANT_ATTRIBUTES);
+    boolean byItemName = categories.contains(SearchCategory.ITEM_NAME);
+    boolean byItemAttributes = categories.contains(SearchCategory.ITEM_ATTRIBUTES);
+    BitSet nameExact = current.exact.get(Field.NAME).get(query);
+    BitSet itemNameExact = current.exact.get(Field.ITEM_NAME).get(query);
+    Map<Field, BitSet> partial = new EnumMap<>(Field.class);
+    for (Field field : Field.values()) {
+      partial.put(field, current.mayContain(field, query));
+    }
+
+    for (String restaurantId : restaurantIds) {
+      Integer ordinal = current.ordinals.get(restaurantId);
+      if (ordinal == null) {
+        continue;
+      }
+      Document document = current.documents[ordinal];
+      if (document == null) {
+        continue;
+      }
+      int rank;
+      if (byName && isSet(nameExact, ordinal)) {
+        rank = RestaurantSearchEngine.NAME_EXACT;
+      } else if (byName && contains(partial.get(Field.NAME), ordinal, document.name, query)) {
+        rank = RestaurantSearchEngine.NAME_PARTIAL;
+      } else if (byAttributes
+          && contains(partial.get(Field.ATTRIBUTE), ordinal, document.attributes, query)) {
+        rank = RestaurantSearchEngine.ATTRIBUTE;
+      } else if (byItemName && isSet(itemNameExact, ordinal)) {
+        rank = RestaurantSearchEngine.ITEM_NAME_EXACT;
+      } else if (byItemName
+          && contains(partial.get(Field.ITEM_NAME), ordinal, document.itemNames, query)) {
+        rank = RestaurantSearchEngine.ITEM_NAME_PARTIAL;
+      } else if (byItemAttributes && contains(partial.get(Field.ITEM_ATTRIBUTE), ordinal,
+          document.itemAttributes, query)) {
+        rank = RestaurantSearchEngine.ITEM_ATTRIBUTE;
+      } else {
+        rank = RestaurantSearchEngine.NO_MATCH;
+      }
+      ranks.put(restaurantId, rank);
+    }
+    return ranks;
+  }
+
+  private static boolean isSet(BitSet postings, int ordinal) {
+    return postings != null && postings.get(ordinal);
+  }
+
+  // A null posting list means the query is too short to be looked up by trigrams.
+  private static boolean contains(BitSet postings, int ordinal, String value, String query) {
+    return (postings == null || postings.get(ordinal)) && value != null && value.contains(query);
+  }
+
+  private static boolean contains(BitSet postings, int ordinal, List<String> values,
+      String query) {
+    if (postings != null && !postings.get(ordinal)) {
+      return false;
+    }
+    for (String value : values) {
+      if (value.contains(query)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static Set<String> gramsOf(String value) {
+    Set<String> grams = new HashSet<>();
+    for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+      grams.add(value.substring(i, i + GRAM_LENGTH));
+    }
+    return grams;
+  }
+
+  private static final class State {
+
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private volatile Document[] documents = new Document[0];
+    private int size;
+    private final Map<Field, Map<String, BitSet>> exact = new EnumMap<>(Field.class);
+    private final Map<Field, Map<String, BitSet>> grams = new EnumMap<>(Field.class);
+    // Until published, no lookup can see the posting lists, so they are updated in place.
+    private boolean published;
+
+    State() {
+      for (Field field : Field.values()) {
+        exact.put(field, new ConcurrentHashMap<>());
+        grams.put(field, new ConcurrentHashMap<>());
+      }
+    }
+
+    Document document(String restaurantId) {
+      Integer ordinal = ordinals.get(restaurantId);
+      return ordinal == null || documents[ordinal] == null ? Document.EMPTY : documents[ordinal];
+    }
+
+    // Writers hold the index lock. A document is stored before its ordinal is published, and
+    // documents are immutable, so readers always see a complete one.
+    void put(String restaurantId, Document document) {
+      Integer ordinal = ordinals.get(restaurantId);
+      Document previous = Document.EMPTY;
+      if (ordinal == null) {
+        ordinal = size++;
+        if (ordinal == documents.length) {
+          documents = Arrays.copyOf(documents, Math.max(16, documents.length * 2));
+        }
+      } else {
+        previous = document(restaurantId);
+      }
+      documents[ordinal] = document;
+      ordinals.put(restaurantId, ordinal);
+      for (Field field : Field.values()) {
+        updatePostings(field, ordinal, previous.values(field), document.values(field));
+      }
+    }
+
+    void remove(String restaurantId) {
+      Integer ordinal = ordinals.remove(restaurantId);
+      if (ordinal == null || documents[ordinal] == null) {
+        return;
+      }
+      Document previous = documents[ordinal];
+      documents[ordinal] = null;
+      for (Field field : Field.values()) {
+        updatePostings(field, ordinal, previous.values(field), Collections.emptyList());
+      }
+    }
+
+    BitSet mayContain(Field field, String query) {
+      if (query.length() < GRAM_LENGTH) {
+        return null;
+      }
+      BitSet result = null;
+      for (String gram : gramsOf(query)) {
+        BitSet postings = grams.get(field).get(gram);
+        if (postings == null) {
+          return new BitSet();
+        }
+        if (result == null) {
+          result = (BitSet) postings.clone();
+        } else {
+          result.and(postings);
+        }
+      }
+      return result;
+    }
+
+    private void updatePostings(Field field, int ordinal, List<String> before,
+        List<String> after) {
+      Set<String> exactBefore = new HashSet<>(before);
+      Set<String> exactAfter = new HashSet<>(after);
+      Set<String> gramsBefore = new HashSet<>();
+      Set<String> gramsAfter = new HashSet<>();
+      for (String value : before) {
+        gramsBefore.addAll(gramsOf(value));
+      }
+      for (String value : after) {
+        gramsAfter.addAll(gramsOf(value));
+      }
+      if (field.exactLookups) {
+        updatePostings(exact.get(field), ordinal, exactBefore, exactAfter);
+      }
+      updatePostings(grams.get(field), ordinal, gramsBefore, gramsAfter);
+    }
+
+    private void updatePostings(Map<String, BitSet> postings, int ordinal,
+        Set<String> before, Set<String> after) {
+      for (String key : before) {
+        if (!after.contains(key)) {
+          BitSet updated = writable(postings.get(key));
+          updated.clear(ordinal);
+          if (updated.isEmpty()) {
+            postings.remove(key);
+          } else {
+            postings.put(key, updated);
+          }
+        }
+      }
+      for (String key : after) {
+        if (!before.contains(key)) {
+          BitSet current = postings.get(key);
+          BitSet updated = current == null ? new BitSet() : writable(current);
+          updated.set(ordinal);
+          postings.put(key, updated);
+        }
+      }
+    }
+
+    private BitSet writable(BitSet postings) {
+      return published ? (BitSet) postings.clone() : postings;
+    }
+  }
+
+  private static final class Document {
+
+    static final Document EMPTY = new Document(null, Collections.emptyList(),
+        Collections.emptyList());
+
+    private final String name;
+    private final List<String> attributes;
+    private final List<Item> items;
+    private final List<String> itemNames = new ArrayList<>();
+    private final List<String> itemAttributes = new ArrayList<>();
+
+    private Document(String name, List<String> attributes, List<Item> items) {
+      this.name = name;
+      this.attributes = attributes;
+      this.items = items;
+      for (Item item : items) {
+        if (item.getName() != null) {
+          itemNames.add(RestaurantSearchEngine.normalize(item.getName()));
+        }
+        itemAttributes.addAll(normalize(item.getAttributes()));
+      }
+    }
+
+    static Document of(RestaurantEntity restaurantEntity, List<Item> items) {
+      return new Document(restaurantEntity.getName() == null ? null
+          : RestaurantSearchEngine.normalize(restaurantEntity.getName()),
+          normalize(restaurantEntity.getAttributes()), items);
+    }
+
+    Document withItems(List<Item> items) {
+      return new Document(name, attributes, items == null ? Collections.emptyList() : items);
+    }
+
+    List<String> values(Field field) {
+      switch (field) {
+        case NAME:
+          return name == null ? Collections.emptyList() : Collections.singletonList(name);
+        case ATTRIBUTE:
+          return attributes;
+        case ITEM_NAME:
+          return itemNames;
+        default:
+          return itemAttributes;
+      }
+    }
+
+    private static List<String> normalize(List<String> values) {
+      List<String> normalized = new ArrayList<>();
+      if (values != null) {
+        for (String value : values) {
+          if (value != null) {
+            normalized.add(RestaurantSearchEngine.normalize(value));
+          }
+        }
+      }
+      return normalized;
+    }
+  }
+
+}
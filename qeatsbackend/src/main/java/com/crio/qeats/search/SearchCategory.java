@@ -0,0 +1,17 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.search;
+
+/**
+ * What a search string is matched against, in order of priority.
+ */
+public enum SearchCategory {
+  RESTAURANT_NAME,
+  RESTAURANT_ATTRIBUTES,
+  ITEM_NAME,
+  ITEM_ATTRIBUTES
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import com.crio.qeats.dto.Cart;
+import com.crio.qeats.dto.Order;
+import com.crio.qeats.exceptions.EmptyCartException;
+import com.crio.qeats.exceptions.ItemNotFoundInRestaurantMenuException;
+import com.crio.qeats.exceptions.ItemNotFromSameRestaurantException;
+import com.crio.qeats.exchanges.GetOrdersResponse;
+import com.crio.qeats.exchanges.PostOrderRequest;
+
+public interface CartAndOrderService {
+
+  /**
+   * Get the cart of a user, priced with the current item prices.
+   * @param userId id of the user
+   * @return the cart, without items if the user has none.
+   */
+  Cart getCart(String userId);
+
+  /**
+   * Add items to the cart of a user, which is started for the restaurant if empty.
+   * @return the updated cart.
+   * @throws ItemNotFoundInRestaurantMenuException if the item is not on the restaurant's menu.
+   * @throws ItemNotFromSameRestaurantException if the cart holds items of another restaurant.
+   */
+  Cart addItemToCart(String userId, String restaurantId, String itemId, int quantity);
+
+  /**
+   * Remove items from the cart of a user; the item goes once its quantity reaches 0.
+   * @return the updated cart.
+   */
+  Cart removeItemFromCart(String userId, String itemId, int quantity);
+
+  /**
+   * Empty the cart of a user.
+   * @return the empty cart.
+   */
+  Cart clearCart(String userId);
+
+  /**
+   * Save the order as PLACED and publish its event; notifying the user and the restaurant
+   * happens afterwards, off the request thread.
+   * Without items in the request, the user's cart is ordered and then emptied.
+   * @param postOrderRequest user, and optionally the restaurant and items of the order
+   * @return the saved order.
+   * @throws EmptyCartException if the request has no items and the cart is empty.
+   * @throws ItemNotFoundInRestaurantMenuException if an item is not on the restaurant's menu.
+   */
+  Order postOrder(PostOrderRequest postOrderRequest);
+
+  /**
+   * Get the orders of a user, latest first.
+   * @param userId id of the user
+   * @return GetOrdersResponse with the orders, or an empty list if there are none.
+   */
+  GetOrdersResponse getOrders(String userId);
+
+}
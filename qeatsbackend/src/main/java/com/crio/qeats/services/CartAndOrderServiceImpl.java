@@ -0,0 +1,165 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import com.crio.qeats.cart.RedisCartStore;
+import com.crio.qeats.cart.RedisCartStore.StoredCart;
+import com.crio.qeats.catalog.ItemResolver;
+import com.crio.qeats.dto.Cart;
+import com.crio.qeats.dto.CartItem;
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Order;
+import com.crio.qeats.dto.OrderItem;
+import com.crio.qeats.exceptions.EmptyCartException;
+import com.crio.qeats.exceptions.ItemNotFromSameRestaurantException;
+import com.crio.qeats.exchanges.GetOrdersResponse;
+import com.crio.qeats.exchanges.PostOrderRequest;
+import com.crio.qeats.models.OrderEntity;
+import com.crio.qeats.orders.OrderEventPublisher;
+import com.crio.qeats.orders.OrderPlacedEvent;
+import com.crio.qeats.repositories.OrderRepository;
+import com.crio.qeats.utils.EntityMappers;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Carts live in Redis through {@link RedisCartStore} and reach Mongo only as the order they
+ * become. Items are checked and priced against the restaurant's menu through
+ * {@link ItemResolver}, a whole cart or order at a time.
+ */
+@Service
+@Log4j2
+public class CartAndOrderServiceImpl implements CartAndOrderService {
+
+  @Autowired
+  private RedisCartStore redisCartStore;
+
+  @Autowired
+  private ItemResolver itemResolver;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @Autowired
+  private OrderEventPublisher orderEventPublisher;
+
+  @Override
+  public Cart getCart(String userId) {
+    return toCart(userId, redisCartStore.get(userId));
+  }
+
+  @Override
+  public Cart addItemToCart(String userId, String restaurantId, String itemId, int quantity) {
+    itemResolver.resolveItems(restaurantId, Collections.singleton(itemId));
+    StoredCart storedCart = redisCartStore.add(userId, restaurantId, itemId, quantity);
+    if (storedCart == null) {
+      throw new ItemNotFromSameRestaurantException("Cart of user " + userId
+          + " holds items of another restaurant than " + restaurantId);
+    }
+    return toCart(userId, storedCart);
+  }
+
+  @Override
+  public Cart removeItemFromCart(String userId, String itemId, int quantity) {
+    return toCart(userId, redisCartStore.remove(userId, itemId, quantity));
+  }
+
+  @Override
+  public Cart clearCart(String userId) {
+    redisCartStore.clear(userId);
+    return new Cart(userId, null, new ArrayList<>(), 0);
+  }
+
+  @Override
+  public Order postOrder(PostOrderRequest postOrderRequest) {
+    String userId = postOrderRequest.getUserId();
+    String restaurantId = postOrderRequest.getRestaurantId();
+    List<OrderItem> items = postOrderRequest.getItems();
+    StoredCart takenCart = null;
+    if (items == null || items.isEmpty()) {
+      // Taken atomically, so concurrent checkouts cannot order the same cart twice and items
+      // added meanwhile go to a new cart instead of being cleared unordered.
+      takenCart = redisCartStore.take(userId);
+      if (takenCart.isEmpty()) {
+        throw new EmptyCartException("Cart of user " + userId + " is empty");
+      }
+      restaurantId = takenCart.getRestaurantId();
+      items = takenCart.getQuantities().entrySet().stream()
+          .map(quantity -> new OrderItem(quantity.getKey(), quantity.getValue()))
+          .collect(Collectors.toList());
+    } else {
+      items = new ArrayList<>(items);
+    }
+
+    OrderEntity orderEntity;
+    try {
+      orderEntity = orderRepository.save(priceOrder(userId, restaurantId, items));
+    } catch (RuntimeException e) {
+      if (takenCart != null) {
+        restoreCart(userId, takenCart, e);
+      }
+      throw e;
+    }
+    orderEventPublisher.publish(OrderPlacedEvent.of(orderEntity));
+    return EntityMappers.toOrder(orderEntity);
+  }
+
+  private OrderEntity priceOrder(String userId, String restaurantId, List<OrderItem> items) {
+    Map<String, Item> menuItems = itemResolver.resolveItems(restaurantId,
+        items.stream().map(OrderItem::getItemId).collect(Collectors.toList()));
+    double total = 0;
+    for (OrderItem item : items) {
+      total += (double) menuItems.get(item.getItemId()).getPrice() * item.getQuantity();
+    }
+    return new OrderEntity(null, userId, restaurantId, items, total, OrderEntity.PLACED,
+        System.currentTimeMillis(), null);
+  }
+
+  // The order was not placed, so the cart it was taken from goes back to the user.
+  private void restoreCart(String userId, StoredCart takenCart, RuntimeException cause) {
+    try {
+      if (!redisCartStore.restore(userId, takenCart)) {
+        log.warn("Cart of user {} not restored, a cart of another restaurant was started",
+            userId);
+      }
+    } catch (RuntimeException e) {
+      cause.addSuppressed(e);
+    }
+  }
+
+  @Override
+  public GetOrdersResponse getOrders(String userId) {
+    List<Order> orders = new ArrayList<>();
+    for (OrderEntity orderEntity : orderRepository.findOrdersByUserIdOrderByPlacedAtDesc(userId)) {
+      orders.add(EntityMappers.toOrder(orderEntity));
+    }
+    return new GetOrdersResponse(orders);
+  }
+
+  private Cart toCart(String userId, StoredCart storedCart) {
+    // Items taken off the menu since they were added stay in the cart, unpriced.
+    Map<String, Item> menuItems = itemResolver.findItems(storedCart.getRestaurantId(),
+        storedCart.getQuantities().keySet());
+    List<CartItem> items = new ArrayList<>(storedCart.getQuantities().size());
+    double total = 0;
+    for (Map.Entry<String, Integer> quantity : storedCart.getQuantities().entrySet()) {
+      Item menuItem = menuItems.get(quantity.getKey());
+      double price = menuItem == null ? 0 : menuItem.getPrice();
+      items.add(new CartItem(quantity.getKey(), menuItem == null ? null : menuItem.getName(),
+          quantity.getValue(), price));
+      total += price * quantity.getValue();
+    }
+    return new Cart(userId, storedCart.getRestaurantId(), items, total);
+  }
+
+}
@@ -0,0 +1,20 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import com.crio.qeats.exchanges.GetMenuResponse;
+
+public interface MenuService {
+
+  /**
+   * Get the menu of the given restaurant.
+   * @param restaurantId id of the restaurant
+   * @return GetMenuResponse holding the menu, or null if the restaurant has no menu.
+   */
+  GetMenuResponse findMenu(String restaurantId);
+
+}
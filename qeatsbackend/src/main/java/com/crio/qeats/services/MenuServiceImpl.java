@@ -0,0 +1,28 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import com.crio.qeats.exchanges.GetMenuResponse;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.utils.EntityMappers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+@Service
+public class MenuServiceImpl implements MenuService {
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Override
+  public GetMenuResponse findMenu(String restaurantId) {
+    return menuRepository.findMenuByRestaurantId(restaurantId)
+        .map(menuEntity -> new GetMenuResponse(EntityMappers.toMenu(menuEntity)))
+        .orElse(null);
+  }
+
+}
@@ -7,9 +7,11 @@
 
 package com.crio.qeats.services;
 
+import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
 import java.time.LocalTime;
+import java.util.function.Consumer;
 
 public interface RestaurantService {
 
@@ -27,6 +29,16 @@ public interface RestaurantService {
   GetRestaurantsResponse findAllRestaurantsCloseBy(
       GetRestaurantsRequest getRestaurantsRequest, LocalTime currentTime);
 
+  /**
+   * Same restaurants as findAllRestaurantsCloseBy, handed to the consumer one at a time as the
+   * repository layer finds them, so callers can write each out before the next is looked up.
+   * @param getRestaurantsRequest valid lat/long
+   * @param currentTime current time.
+   * @param consumer called once per open restaurant within the serving radius
+   */
+  void forEachRestaurantCloseBy(GetRestaurantsRequest getRestaurantsRequest,
+      LocalTime currentTime, Consumer<Restaurant> consumer);
+
   /**
    * Get the restaurants by processing the query.
    * -Ordering rules
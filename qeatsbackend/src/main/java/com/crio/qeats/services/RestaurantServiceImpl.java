@@ -7,32 +7,69 @@
 
 package com.crio.qeats.services;
 
+import com.crio.qeats.configs.SearchExecutorConfiguration;
 import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.globals.GlobalConstants;
 import com.crio.qeats.repositoryservices.RestaurantRepositoryService;
+import com.crio.qeats.search.RestaurantSearchEngine;
+import com.crio.qeats.search.SearchCategory;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 @Log4j2
 public class RestaurantServiceImpl implements RestaurantService {
 
-  private final Double peakHoursServingRadiusInKms = 3.0;
-  private final Double normalHoursServingRadiusInKms = 5.0;
+  private final Double peakHoursServingRadiusInKms =
+      GlobalConstants.PEAK_HOURS_SERVING_RADIUS_IN_KMS;
+  private final Double normalHoursServingRadiusInKms =
+      GlobalConstants.NORMAL_HOURS_SERVING_RADIUS_IN_KMS;
+  static final String PARALLEL_SEARCH_MODE = "parallel";
+
   @Autowired
   private RestaurantRepositoryService restaurantRepositoryService;
 
+  @Autowired
+  private RestaurantSearchEngine restaurantSearchEngine;
+
+  @Autowired
+  @Qualifier(SearchExecutorConfiguration.SEARCH_EXECUTOR)
+  private ExecutorService searchExecutor;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  // "single-pass" ranks every category in one pass, "parallel" runs one search per category
+  // on the search executor.
+  @Value("${qeats.search.mode:single-pass}")
+  private String searchMode;
+
+  @Value("${qeats.search.deadline-ms:300}")
+  private long searchDeadlineInMillis;
+
 
   // TODO: CRIO_TASK_MODULE_RESTAURANTSAPI - Implement findAllRestaurantsCloseby.
   // Check RestaurantService.java file for the interface contract.
@@ -42,8 +79,23 @@ public class RestaurantServiceImpl implements RestaurantService {
     
     Double latitude = getRestaurantsRequest.getLatitude();
     Double longitude = getRestaurantsRequest.getLongitude();
-    Double servingRadiusInKms = -1.0;
+    Double servingRadiusInKms = servingRadiusInKmsAt(currentTime);
+
+    List<Restaurant> restaurantsCloseBy = restaurantRepositoryService.findAllRestaurantsCloseBy(
+        latitude, longitude, currentTime, servingRadiusInKms);
+    return new GetRestaurantsResponse(restaurantsCloseBy);
+  }
+
+  @Override
+  public void forEachRestaurantCloseBy(GetRestaurantsRequest getRestaurantsRequest,
+      LocalTime currentTime, Consumer<Restaurant> consumer) {
+    restaurantRepositoryService.forEachOpenRestaurantCloseBy(getRestaurantsRequest.getLatitude(),
+        getRestaurantsRequest.getLongitude(), currentTime, servingRadiusInKmsAt(currentTime),
+        consumer);
+  }
 
+  // Peak hours are 8AM - 10AM, 1PM - 2PM and 7PM - 9PM, bounds included.
+  private Double servingRadiusInKmsAt(LocalTime currentTime) {
     LocalTime peakOneStart = LocalTime.of(7, 59, 59);
     LocalTime peakOneEnd = LocalTime.of(10, 00, 01);
     LocalTime peakTwoStart = LocalTime.of(12, 59, 59);
@@ -52,18 +104,13 @@ public class RestaurantServiceImpl implements RestaurantService {
     LocalTime peakThreeEnd = LocalTime.of(21, 00, 01);
 
     if (currentTime.isBefore(peakOneEnd) && currentTime.isAfter(peakOneStart)) {
-      servingRadiusInKms = 3.0;
+      return peakHoursServingRadiusInKms;
     } else if (currentTime.isBefore(peakTwoEnd) && currentTime.isAfter(peakTwoStart)) {
-      servingRadiusInKms = 3.0;
+      return peakHoursServingRadiusInKms;
     } else if (currentTime.isBefore(peakThreeEnd) && currentTime.isAfter(peakThreeStart)) {
-      servingRadiusInKms = 3.0;
-    } else {
-      servingRadiusInKms = 5.0;
+      return peakHoursServingRadiusInKms;
     }
-
-    List<Restaurant> restaurantsCloseBy = restaurantRepositoryService.findAllRestaurantsCloseBy(
-        latitude, longitude, currentTime, servingRadiusInKms);
-    return new GetRestaurantsResponse(restaurantsCloseBy);
+    return normalHoursServingRadiusInKms;
   }
 
   // TODO: CRIO_TASK_MODULE_RESTAURANTSEARCH
@@ -81,50 +128,70 @@ public class RestaurantServiceImpl implements RestaurantService {
 
     Double latitude = getRestaurantsRequest.getLatitude();
     Double longitude = getRestaurantsRequest.getLongitude();
-    Double servingRadiusInKms = -1.0;
+    Double servingRadiusInKms = servingRadiusInKmsAt(currentTime);
     String searchString = getRestaurantsRequest.getSearchFor();
 
-    LocalTime peakOneStart = LocalTime.of(7, 59, 59);
-    LocalTime peakOneEnd = LocalTime.of(10, 00, 01);
-    LocalTime peakTwoStart = LocalTime.of(12, 59, 59);
-    LocalTime peakTwoEnd = LocalTime.of(14, 00, 01);
-    LocalTime peakThreeStart = LocalTime.of(18, 59, 59);
-    LocalTime peakThreeEnd = LocalTime.of(21, 00, 01);
+    if (searchString == null || searchString.isEmpty()) {
+      return new GetRestaurantsResponse(new ArrayList<>());
+    }
+    if (PARALLEL_SEARCH_MODE.equals(searchMode)) {
+      return searchInParallel(latitude, longitude, searchString, currentTime,
+          servingRadiusInKms);
+    }
+    return new GetRestaurantsResponse(restaurantRepositoryService.searchRestaurants(latitude,
+        longitude, searchString, currentTime, servingRadiusInKms));
+  }
 
-    if (currentTime.isBefore(peakOneEnd) && currentTime.isAfter(peakOneStart)) {
-      servingRadiusInKms = 3.0;
-    } else if (currentTime.isBefore(peakTwoEnd) && currentTime.isAfter(peakTwoStart)) {
-      servingRadiusInKms = 3.0;
-    } else if (currentTime.isBefore(peakThreeEnd) && currentTime.isAfter(peakThreeStart)) {
-      servingRadiusInKms = 3.0;
-    } else {
-      servingRadiusInKms = 5.0;
+  // Looks the nearby restaurants up once, ranks them for each category on the search executor
+  // and merges what finished before the deadline in category order. The response is marked
+  // partial if any category is missing.
+  private GetRestaurantsResponse searchInParallel(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(searchDeadlineInMillis);
+    List<Restaurant> closeBy = restaurantRepositoryService.findAllRestaurantsCloseBy(latitude,
+        longitude, currentTime, servingRadiusInKms);
+    if (closeBy.isEmpty()) {
+      return new GetRestaurantsResponse(new ArrayList<>());
     }
 
-    List<Restaurant> restaurantsCloseBy = new ArrayList<>();
-    
-    if (searchString != null
-        && !searchString.isEmpty()) {
-      
-      restaurantsCloseBy = restaurantRepositoryService.findRestaurantsByName(
-        latitude, longitude,
-        searchString, currentTime, servingRadiusInKms);
-      
-      restaurantsCloseBy.addAll(restaurantRepositoryService.findRestaurantsByAttributes(
-          latitude, longitude, searchString, currentTime, servingRadiusInKms));
-      
-      restaurantsCloseBy.addAll(restaurantRepositoryService.findRestaurantsByItemName(
-          latitude, longitude, searchString, currentTime, servingRadiusInKms));
-
-      restaurantsCloseBy.addAll(restaurantRepositoryService.findRestaurantsByNameExact(
-          latitude, longitude, searchString, currentTime, servingRadiusInKms));
-      
-      restaurantsCloseBy.addAll(restaurantRepositoryService.findRestaurantsByItemAttributes(
-          latitude, longitude, searchString, currentTime, servingRadiusInKms));
-
-      return new GetRestaurantsResponse(restaurantsCloseBy);
+    Map<SearchCategory, Future<List<Restaurant>>> searches = new EnumMap<>(SearchCategory.class);
+    for (SearchCategory category : SearchCategory.values()) {
+      try {
+        searches.put(category, searchExecutor.submit(() ->
+            restaurantSearchEngine.search(closeBy, searchString, EnumSet.of(category))));
+      } catch (RejectedExecutionException e) {
+        log.warn("Search executor is full, skipping {}", category);
+      }
     }
-    return new GetRestaurantsResponse(restaurantsCloseBy);
+
+    boolean partial = searches.size() < SearchCategory.values().length;
+    Map<String, Restaurant> restaurants = new LinkedHashMap<>();
+    for (Map.Entry<SearchCategory, Future<List<Restaurant>>> search : searches.entrySet()) {
+      try {
+        long remainingNanos = Math.max(0, deadline - System.nanoTime());
+        for (Restaurant restaurant : search.getValue().get(remainingNanos, TimeUnit.NANOSECONDS)) {
+          restaurants.putIfAbsent(restaurant.getRestaurantId(), restaurant);
+        }
+      } catch (TimeoutException e) {
+        search.getValue().cancel(true);
+        partial = true;
+      } catch (ExecutionException e) {
+        log.warn("Search by {} failed: {}", search.getKey(), e.getCause().getMessage());
+        partial = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        search.getValue().cancel(true);
+        partial = true;
+      }
+    }
+
+    GetRestaurantsResponse response = new GetRestaurantsResponse(
+        new ArrayList<>(restaurants.values()));
+    if (partial) {
+      meterRegistry.counter("search.partial").increment();
+      response.setPartial(true);
+    }
+    return response;
   }
 
 }
@@ -0,0 +1,70 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Menu;
+import com.crio.qeats.dto.Order;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.ItemEntity;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.OrderEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written mappings from Mongo entities to the DTOs sent to clients.
+ * They copy fields directly, so mapping a result costs no reflection and no per-call mapper
+ * setup. Lists are copied because entities may be shared through the caches.
+ */
+public final class EntityMappers {
+
+  private EntityMappers() {
+  }
+
+  public static Restaurant toRestaurant(RestaurantEntity restaurantEntity) {
+    return new Restaurant(restaurantEntity.getId(), restaurantEntity.getRestaurantId(),
+        restaurantEntity.getName(), restaurantEntity.getCity(), restaurantEntity.getImageUrl(),
+        restaurantEntity.getLatitude(), restaurantEntity.getLongitude(),
+        restaurantEntity.getOpensAt(), restaurantEntity.getClosesAt(),
+        copyOf(restaurantEntity.getAttributes()));
+  }
+
+  public static List<Restaurant> toRestaurants(List<RestaurantEntity> restaurantEntities) {
+    List<Restaurant> restaurants = new ArrayList<>(restaurantEntities.size());
+    for (RestaurantEntity restaurantEntity : restaurantEntities) {
+      restaurants.add(toRestaurant(restaurantEntity));
+    }
+    return restaurants;
+  }
+
+  /**
+   * Maps an item; the price is truncated to the whole number the DTO carries.
+   */
+  public static Item toItem(ItemEntity itemEntity) {
+    return new Item(itemEntity.getId(), itemEntity.getItemId(), itemEntity.getName(),
+        itemEntity.getImageUrl(), copyOf(itemEntity.getAttributes()),
+        itemEntity.getPrice() == null ? 0 : itemEntity.getPrice().intValue());
+  }
+
+  public static Menu toMenu(MenuEntity menuEntity) {
+    return new Menu(menuEntity.getRestaurantId(), menuEntity.getItems() == null ? null
+        : new ArrayList<>(menuEntity.getItems()));
+  }
+
+  public static Order toOrder(OrderEntity orderEntity) {
+    return new Order(orderEntity.getId(), orderEntity.getUserId(), orderEntity.getRestaurantId(),
+        orderEntity.getItems() == null ? null : new ArrayList<>(orderEntity.getItems()),
+        orderEntity.getTotal(), orderEntity.getStatus(), orderEntity.getPlacedAt());
+  }
+
+  private static List<String> copyOf(List<String> values) {
+    return values == null ? null : new ArrayList<>(values);
+  }
+
+}
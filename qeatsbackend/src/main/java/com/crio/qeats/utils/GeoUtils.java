@@ -14,11 +14,87 @@ import lombok.Data;
 @AllArgsConstructor
 public class GeoUtils {
 
+  private static final double EARTH_RADIUS_IN_KM = 6371;
+
+  // Widens the bounding box a little so rounding never rejects a point inside the radius.
+  private static final double BOUNDING_BOX_SLACK_IN_DEGREES = 1e-9;
+
   public static double findDistanceInKm(double srcLatitude, double srcLongitude,
       double dstLatitude, double dstLongitude) {
     return distance(srcLatitude, dstLatitude, srcLongitude, dstLongitude, 0, 0);
   }
 
+  /**
+   * Finds the points that are strictly closer than the given radius to the source position, by
+   * the same haversine distance as {@link #findDistanceInKm}.
+   * Points outside the bounding box of the serving circle are rejected with plain comparisons.
+   * The rest are compared by the haversine term, which is a quarter of the squared chord
+   * between the points on the unit sphere, against a threshold computed once per call, so no
+   * square root or arc tangent is evaluated. A NaN coordinate never matches.
+   *
+   * @param latitudes latitudes of the points, in degrees
+   * @param longitudes longitudes of the points, in degrees
+   * @param count number of points, read from the start of both arrays
+   * @param matches receives the indices of matching points, must hold count entries
+   * @return number of indices written to the start of matches, in ascending order
+   */
+  public static int findWithinRadius(double srcLatitude, double srcLongitude,
+      double[] latitudes, double[] longitudes, int count, double radiusInKm, int[] matches) {
+    return findWithinRadius(srcLatitude, srcLongitude, latitudes, longitudes, null, count,
+        radiusInKm, matches);
+  }
+
+  /**
+   * Same as {@link #findWithinRadius(double, double, double[], double[], int, double, int[])},
+   * but only looks at the points whose indices are listed in candidates.
+   *
+   * @param candidates indices into latitudes and longitudes, or null for 0 .. count - 1
+   * @param count number of entries of candidates to check
+   * @return number of matching candidates written to the start of matches, in candidate order
+   */
+  public static int findWithinRadius(double srcLatitude, double srcLongitude,
+      double[] latitudes, double[] longitudes, int[] candidates, int count, double radiusInKm,
+      int[] matches) {
+    double angularRadius = radiusInKm / EARTH_RADIUS_IN_KM;
+    double sinHalfRadius = Math.sin(angularRadius / 2);
+    // Beyond half the circumference every point, the antipode included, is within the radius.
+    double threshold = angularRadius > Math.PI ? 2 : sinHalfRadius * sinHalfRadius;
+
+    double latitudeDelta = Math.toDegrees(angularRadius) + BOUNDING_BOX_SLACK_IN_DEGREES;
+    // Widest longitude span of a spherical cap, unbounded once the cap reaches a pole.
+    double longitudeDelta = 360;
+    if (Math.abs(srcLatitude) + Math.toDegrees(angularRadius) < 90) {
+      longitudeDelta = Math.toDegrees(Math.asin(Math.sin(angularRadius)
+          / Math.cos(Math.toRadians(srcLatitude)))) + BOUNDING_BOX_SLACK_IN_DEGREES;
+    }
+
+    double cosSrcLatitude = Math.cos(Math.toRadians(srcLatitude));
+    int found = 0;
+    for (int c = 0; c < count; c++) {
+      int i = candidates == null ? c : candidates[c];
+      double latitudeDistance = latitudes[i] - srcLatitude;
+      double longitudeDistance = longitudes[i] - srcLongitude;
+      double wrappedLongitudeDistance = Math.abs(longitudeDistance);
+      if (wrappedLongitudeDistance > 180) {
+        wrappedLongitudeDistance = 360 - wrappedLongitudeDistance;
+      }
+      if (Math.abs(latitudeDistance) > latitudeDelta
+          || wrappedLongitudeDistance > longitudeDelta) {
+        continue;
+      }
+
+      double sinHalfLatitude = Math.sin(Math.toRadians(latitudeDistance) / 2);
+      double sinHalfLongitude = Math.sin(Math.toRadians(longitudeDistance) / 2);
+      double a = sinHalfLatitude * sinHalfLatitude
+          + cosSrcLatitude * Math.cos(Math.toRadians(latitudes[i]))
+          * sinHalfLongitude * sinHalfLongitude;
+      if (a < threshold) {
+        matches[found++] = i;
+      }
+    }
+    return found;
+  }
+
   /**
    * THIS IS BORROWED CODE. Calculate distance between two points in latitude and longitude taking
    * into account height difference. If you are not interested in height difference pass 0.0. Uses
@@ -0,0 +1,117 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class CacheSerializerTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Test
+  void everyCodecRoundTripsEveryField() throws IOException {
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    restaurants.get(0).setImageUrl(null);
+    restaurants.get(1).setLatitude(null);
+
+    for (String codecName : Arrays.asList(BinaryCacheCodec.NAME, JsonRowCacheCodec.NAME)) {
+      CacheSerializer cacheSerializer = cacheSerializer(codecName, Integer.MAX_VALUE);
+
+      assertEquals(restaurants,
+          cacheSerializer.deserialize(cacheSerializer.serialize(restaurants)));
+    }
+  }
+
+  @Test
+  void binaryIsSmallerThanJson() throws IOException {
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+
+    int binarySize = cacheSerializer(BinaryCacheCodec.NAME, Integer.MAX_VALUE)
+        .serialize(restaurants).length;
+    int jsonRowSize = cacheSerializer(JsonRowCacheCodec.NAME, Integer.MAX_VALUE)
+        .serialize(restaurants).length;
+    int entityJsonSize = new ObjectMapper().writeValueAsBytes(restaurants).length;
+
+    assertTrue(binarySize < jsonRowSize);
+    assertTrue(jsonRowSize < entityJsonSize);
+  }
+
+  @Test
+  void largeListsAreCompressed() throws IOException {
+    CacheSerializer uncompressed = cacheSerializer(BinaryCacheCodec.NAME, Integer.MAX_VALUE);
+    CacheSerializer compressed = cacheSerializer(BinaryCacheCodec.NAME, 1024);
+
+    for (int size : new int[] {100, 1000, 10000}) {
+      List<RestaurantEntity> restaurants = manyRestaurants(size);
+      byte[] value = compressed.serialize(restaurants);
+
+      assertTrue(value.length < uncompressed.serialize(restaurants).length);
+      assertEquals(restaurants, compressed.deserialize(value));
+    }
+  }
+
+  @Test
+  void valuesWrittenWithAnotherCodecAreStillReadable() throws IOException {
+    List<RestaurantEntity> restaurants = manyRestaurants(100);
+    byte[] value = cacheSerializer(JsonRowCacheCodec.NAME, 1024).serialize(restaurants);
+
+    assertEquals(restaurants,
+        cacheSerializer(BinaryCacheCodec.NAME, Integer.MAX_VALUE).deserialize(value));
+  }
+
+  private CacheSerializer cacheSerializer(String codecName, int compressionThresholdInBytes) {
+    CacheSerializer cacheSerializer = new CacheSerializer();
+    ReflectionTestUtils.setField(cacheSerializer, "cacheCodecs",
+        Arrays.asList(new BinaryCacheCodec(), new JsonRowCacheCodec()));
+    ReflectionTestUtils.setField(cacheSerializer, "codecName", codecName);
+    ReflectionTestUtils.setField(cacheSerializer, "compressionThresholdInBytes",
+        compressionThresholdInBytes);
+    cacheSerializer.init();
+    return cacheSerializer;
+  }
+
+  private List<RestaurantEntity> manyRestaurants(int size) throws IOException {
+    List<RestaurantEntity> fixture = listOfRestaurants();
+    List<RestaurantEntity> restaurants = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      RestaurantEntity restaurantEntity = fixture.get(i % fixture.size());
+      RestaurantEntity copy = new RestaurantEntity();
+      copy.setId(restaurantEntity.getId() + i);
+      copy.setRestaurantId(String.valueOf(i));
+      copy.setName(restaurantEntity.getName());
+      copy.setCity(restaurantEntity.getCity());
+      copy.setImageUrl(restaurantEntity.getImageUrl());
+      copy.setLatitude(restaurantEntity.getLatitude() + i * 1e-4);
+      copy.setLongitude(restaurantEntity.getLongitude() - i * 1e-4);
+      copy.setOpensAt(restaurantEntity.getOpensAt());
+      copy.setClosesAt(restaurantEntity.getClosesAt());
+      copy.setAttributes(restaurantEntity.getAttributes());
+      restaurants.add(copy);
+    }
+    return restaurants;
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    return new ObjectMapper().readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+  }
+}
@@ -0,0 +1,100 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Menu;
+import com.crio.qeats.exchanges.GetMenuResponse;
+import com.crio.qeats.services.MenuService;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class MenuResponseCacheTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  private MenuService menuService;
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private MenuResponseCache menuResponseCache;
+
+  @BeforeEach
+  void setup() {
+    menuService = Mockito.mock(MenuService.class);
+    menuResponseCache = new MenuResponseCache();
+    ReflectionTestUtils.setField(menuResponseCache, "menuService", menuService);
+    ReflectionTestUtils.setField(menuResponseCache, "objectMapper", objectMapper);
+    ReflectionTestUtils.setField(menuResponseCache, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(menuResponseCache, "maximumSize", 100L);
+    ReflectionTestUtils.setField(menuResponseCache, "ttlInSeconds", 60L);
+    menuResponseCache.init();
+  }
+
+  @Test
+  void menusAreEncodedOnceAndReloadedAfterInvalidation() throws IOException {
+    GetMenuResponse expected = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/get_menu_response.json"), GetMenuResponse.class);
+    when(menuService.findMenu("11")).thenReturn(expected);
+
+    MenuResponseCache.EncodedMenu first = menuResponseCache.get("11");
+    MenuResponseCache.EncodedMenu second = menuResponseCache.get("11");
+
+    assertSame(first, second);
+    verify(menuService, times(1)).findMenu("11");
+    JsonNode body = objectMapper.readTree(first.getBody());
+    assertEquals(objectMapper.valueToTree(expected), body);
+
+    Menu changed = new Menu("11", new ArrayList<>(expected.getMenu().getItems()));
+    changed.getItems().add(new Item("2", "2", "Idly", "www.google.com",
+        Collections.singletonList("South Indian"), 45));
+    when(menuService.findMenu("11")).thenReturn(new GetMenuResponse(changed));
+    menuResponseCache.invalidate("11");
+
+    MenuResponseCache.EncodedMenu reloaded = menuResponseCache.get("11");
+    verify(menuService, times(2)).findMenu("11");
+    assertNotEquals(first.getEtag(), reloaded.getEtag());
+    assertEquals(2, objectMapper.readTree(reloaded.getBody()).get("menu").get("items").size());
+  }
+
+  @Test
+  void missingMenusAreCachedAndEtagsMatchIfNoneMatchHeaders() throws IOException {
+    assertNull(menuResponseCache.get("404"));
+    assertNull(menuResponseCache.get("404"));
+    verify(menuService, times(1)).findMenu("404");
+
+    when(menuService.findMenu("11")).thenReturn(objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/get_menu_response.json"), GetMenuResponse.class));
+    MenuResponseCache.EncodedMenu encodedMenu = menuResponseCache.get("11");
+    String etag = encodedMenu.getEtag();
+
+    assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+    assertTrue(encodedMenu.matches(etag));
+    assertTrue(encodedMenu.matches("\"other\", W/" + etag));
+    assertTrue(encodedMenu.matches("*"));
+    assertFalse(encodedMenu.matches("\"other\""));
+    assertFalse(encodedMenu.matches(null));
+  }
+}
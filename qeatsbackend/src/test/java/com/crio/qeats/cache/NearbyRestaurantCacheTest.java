@@ -0,0 +1,358 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.configs.CacheDestroyedEvent;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+class NearbyRestaurantCacheTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Test
+  void keySeparatesRadiusAndOpenHoursBucket() {
+    GeoHash cell = GeoHash.withCharacterPrecision(20.0, 30.0,
+        NearbyRestaurantCache.GEOHASH_PRECISION);
+
+    assertEquals(NearbyRestaurantCache.keyOf(cell, 3.0, LocalTime.of(18, 1)),
+        NearbyRestaurantCache.keyOf(cell, 3.0, LocalTime.of(18, 29)));
+    assertNotEquals(NearbyRestaurantCache.keyOf(cell, 3.0, LocalTime.of(18, 1)),
+        NearbyRestaurantCache.keyOf(cell, 3.0, LocalTime.of(18, 30)));
+    assertNotEquals(NearbyRestaurantCache.keyOf(cell, 3.0, LocalTime.of(18, 1)),
+        NearbyRestaurantCache.keyOf(cell, 5.0, LocalTime.of(18, 1)));
+  }
+
+  @Test
+  void localTierServesWithoutRedisUntilCacheIsDestroyed() throws IOException {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    NearbyRestaurantCache nearbyRestaurantCache = new NearbyRestaurantCache();
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "redisConfiguration",
+        Mockito.mock(RedisConfiguration.class));
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "localMaximumSize", 10L);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "localTtlInSeconds", 60L);
+    nearbyRestaurantCache.init();
+    try {
+      nearbyRestaurantCache.putLocal("nearby:key", listOfRestaurants());
+
+      assertEquals(5, nearbyRestaurantCache.getLocal("nearby:key").size());
+      assertNull(nearbyRestaurantCache.getLocal("nearby:other"));
+      assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "nearby.local")
+          .tag("result", "hit").functionCounter().count());
+
+      nearbyRestaurantCache.onCacheDestroyed(new CacheDestroyedEvent(this));
+      assertNull(nearbyRestaurantCache.getLocal("nearby:key"));
+    } finally {
+      nearbyRestaurantCache.shutdown();
+    }
+  }
+
+  @Test
+  void localTierIsKeptWhileInvalidationsCannotBeSubscribedTo() throws Exception {
+    JedisPool jedisPool = Mockito.mock(JedisPool.class);
+    RedisConfiguration redisConfiguration = Mockito.mock(RedisConfiguration.class);
+    when(redisConfiguration.getJedisPool()).thenReturn(jedisPool);
+    when(jedisPool.getResource()).thenThrow(new JedisConnectionException("Redis is down"));
+    NearbyRestaurantCache nearbyRestaurantCache = new NearbyRestaurantCache();
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "redisConfiguration", redisConfiguration);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "localMaximumSize", 10L);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "localTtlInSeconds", 60L);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "invalidationListenerEnabled", true);
+    try {
+      nearbyRestaurantCache.init();
+      nearbyRestaurantCache.putLocal("nearby:key", listOfRestaurants());
+      verify(jedisPool, timeout(5000)).getResource();
+      // Lets the failed attempt finish; the next one is seconds away.
+      Thread.sleep(200);
+
+      assertEquals(5, nearbyRestaurantCache.getLocal("nearby:key").size());
+    } finally {
+      nearbyRestaurantCache.shutdown();
+    }
+  }
+
+  @Test
+  void invalidatingEverythingMovesRedisKeysToTheNextGeneration() throws IOException {
+    Jedis jedis = Mockito.mock(Jedis.class);
+    Pipeline pipeline = Mockito.mock(Pipeline.class);
+    CacheSerializer cacheSerializer = Mockito.mock(CacheSerializer.class);
+    when(jedis.pipelined()).thenReturn(pipeline);
+    when(jedis.incr(NearbyRestaurantCache.GENERATION_KEY)).thenReturn(3L);
+    when(cacheSerializer.serialize(any())).thenReturn(new byte[0]);
+    NearbyRestaurantCache nearbyRestaurantCache = newCache(jedis, cacheSerializer,
+        new SimpleMeterRegistry());
+    try {
+      nearbyRestaurantCache.put("nearby:key", listOfRestaurants());
+      nearbyRestaurantCache.invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+      nearbyRestaurantCache.put("nearby:key", listOfRestaurants());
+
+      ArgumentCaptor<byte[]> keys = ArgumentCaptor.forClass(byte[].class);
+      ArgumentCaptor<Integer> ttls = ArgumentCaptor.forClass(Integer.class);
+      verify(pipeline, times(2)).setex(keys.capture(), ttls.capture(), any(byte[].class));
+      assertEquals("nearby:key", new String(keys.getAllValues().get(0), StandardCharsets.UTF_8));
+      assertEquals("nearby:key:g3",
+          new String(keys.getAllValues().get(1), StandardCharsets.UTF_8));
+      for (int ttl : ttls.getAllValues()) {
+        assertTrue(ttl >= 3600 && ttl <= 3960);
+      }
+      verify(jedis).publish(NearbyRestaurantCache.INVALIDATION_CHANNEL,
+          NearbyRestaurantCache.INVALIDATE_ALL);
+    } finally {
+      nearbyRestaurantCache.shutdown();
+    }
+  }
+
+  @Test
+  void invalidatingAroundALocationDropsOnlyTheCellsOfNearbyRegions() throws IOException {
+    Jedis jedis = Mockito.mock(Jedis.class);
+    Pipeline pipeline = Mockito.mock(Pipeline.class);
+    CacheSerializer cacheSerializer = Mockito.mock(CacheSerializer.class);
+    when(jedis.pipelined()).thenReturn(pipeline);
+    when(cacheSerializer.serialize(any())).thenReturn(new byte[0]);
+    NearbyRestaurantCache nearbyRestaurantCache = newCache(jedis, cacheSerializer,
+        new SimpleMeterRegistry());
+    LocalTime time = LocalTime.of(18, 1);
+    GeoHash nearCell = GeoHash.withCharacterPrecision(12.9716, 77.5946,
+        NearbyRestaurantCache.GEOHASH_PRECISION);
+    GeoHash farCell = GeoHash.withCharacterPrecision(13.5, 77.5946,
+        NearbyRestaurantCache.GEOHASH_PRECISION);
+    String nearKey = NearbyRestaurantCache.keyOf(nearCell, 5.0, time);
+    String farKey = NearbyRestaurantCache.keyOf(farCell, 5.0, time);
+    String nearRegion = nearCell.toBase32().substring(0, NearbyRestaurantCache.REGION_PRECISION);
+    String farRegion = farCell.toBase32().substring(0, NearbyRestaurantCache.REGION_PRECISION);
+    String nearRegionKey = NearbyRestaurantCache.REGION_KEY_PREFIX + nearRegion;
+    try {
+      nearbyRestaurantCache.put(nearKey, listOfRestaurants());
+      nearbyRestaurantCache.put(farKey, listOfRestaurants());
+      verify(pipeline).sadd(nearRegionKey, nearKey);
+      when(jedis.smembers(nearRegionKey)).thenReturn(Collections.singleton(nearKey));
+
+      Set<String> regions = NearbyRestaurantCache.regionsAround(12.98, 77.6, 5.0);
+      assertTrue(regions.contains(nearRegion));
+      assertFalse(regions.contains(farRegion));
+      nearbyRestaurantCache.invalidateAround(12.98, 77.6, 5.0);
+
+      assertNull(nearbyRestaurantCache.getLocal(nearKey));
+      assertNotNull(nearbyRestaurantCache.getLocal(farKey));
+      verify(jedis).del(nearRegionKey, nearKey, nearKey + ":delta");
+      verify(jedis).publish(NearbyRestaurantCache.INVALIDATION_CHANNEL,
+          "nearby:" + nearRegion + "*");
+      verify(jedis, never()).incr(NearbyRestaurantCache.GENERATION_KEY);
+    } finally {
+      nearbyRestaurantCache.shutdown();
+    }
+  }
+
+  @Test
+  void concurrentMissesOfAKeyShareOneLoad() throws Exception {
+    Jedis jedis = Mockito.mock(Jedis.class);
+    Pipeline pipeline = Mockito.mock(Pipeline.class);
+    CacheSerializer cacheSerializer = Mockito.mock(CacheSerializer.class);
+    when(jedis.pipelined()).thenReturn(pipeline);
+    when(pipeline.get(any(byte[].class))).thenReturn(response(null));
+    when(jedis.set(anyString(), anyString(), eq("NX"), eq("PX"), anyLong())).thenReturn("OK");
+    when(cacheSerializer.serialize(any())).thenReturn(new byte[0]);
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    NearbyRestaurantCache nearbyRestaurantCache = newCache(jedis, cacheSerializer, meterRegistry);
+
+    int callers = 8;
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    AtomicInteger loads = new AtomicInteger();
+    // Holds the load until every other caller waits for it.
+    Supplier<List<RestaurantEntity>> loader = () -> {
+      loads.incrementAndGet();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (coalesced(meterRegistry, "jvm") < callers - 1
+          && System.currentTimeMillis() < deadline) {
+        Thread.yield();
+      }
+      return restaurants;
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    try {
+      List<Future<List<RestaurantEntity>>> results = new ArrayList<>();
+      for (int i = 0; i < callers; i++) {
+        results.add(executor.submit(() -> nearbyRestaurantCache.getOrLoad("nearby:key", loader)));
+      }
+      for (Future<List<RestaurantEntity>> result : results) {
+        assertEquals(5, result.get(10, TimeUnit.SECONDS).size());
+      }
+
+      assertEquals(1, loads.get());
+      assertEquals(callers - 1, coalesced(meterRegistry, "jvm"));
+      assertEquals(1.0, meterRegistry.get("cache.loads").tag("reason", "miss").counter().count());
+    } finally {
+      executor.shutdownNow();
+      nearbyRestaurantCache.shutdown();
+    }
+  }
+
+  @Test
+  void lockHoldersLoadAndEntriesCloseToExpiryRefreshEarly() throws Exception {
+    Jedis jedis = Mockito.mock(Jedis.class);
+    Pipeline pipeline = Mockito.mock(Pipeline.class);
+    CacheSerializer cacheSerializer = Mockito.mock(CacheSerializer.class);
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    byte[] value = new byte[] {1};
+    when(jedis.pipelined()).thenReturn(pipeline);
+    when(cacheSerializer.deserialize(value)).thenReturn(restaurants);
+    when(cacheSerializer.serialize(any())).thenReturn(value);
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    NearbyRestaurantCache nearbyRestaurantCache = newCache(jedis, cacheSerializer, meterRegistry);
+    @SuppressWarnings("unchecked")
+    Supplier<List<RestaurantEntity>> loader = Mockito.mock(Supplier.class);
+    when(loader.get()).thenReturn(restaurants);
+    try {
+      // Another instance holds the lock: wait for its result instead of loading.
+      when(jedis.set(anyString(), anyString(), eq("NX"), eq("PX"), anyLong())).thenReturn(null);
+      when(pipeline.get(any(byte[].class))).thenReturn(response(null), response(value));
+      when(pipeline.pttl(anyString())).thenReturn(response(3600000L));
+      when(pipeline.get("nearby:key:delta")).thenReturn(response(null));
+      assertEquals(5, nearbyRestaurantCache.getOrLoad("nearby:key", loader).size());
+      verify(loader, never()).get();
+      assertEquals(1, coalesced(meterRegistry, "cluster"));
+
+      // A cached entry about to expire, whose last load took long, is refreshed by the holder.
+      when(jedis.set(anyString(), anyString(), eq("NX"), eq("PX"), anyLong())).thenReturn("OK");
+      when(pipeline.get(any(byte[].class))).thenReturn(response(value));
+      when(pipeline.pttl(anyString())).thenReturn(response(10L));
+      when(pipeline.get("nearby:key:delta")).thenReturn(response("1000000000"));
+      assertEquals(5, nearbyRestaurantCache.getOrLoad("nearby:key", loader).size());
+      verify(loader, times(1)).get();
+      assertEquals(1.0, meterRegistry.get("cache.loads").tag("reason", "early-refresh")
+          .counter().count());
+      verify(pipeline).setex(eq("nearby:key:delta".getBytes(StandardCharsets.UTF_8)),
+          any(Integer.class), any(byte[].class));
+    } finally {
+      nearbyRestaurantCache.shutdown();
+    }
+  }
+
+  @Test
+  void entriesStoredByThePreviousLockHolderAreNotLoadedAgain() throws Exception {
+    Jedis jedis = Mockito.mock(Jedis.class);
+    Pipeline pipeline = Mockito.mock(Pipeline.class);
+    CacheSerializer cacheSerializer = Mockito.mock(CacheSerializer.class);
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    byte[] value = new byte[] {1};
+    when(jedis.pipelined()).thenReturn(pipeline);
+    when(cacheSerializer.deserialize(value)).thenReturn(restaurants);
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    NearbyRestaurantCache nearbyRestaurantCache = newCache(jedis, cacheSerializer, meterRegistry);
+    @SuppressWarnings("unchecked")
+    Supplier<List<RestaurantEntity>> loader = Mockito.mock(Supplier.class);
+    try {
+      // Missed, then stored by another instance right before it released the lock we take.
+      when(pipeline.get(any(byte[].class))).thenReturn(response(null), response(value));
+      when(pipeline.pttl(anyString())).thenReturn(response(3600000L));
+      when(pipeline.get("nearby:key:delta")).thenReturn(response(null));
+      when(jedis.set(anyString(), anyString(), eq("NX"), eq("PX"), anyLong())).thenReturn("OK");
+
+      assertEquals(5, nearbyRestaurantCache.getOrLoad("nearby:key", loader).size());
+      verify(loader, never()).get();
+      assertEquals(0.0, meterRegistry.get("cache.loads").tag("reason", "miss").counter().count());
+    } finally {
+      nearbyRestaurantCache.shutdown();
+    }
+  }
+
+  private NearbyRestaurantCache newCache(Jedis jedis, CacheSerializer cacheSerializer,
+      MeterRegistry meterRegistry) {
+    JedisPool jedisPool = Mockito.mock(JedisPool.class);
+    RedisConfiguration redisConfiguration = Mockito.mock(RedisConfiguration.class);
+    when(redisConfiguration.getJedisPool()).thenReturn(jedisPool);
+    when(jedisPool.getResource()).thenReturn(jedis);
+
+    NearbyRestaurantCache nearbyRestaurantCache = new NearbyRestaurantCache();
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "redisConfiguration", redisConfiguration);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "cacheSerializer", cacheSerializer);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "localMaximumSize", 10L);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "localTtlInSeconds", 60L);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "redisTtlInSeconds", 3600);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "lockTimeoutInMillis", 3000L);
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "earlyRefreshBeta", 1.0);
+    nearbyRestaurantCache.init();
+    RedisAccessor redisAccessor = new RedisAccessor();
+    ReflectionTestUtils.setField(redisAccessor, "redisConfiguration", redisConfiguration);
+    ReflectionTestUtils.setField(redisAccessor, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(redisAccessor, "batchSize", 100);
+    redisAccessor.init();
+    ReflectionTestUtils.setField(nearbyRestaurantCache, "redisAccessor", redisAccessor);
+    return nearbyRestaurantCache;
+  }
+
+  private static long coalesced(MeterRegistry meterRegistry, String scope) {
+    return (long) meterRegistry.get("cache.coalesced").tag("scope", scope).counter().count();
+  }
+
+  private static <T> Response<T> response(T value) {
+    Response<T> response = new Response<>(new Builder<T>() {
+      @Override
+      public T build(Object data) {
+        return value;
+      }
+    });
+    response.set(value);
+    return response;
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    return new ObjectMapper().readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+  }
+}
@@ -0,0 +1,118 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.configs.RedisConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+class RedisAccessorTest {
+
+  private Jedis jedis;
+  private RedisConfiguration redisConfiguration;
+  private MeterRegistry meterRegistry;
+  private RedisAccessor redisAccessor;
+
+  @BeforeEach
+  void setup() {
+    jedis = Mockito.mock(Jedis.class);
+    JedisPool jedisPool = Mockito.mock(JedisPool.class);
+    redisConfiguration = Mockito.mock(RedisConfiguration.class);
+    when(redisConfiguration.getJedisPool()).thenReturn(jedisPool);
+    when(redisConfiguration.getMaxTotal()).thenReturn(8);
+    when(jedisPool.getResource()).thenReturn(jedis);
+    when(jedisPool.getNumActive()).thenReturn(2);
+
+    meterRegistry = new SimpleMeterRegistry();
+    redisAccessor = new RedisAccessor();
+    ReflectionTestUtils.setField(redisAccessor, "redisConfiguration", redisConfiguration);
+    ReflectionTestUtils.setField(redisAccessor, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(redisAccessor, "batchSize", 2);
+    redisAccessor.init();
+  }
+
+  @Test
+  void mgetReadsInPipelinedBatchesAndKeepsKeyOrder() {
+    List<byte[]> keys = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      keys.add(new byte[] {(byte) i});
+    }
+    List<Integer> batchSizes = new ArrayList<>();
+    Pipeline pipeline = Mockito.mock(Pipeline.class, invocation -> {
+      if (!invocation.getMethod().getName().equals("mget")) {
+        return null;
+      }
+      List<byte[]> values = new ArrayList<>();
+      for (Object key : invocation.getArguments()) {
+        byte[] bytes = (byte[]) key;
+        values.add(bytes[0] == 3 ? null : new byte[] {(byte) (bytes[0] * 10)});
+      }
+      batchSizes.add(values.size());
+      return response(values);
+    });
+    when(jedis.pipelined()).thenReturn(pipeline);
+
+    List<byte[]> result = redisAccessor.mget(keys);
+
+    assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+    verify(pipeline, times(1)).sync();
+    verify(jedis, times(1)).close();
+    assertEquals(5, result.size());
+    assertArrayEquals(new byte[] {10}, result.get(1));
+    assertArrayEquals(new byte[] {40}, result.get(4));
+    assertNull(result.get(3));
+    assertEquals(1, meterRegistry.get("redis.commands").tag("command", "mget").timer().count());
+    assertEquals(1, meterRegistry.get("redis.borrow").timer().count());
+    assertEquals(0.25, meterRegistry.get("redis.pool.utilization").gauge().value());
+  }
+
+  @Test
+  void connectionIsReturnedAndFailureReportedWhenACommandFails() {
+    JedisConnectionException failure = new JedisConnectionException("Read timed out");
+    when(jedis.get("key")).thenThrow(failure);
+
+    assertThrows(JedisConnectionException.class,
+        () -> redisAccessor.execute("get", jedis -> jedis.get("key")));
+
+    verify(jedis, times(1)).close();
+    verify(redisConfiguration, times(1)).reportFailure(failure);
+    assertEquals(1, meterRegistry.get("redis.commands").tag("command", "get").timer().count());
+  }
+
+  private static Response<List<byte[]>> response(List<byte[]> values) {
+    Response<List<byte[]>> response = new Response<>(new Builder<List<byte[]>>() {
+      @Override
+      public List<byte[]> build(Object data) {
+        return values;
+      }
+    });
+    response.set(Arrays.asList(values.toArray()));
+    return response;
+  }
+}
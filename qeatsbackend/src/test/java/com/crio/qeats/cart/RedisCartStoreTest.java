@@ -0,0 +1,120 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cart;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.cache.RedisAccessor;
+import com.crio.qeats.configs.RedisConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.embedded.RedisServer;
+
+class RedisCartStoreTest {
+
+  private static final int REDIS_PORT = 6391;
+
+  private RedisServer server;
+  private JedisPool jedisPool;
+  private RedisCartStore redisCartStore;
+
+  @BeforeEach
+  void setup() throws IOException {
+    server = new RedisServer(REDIS_PORT);
+    server.start();
+    jedisPool = new JedisPool("localhost", REDIS_PORT);
+    RedisConfiguration redisConfiguration = Mockito.mock(RedisConfiguration.class);
+    when(redisConfiguration.getJedisPool()).thenReturn(jedisPool);
+    when(redisConfiguration.getMaxTotal()).thenReturn(8);
+
+    RedisAccessor redisAccessor = new RedisAccessor();
+    ReflectionTestUtils.setField(redisAccessor, "redisConfiguration", redisConfiguration);
+    ReflectionTestUtils.setField(redisAccessor, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(redisAccessor, "batchSize", 100);
+    redisAccessor.init();
+    redisCartStore = new RedisCartStore();
+    ReflectionTestUtils.setField(redisCartStore, "redisAccessor", redisAccessor);
+    ReflectionTestUtils.setField(redisCartStore, "ttlInSeconds", 600);
+  }
+
+  @AfterEach
+  void teardown() throws IOException {
+    jedisPool.close();
+    server.stop();
+  }
+
+  @Test
+  void itemsOfOneRestaurantAreAddedAndRemovedAtomically() {
+    redisCartStore.add("user1", "11", "1", 2);
+    RedisCartStore.StoredCart cart = redisCartStore.add("user1", "11", "3", 1);
+    cart = redisCartStore.add("user1", "11", "1", 1);
+
+    assertEquals("11", cart.getRestaurantId());
+    assertEquals(3, (int) cart.getQuantities().get("1"));
+    assertEquals(1, (int) cart.getQuantities().get("3"));
+    assertNull(redisCartStore.add("user1", "12", "5", 1));
+    assertEquals(2, redisCartStore.get("user1").getQuantities().size());
+    try (Jedis jedis = jedisPool.getResource()) {
+      long ttl = jedis.ttl(RedisCartStore.keyOf("user1"));
+      assertTrue(ttl > 0 && ttl <= 600);
+    }
+
+    cart = redisCartStore.remove("user1", "1", 2);
+    assertEquals(1, (int) cart.getQuantities().get("1"));
+    cart = redisCartStore.remove("user1", "1", 5);
+    assertEquals(Collections.singletonMap("3", 1), cart.getQuantities());
+    cart = redisCartStore.remove("user1", "9", 1);
+    assertEquals(Collections.singletonMap("3", 1), cart.getQuantities());
+
+    // The last item takes the cart, and its restaurant, with it.
+    assertTrue(redisCartStore.remove("user1", "3", 1).isEmpty());
+    RedisCartStore.StoredCart otherRestaurant = redisCartStore.add("user1", "12", "5", 1);
+    assertEquals("12", otherRestaurant.getRestaurantId());
+
+    redisCartStore.clear("user1");
+    assertTrue(redisCartStore.get("user1").isEmpty());
+    assertNull(redisCartStore.get("user1").getRestaurantId());
+    assertTrue(redisCartStore.get("user2").isEmpty());
+  }
+
+  @Test
+  void takenCartsAreGoneAndCanBePutBack() {
+    redisCartStore.add("user1", "11", "1", 2);
+    redisCartStore.add("user1", "11", "3", 1);
+
+    RedisCartStore.StoredCart taken = redisCartStore.take("user1");
+    assertEquals("11", taken.getRestaurantId());
+    assertEquals(2, (int) taken.getQuantities().get("1"));
+    assertTrue(redisCartStore.get("user1").isEmpty());
+    assertTrue(redisCartStore.take("user1").isEmpty());
+
+    // Items added since the cart was taken are kept alongside the restored ones.
+    redisCartStore.add("user1", "11", "1", 1);
+    assertTrue(redisCartStore.restore("user1", taken));
+    RedisCartStore.StoredCart restored = redisCartStore.get("user1");
+    assertEquals(3, (int) restored.getQuantities().get("1"));
+    assertEquals(1, (int) restored.getQuantities().get("3"));
+
+    redisCartStore.clear("user1");
+    redisCartStore.add("user1", "12", "5", 1);
+    assertFalse(redisCartStore.restore("user1", taken));
+    assertEquals("12", redisCartStore.get("user1").getRestaurantId());
+  }
+}
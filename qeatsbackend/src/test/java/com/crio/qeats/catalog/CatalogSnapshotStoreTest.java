@@ -0,0 +1,161 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.cache.BinaryCacheCodec;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class CatalogSnapshotStoreTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private Path directory;
+  private Path snapshot;
+  private CatalogSnapshotStore catalogSnapshotStore;
+  private List<RestaurantEntity> restaurants;
+  private List<MenuEntity> menus;
+  private CatalogDigest version = new CatalogDigest("8d3b7ee5a1f0c6d2", null);
+
+  @BeforeEach
+  void setup() throws IOException {
+    directory = Files.createTempDirectory("qeats-snapshot");
+    snapshot = directory.resolve("catalog.snapshot");
+    catalogSnapshotStore = new CatalogSnapshotStore();
+    ReflectionTestUtils.setField(catalogSnapshotStore, "binaryCacheCodec",
+        new BinaryCacheCodec());
+    ReflectionTestUtils.setField(catalogSnapshotStore, "path", snapshot.toString());
+    ReflectionTestUtils.setField(catalogSnapshotStore, "maxAgeInMinutes", 60L);
+
+    restaurants = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+    menus = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_menus.json"),
+        new TypeReference<List<MenuEntity>>() {
+        });
+  }
+
+  @AfterEach
+  void teardown() throws IOException {
+    Files.deleteIfExists(snapshot);
+    Files.deleteIfExists(directory);
+  }
+
+  @Test
+  void savedCatalogIsReadBack() throws IOException {
+    assertNull(catalogSnapshotStore.load(version));
+
+    catalogSnapshotStore.save(version, restaurants, menus);
+    CatalogSnapshotStore.Catalog catalog = catalogSnapshotStore.load(version);
+
+    assertNotNull(catalog);
+    assertEquals(restaurants, catalog.getRestaurants());
+    assertEquals(menus, catalog.getMenus());
+  }
+
+  @Test
+  void corruptSnapshotIsIgnored() throws IOException {
+    catalogSnapshotStore.save(version, restaurants, menus);
+    try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+      long position = CatalogSnapshotStore.HEADER_LENGTH_IN_BYTES + 10;
+      file.seek(position);
+      int value = file.read();
+      file.seek(position);
+      file.write(value ^ 0xff);
+    }
+
+    assertNull(catalogSnapshotStore.load(version));
+  }
+
+  @Test
+  void snapshotOfAnotherCatalogDigestIsIgnored() throws IOException {
+    catalogSnapshotStore.save(version, restaurants, menus);
+
+    assertNotNull(catalogSnapshotStore.load(new CatalogDigest("8d3b7ee5a1f0c6d2", null)));
+    // Same documents, one of them updated in place.
+    assertNull(catalogSnapshotStore.load(new CatalogDigest("0b9f2c41d7e3a685", null)));
+    assertNull(catalogSnapshotStore.load(
+        new CatalogDigest("8d3b7ee5a1f0c6d2", "4e6a0d93c2b1f758")));
+  }
+
+  @Test
+  void catalogChangesRewriteTheSnapshotOnceAtTheCurrentDigest() throws Exception {
+    MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+    RestaurantRepository restaurantRepository = Mockito.mock(RestaurantRepository.class);
+    MenuRepository menuRepository = Mockito.mock(MenuRepository.class);
+    when(mongoTemplate.executeCommand(any(Document.class))).thenReturn(new Document(
+        "collections", new Document(CatalogSync.RESTAURANTS, "8d3b7ee5a1f0c6d2")
+        .append(CatalogSync.MENUS, "4e6a0d93c2b1f758")));
+    when(restaurantRepository.findAll()).thenReturn(restaurants);
+    when(menuRepository.findAll()).thenReturn(menus);
+    ReflectionTestUtils.setField(catalogSnapshotStore, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(catalogSnapshotStore, "restaurantRepository",
+        restaurantRepository);
+    ReflectionTestUtils.setField(catalogSnapshotStore, "menuRepository", menuRepository);
+    ReflectionTestUtils.setField(catalogSnapshotStore, "enabled", true);
+    ReflectionTestUtils.setField(catalogSnapshotStore, "writeDelayInSeconds", 1L);
+    try {
+      catalogSnapshotStore.scheduleSave();
+      catalogSnapshotStore.scheduleSave();
+      CatalogDigest current = CatalogDigest.of(mongoTemplate);
+      long deadline = System.currentTimeMillis() + 5000;
+      while (catalogSnapshotStore.load(current) == null
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+
+      assertEquals(restaurants, catalogSnapshotStore.load(current).getRestaurants());
+      verify(restaurantRepository, times(1)).findAll();
+    } finally {
+      catalogSnapshotStore.shutdown();
+    }
+  }
+
+  @Test
+  void staleOrOtherVersionSnapshotIsIgnored() throws IOException {
+    catalogSnapshotStore.save(version, restaurants, menus);
+    ReflectionTestUtils.setField(catalogSnapshotStore, "maxAgeInMinutes", -1L);
+    assertNull(catalogSnapshotStore.load(version));
+
+    ReflectionTestUtils.setField(catalogSnapshotStore, "maxAgeInMinutes", 60L);
+    try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+      file.seek(4);
+      file.writeInt(CatalogSnapshotStore.FORMAT_VERSION + 1);
+    }
+    assertNull(catalogSnapshotStore.load(version));
+  }
+}
@@ -0,0 +1,292 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.cache.MenuResponseCache;
+import com.crio.qeats.cache.NearbyRestaurantCache;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.search.RestaurantSearchIndex;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+class CatalogSyncTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Mock
+  private MongoTemplate mongoTemplate;
+  @Mock
+  private RestaurantRepository restaurantRepository;
+  @Mock
+  private MenuRepository menuRepository;
+  @Mock
+  private RestaurantGridIndex restaurantGridIndex;
+  @Mock
+  private RestaurantSearchIndex restaurantSearchIndex;
+  @Mock
+  private RedisGeoRestaurantLocator redisGeoRestaurantLocator;
+  @Mock
+  private NearbyRestaurantCache nearbyRestaurantCache;
+  @Mock
+  private MenuResponseCache menuResponseCache;
+  @Mock
+  private ItemResolver itemResolver;
+  @Mock
+  private CatalogSnapshotStore catalogSnapshotStore;
+  @Mock
+  private RedisConfiguration redisConfiguration;
+  @InjectMocks
+  private CatalogSync catalogSync;
+
+  private ObjectMapper objectMapper = new ObjectMapper();
+
+  @BeforeEach
+  void setup() {
+    MockitoAnnotations.initMocks(this);
+    when(redisConfiguration.isCacheAvailable()).thenReturn(true);
+  }
+
+  @Test
+  void pollingAppliesDocumentsModifiedSinceThePreviousPoll() throws IOException {
+    Date firstPoll = new Date(1000);
+    Date secondPoll = new Date(2000);
+    stubCollection(CatalogSync.RESTAURANTS, 5, firstPoll);
+    stubCollection(CatalogSync.MENUS, 5, firstPoll);
+    catalogSync.pollOnce();
+    verify(mongoTemplate, never()).find(any(Query.class), eq(RestaurantEntity.class),
+        anyString());
+
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    restaurants.get(1).setClosesAt("02:00");
+    List<MenuEntity> menus = listOfMenus();
+    menus.get(0).getItems().get(0).setName("Hyderabadi Chicken Briyani");
+    stubCollection(CatalogSync.RESTAURANTS, 5, secondPoll);
+    stubCollection(CatalogSync.MENUS, 5, secondPoll);
+    when(mongoTemplate.find(any(Query.class), eq(RestaurantEntity.class),
+        eq(CatalogSync.RESTAURANTS))).thenReturn(Collections.singletonList(restaurants.get(1)));
+    when(mongoTemplate.find(any(Query.class), eq(MenuEntity.class), eq(CatalogSync.MENUS)))
+        .thenReturn(Collections.singletonList(menus.get(0)));
+    when(restaurantGridIndex.isLoaded()).thenReturn(true);
+    when(restaurantGridIndex.findByRestaurantId(restaurants.get(1).getRestaurantId()))
+        .thenReturn(listOfRestaurants().get(1));
+    catalogSync.pollOnce();
+
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    verify(mongoTemplate, times(2)).find(query.capture(), eq(RestaurantEntity.class),
+        eq(CatalogSync.RESTAURANTS));
+    assertEquals(new Document("$gt", "5").append("$lte", "5"),
+        query.getAllValues().get(0).getQueryObject().get(CatalogVersion.ID));
+    assertEquals(new Document("$gte", firstPoll).append("$lte", secondPoll),
+        query.getAllValues().get(1).getQueryObject().get(CatalogVersion.LAST_MODIFIED_AT));
+    verify(restaurantGridIndex, times(1)).upsert(restaurants.get(1));
+    verify(restaurantSearchIndex, times(1)).upsertRestaurant(restaurants.get(1));
+    verify(restaurantSearchIndex, times(1)).upsertMenu(menus.get(0));
+    verify(menuResponseCache, times(1)).invalidate(menus.get(0).getRestaurantId());
+    verify(itemResolver, times(1)).invalidateAll();
+    verify(nearbyRestaurantCache, times(1)).invalidateAround(restaurants.get(1).getLatitude(),
+        restaurants.get(1).getLongitude(), 5.0);
+    verify(nearbyRestaurantCache, never()).invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+    verify(restaurantGridIndex, never()).rebuild(anyList());
+    verify(catalogSnapshotStore, times(2)).scheduleSave();
+  }
+
+  @Test
+  void pollingFindsInsertsByIdAndSkipsUpdatesItAlreadyApplied() throws IOException {
+    Date modifiedAt = new Date(1000);
+    stubCollection(CatalogSync.RESTAURANTS, 5, "5", null);
+    stubCollection(CatalogSync.MENUS, 5, "5", null);
+    catalogSync.pollOnce();
+
+    // Inserted without lastModifiedAt.
+    RestaurantEntity inserted = listOfRestaurants().get(0);
+    inserted.setId("6");
+    stubCollection(CatalogSync.RESTAURANTS, 6, "6", null);
+    when(mongoTemplate.find(any(Query.class), eq(RestaurantEntity.class),
+        eq(CatalogSync.RESTAURANTS))).thenReturn(Collections.singletonList(inserted));
+    catalogSync.pollOnce();
+    verify(restaurantGridIndex, times(1)).upsert(inserted);
+
+    // Updated twice within the same millisecond, the second time after the poll.
+    RestaurantEntity updated = listOfRestaurants().get(1);
+    updated.setId("2");
+    updated.setLastModifiedAt(modifiedAt);
+    stubCollection(CatalogSync.RESTAURANTS, 6, "6", modifiedAt);
+    when(mongoTemplate.find(any(Query.class), eq(RestaurantEntity.class),
+        eq(CatalogSync.RESTAURANTS))).thenReturn(Collections.emptyList(),
+        Collections.singletonList(updated));
+    catalogSync.pollOnce();
+    verify(restaurantGridIndex, times(1)).upsert(updated);
+
+    RestaurantEntity updatedAgain = listOfRestaurants().get(2);
+    updatedAgain.setId("3");
+    updatedAgain.setLastModifiedAt(modifiedAt);
+    when(mongoTemplate.find(any(Query.class), eq(RestaurantEntity.class),
+        eq(CatalogSync.RESTAURANTS))).thenReturn(Collections.emptyList(),
+        Arrays.asList(updated, updatedAgain));
+    catalogSync.pollOnce();
+    verify(restaurantGridIndex, times(1)).upsert(updated);
+    verify(restaurantGridIndex, times(1)).upsert(updatedAgain);
+  }
+
+  @Test
+  void pollingRebuildsAfterDeletion() throws IOException {
+    stubCollection(CatalogSync.RESTAURANTS, 5, new Date(1000));
+    stubCollection(CatalogSync.MENUS, 5, new Date(1000));
+    catalogSync.pollOnce();
+
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    restaurants.remove(0);
+    stubCollection(CatalogSync.RESTAURANTS, 4, new Date(1000));
+    when(restaurantRepository.findAll()).thenReturn(restaurants);
+    when(menuRepository.findAll()).thenReturn(listOfMenus());
+    catalogSync.pollOnce();
+
+    verify(restaurantGridIndex, times(1)).rebuild(restaurants);
+    verify(restaurantGridIndex, never()).upsert(any());
+    verify(nearbyRestaurantCache, times(1)).invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+    verify(menuResponseCache, times(1)).invalidateAll();
+    verify(itemResolver, times(1)).invalidateAll();
+  }
+
+  @Test
+  void movedRestaurantsDropNearbyResultsAroundBothLocations() throws IOException {
+    RestaurantEntity previous = listOfRestaurants().get(0);
+    RestaurantEntity moved = listOfRestaurants().get(0);
+    moved.setLatitude(previous.getLatitude() + 1);
+    when(restaurantGridIndex.isLoaded()).thenReturn(true);
+    when(restaurantGridIndex.findByRestaurantId(moved.getRestaurantId())).thenReturn(previous);
+    catalogSync.applyRestaurant(moved);
+
+    verify(nearbyRestaurantCache, times(1)).invalidateAround(previous.getLatitude(),
+        previous.getLongitude(), 5.0);
+    verify(nearbyRestaurantCache, times(1)).invalidateAround(moved.getLatitude(),
+        moved.getLongitude(), 5.0);
+    verify(nearbyRestaurantCache, never()).invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+  }
+
+  @Test
+  void changesMissedWhileRedisIsDownDropEveryNearbyResultOnceItIsBack() throws IOException {
+    RestaurantEntity restaurantEntity = listOfRestaurants().get(0);
+    when(restaurantGridIndex.isLoaded()).thenReturn(true);
+    when(redisConfiguration.isCacheAvailable()).thenReturn(false);
+    catalogSync.applyRestaurant(restaurantEntity);
+    verify(nearbyRestaurantCache, never()).invalidateAround(any(Double.class),
+        any(Double.class), any(Double.class));
+
+    when(redisConfiguration.isCacheAvailable()).thenReturn(true);
+    catalogSync.onCacheAvailable();
+    catalogSync.onCacheAvailable();
+    verify(nearbyRestaurantCache, times(1)).invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+
+    doThrow(new JedisConnectionException("down")).when(nearbyRestaurantCache)
+        .invalidateAround(any(Double.class), any(Double.class), any(Double.class));
+    catalogSync.applyRestaurant(restaurantEntity);
+    doNothing().when(nearbyRestaurantCache)
+        .invalidateAround(any(Double.class), any(Double.class), any(Double.class));
+    catalogSync.applyRestaurant(restaurantEntity);
+    verify(nearbyRestaurantCache, times(2)).invalidate(NearbyRestaurantCache.INVALIDATE_ALL);
+    verify(nearbyRestaurantCache, times(1)).invalidateAround(any(Double.class),
+        any(Double.class), any(Double.class));
+  }
+
+  @Test
+  void changeStreamsStartAtTheClusterTimeReadBeforeTheCatalog() {
+    ReflectionTestUtils.setField(catalogSync, "mode", CatalogSync.CHANGE_STREAM_MODE);
+    BsonTimestamp refreshedAt = new BsonTimestamp(1000, 1);
+    when(mongoTemplate.executeCommand(any(Document.class)))
+        .thenReturn(new Document("ok", 1.0).append("operationTime", refreshedAt))
+        .thenReturn(new Document("ok", 1.0)
+            .append("operationTime", new BsonTimestamp(2000, 1)));
+
+    catalogSync.recordStartAtOperationTime();
+    catalogSync.recordStartAtOperationTime();
+
+    assertEquals(refreshedAt,
+        ReflectionTestUtils.getField(catalogSync, "startAtOperationTime"));
+  }
+
+  @Test
+  void outdatedLocationsAreRewrittenWhenMongoServesNearbyQueries() throws IOException {
+    ReflectionTestUtils.setField(catalogSync, "nearbySource", CatalogSync.MONGO_NEARBY_SOURCE);
+    RestaurantEntity current = listOfRestaurants().get(0);
+    catalogSync.applyRestaurant(current);
+    verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class),
+        eq(RestaurantEntity.class));
+
+    RestaurantEntity moved = listOfRestaurants().get(0);
+    moved.setLocation(new GeoJsonPoint(0, 0));
+    catalogSync.applyRestaurant(moved);
+
+    verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class),
+        eq(RestaurantEntity.class));
+    assertEquals(current.getLocation(), moved.getLocation());
+  }
+
+  // Every count, including the one up to the last _id, is the given one.
+  private void stubCollection(String collection, long count, Date lastModifiedAt) {
+    stubCollection(collection, count, "5", lastModifiedAt);
+  }
+
+  private void stubCollection(String collection, long count, String lastId,
+      Date lastModifiedAt) {
+    when(mongoTemplate.count(any(Query.class), eq(collection))).thenReturn(count);
+    when(mongoTemplate.findOne(any(Query.class), eq(Document.class), eq(collection)))
+        .thenReturn(new Document("_id", lastId).append(CatalogVersion.LAST_MODIFIED_AT,
+            lastModifiedAt));
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    return objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+  }
+
+  private List<MenuEntity> listOfMenus() throws IOException {
+    return objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_menus.json"),
+        new TypeReference<List<MenuEntity>>() {
+        });
+  }
+}
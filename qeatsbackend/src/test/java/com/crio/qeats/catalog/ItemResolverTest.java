@@ -0,0 +1,93 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.exceptions.ItemNotFoundInRestaurantMenuException;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ItemResolverTest {
+
+  private MenuRepository menuRepository;
+  private ItemResolver itemResolver;
+
+  @BeforeEach
+  void setup() {
+    menuRepository = Mockito.mock(MenuRepository.class);
+    itemResolver = new ItemResolver();
+    ReflectionTestUtils.setField(itemResolver, "menuRepository", menuRepository);
+    ReflectionTestUtils.setField(itemResolver, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(itemResolver, "maximumSize", 100L);
+    ReflectionTestUtils.setField(itemResolver, "ttlInSeconds", 60L);
+    itemResolver.init();
+
+    MenuEntity first = new MenuEntity("m11", "11",
+        Arrays.asList(item("1", "Masala Dosa", 225), item("3", "Vada", 45)), null);
+    MenuEntity second = new MenuEntity("m12", "12",
+        Arrays.asList(item("1", "Chicken Biryani", 300), item("5", "Raita", 30)), null);
+    when(menuRepository.findMenusByItemsItemIdIn(anyList()))
+        .thenReturn(Optional.of(Arrays.asList(first, second)));
+  }
+
+  @Test
+  void itemsAreResolvedWithOneQueryAndThenFromTheCache() {
+    Map<String, Item> items = itemResolver.resolveItems("11", Arrays.asList("1", "3"));
+
+    assertEquals(225, items.get("1").getPrice());
+    assertEquals(45, items.get("3").getPrice());
+    itemResolver.resolveItems("11", Arrays.asList("3", "1"));
+    verify(menuRepository, times(1)).findMenusByItemsItemIdIn(anyList());
+
+    itemResolver.invalidateAll();
+    itemResolver.resolveItems("11", Collections.singletonList("1"));
+    verify(menuRepository, times(2)).findMenusByItemsItemIdIn(anyList());
+  }
+
+  @Test
+  void itemIdsSharedByMenusResolveToTheRestaurantsOwnItem() {
+    assertEquals("Masala Dosa",
+        itemResolver.resolveItems("11", Collections.singletonList("1")).get("1").getName());
+    assertEquals("Chicken Biryani",
+        itemResolver.resolveItems("12", Collections.singletonList("1")).get("1").getName());
+  }
+
+  @Test
+  void itemsNotOnTheMenuAreReported() {
+    assertThrows(ItemNotFoundInRestaurantMenuException.class,
+        () -> itemResolver.resolveItems("11", Arrays.asList("1", "5")));
+    assertThrows(ItemNotFoundInRestaurantMenuException.class,
+        () -> itemResolver.resolveItems("11", Collections.singletonList("404")));
+
+    Map<String, Item> found = itemResolver.findItems("11", Arrays.asList("1", "5", "404"));
+    assertEquals(1, found.size());
+    assertTrue(found.containsKey("1"));
+  }
+
+  private static Item item(String itemId, String name, int price) {
+    return new Item(itemId, itemId, name, "www.google.com",
+        Collections.singletonList("Indian"), price);
+  }
+}
@@ -0,0 +1,114 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.cache.RedisAccessor;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.JedisPool;
+import redis.embedded.RedisServer;
+
+class RedisGeoRestaurantLocatorTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+  private static final int REDIS_PORT = 6392;
+
+  private RedisServer server;
+  private JedisPool jedisPool;
+  private RedisGeoRestaurantLocator redisGeoRestaurantLocator;
+  private ObjectMapper objectMapper = new ObjectMapper();
+
+  @BeforeEach
+  void setup() throws IOException {
+    server = new RedisServer(REDIS_PORT);
+    server.start();
+    jedisPool = new JedisPool("localhost", REDIS_PORT);
+    RedisConfiguration redisConfiguration = Mockito.mock(RedisConfiguration.class);
+    when(redisConfiguration.getJedisPool()).thenReturn(jedisPool);
+    when(redisConfiguration.getMaxTotal()).thenReturn(8);
+
+    RedisAccessor redisAccessor = new RedisAccessor();
+    ReflectionTestUtils.setField(redisAccessor, "redisConfiguration", redisConfiguration);
+    ReflectionTestUtils.setField(redisAccessor, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(redisAccessor, "batchSize", 100);
+    redisAccessor.init();
+    redisGeoRestaurantLocator = new RedisGeoRestaurantLocator();
+    ReflectionTestUtils.setField(redisGeoRestaurantLocator, "redisAccessor", redisAccessor);
+  }
+
+  @AfterEach
+  void teardown() throws IOException {
+    jedisPool.close();
+    server.stop();
+  }
+
+  @Test
+  void loadedRestaurantsAreFoundWithinTheRadius() throws IOException {
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    redisGeoRestaurantLocator.load(restaurants);
+
+    RestaurantEntity center = restaurants.get(0);
+    List<RestaurantEntity> candidates = redisGeoRestaurantLocator.findCandidates(
+        center.getLatitude(), center.getLongitude(), 3.0);
+
+    RestaurantEntity found = candidates.stream()
+        .filter(candidate -> candidate.getRestaurantId().equals(center.getRestaurantId()))
+        .findFirst().get();
+    assertEquals(center, found);
+    assertTrue(redisGeoRestaurantLocator.findCandidates(-center.getLatitude(),
+        -center.getLongitude(), 3.0).isEmpty());
+  }
+
+  @Test
+  void upsertMovesRestaurantsAndDropsThoseWithoutCoordinates() throws IOException {
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    redisGeoRestaurantLocator.load(restaurants);
+    RestaurantEntity moved = restaurants.get(0);
+    double latitude = moved.getLatitude();
+    double longitude = moved.getLongitude();
+
+    moved.setLatitude(-latitude);
+    moved.setLongitude(-longitude);
+    redisGeoRestaurantLocator.upsert(moved);
+    assertEquals(1, redisGeoRestaurantLocator.findCandidates(-latitude, -longitude, 3.0).size());
+    assertTrue(restaurantIds(redisGeoRestaurantLocator.findCandidates(latitude, longitude, 3.0))
+        .stream().noneMatch(moved.getRestaurantId()::equals));
+
+    moved.setLatitude(null);
+    redisGeoRestaurantLocator.upsert(moved);
+    assertTrue(redisGeoRestaurantLocator.findCandidates(-latitude, -longitude, 3.0).isEmpty());
+  }
+
+  private static List<String> restaurantIds(List<RestaurantEntity> restaurants) {
+    return restaurants.stream().map(RestaurantEntity::getRestaurantId)
+        .collect(Collectors.toList());
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    return objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+  }
+}
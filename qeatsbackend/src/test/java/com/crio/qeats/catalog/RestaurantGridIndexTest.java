@@ -0,0 +1,240 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.catalog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.crio.qeats.utils.GeoUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RestaurantGridIndexTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  private RestaurantGridIndex restaurantGridIndex;
+  private List<RestaurantEntity> restaurants;
+
+  @BeforeEach
+  void setup() throws IOException {
+    restaurantGridIndex = new RestaurantGridIndex();
+    restaurants = new ObjectMapper().readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+  }
+
+  @Test
+  void emptyUntilLoaded() {
+    assertFalse(restaurantGridIndex.isLoaded());
+    assertTrue(restaurantGridIndex.findCandidates(20.0, 30.0, 5.0).isEmpty());
+  }
+
+  @Test
+  void candidatesKeepLoadOrderAndSkipFarAwayCells() {
+    restaurantGridIndex.rebuild(restaurants);
+
+    assertEquals(ids("10", "11", "12"), ids(restaurantGridIndex.findCandidates(20.0, 30.0, 3.0)));
+    assertEquals(ids("13", "14"), ids(restaurantGridIndex.findCandidates(20.8, 30.1, 5.0)));
+  }
+
+  @Test
+  void candidatesContainEveryRestaurantWithinRadius() {
+    Random random = new Random(42);
+    List<RestaurantEntity> scattered = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      RestaurantEntity restaurantEntity = new RestaurantEntity();
+      restaurantEntity.setRestaurantId(String.valueOf(i));
+      restaurantEntity.setLatitude(12.9 + random.nextDouble() - 0.5);
+      restaurantEntity.setLongitude(77.6 + random.nextDouble() - 0.5);
+      scattered.add(restaurantEntity);
+    }
+    restaurantGridIndex.rebuild(scattered);
+
+    for (int i = 0; i < 50; i++) {
+      double latitude = 12.9 + random.nextDouble() - 0.5;
+      double longitude = 77.6 + random.nextDouble() - 0.5;
+      List<String> expected = scattered.stream()
+          .filter(r -> GeoUtils.findDistanceInKm(latitude, longitude,
+              r.getLatitude(), r.getLongitude()) < 5.0)
+          .map(RestaurantEntity::getRestaurantId)
+          .collect(Collectors.toList());
+      List<String> candidates = ids(restaurantGridIndex.findCandidates(latitude, longitude, 5.0));
+
+      assertTrue(candidates.containsAll(expected));
+      assertTrue(candidates.size() < scattered.size());
+    }
+  }
+
+  @Test
+  void upsertAndRemoveAreVisibleToLookups() {
+    restaurantGridIndex.rebuild(restaurants);
+
+    RestaurantEntity moved = restaurants.get(0);
+    moved.setLatitude(20.8);
+    moved.setLongitude(30.1);
+    restaurantGridIndex.upsert(moved);
+    assertEquals(ids("11", "12"), ids(restaurantGridIndex.findCandidates(20.0, 30.0, 3.0)));
+    assertEquals(ids("10", "13", "14"), ids(restaurantGridIndex.findCandidates(20.8, 30.1, 5.0)));
+
+    restaurantGridIndex.remove("13");
+    assertEquals(ids("10", "14"), ids(restaurantGridIndex.findCandidates(20.8, 30.1, 5.0)));
+  }
+
+  @Test
+  void patchedGridAnswersLikeARebuiltOne() {
+    Random random = new Random(11);
+    ObjectMapper objectMapper = new ObjectMapper();
+    List<RestaurantEntity> expected = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      expected.add(scatteredRestaurant(random, String.valueOf(i)));
+    }
+    restaurantGridIndex.rebuild(expected);
+
+    RestaurantGridIndex rebuilt = new RestaurantGridIndex();
+    for (int i = 0; i < 300; i++) {
+      String restaurantId = String.valueOf(random.nextInt(250));
+      int index = ids(expected).indexOf(restaurantId);
+      if (random.nextInt(4) == 0) {
+        restaurantGridIndex.remove(restaurantId);
+        if (index >= 0) {
+          expected.remove(index);
+        }
+      } else {
+        RestaurantEntity restaurantEntity = scatteredRestaurant(random, restaurantId);
+        restaurantGridIndex.upsert(restaurantEntity);
+        if (index >= 0) {
+          expected.set(index, restaurantEntity);
+        } else {
+          expected.add(restaurantEntity);
+        }
+      }
+
+      rebuilt.rebuild(expected);
+      double latitude = 12.9 + random.nextDouble() * 0.2 - 0.1;
+      double longitude = 77.6 + random.nextDouble() * 0.2 - 0.1;
+      assertEquals(objectMapper.valueToTree(rebuilt.findOpenRestaurantsCloseBy(
+          latitude, longitude, 5.0, LocalTime.NOON)),
+          objectMapper.valueToTree(restaurantGridIndex.findOpenRestaurantsCloseBy(
+              latitude, longitude, 5.0, LocalTime.NOON)));
+      assertEquals(ids(rebuilt.findCandidates(latitude, longitude, 5.0)),
+          ids(restaurantGridIndex.findCandidates(latitude, longitude, 5.0)));
+    }
+  }
+
+  @Test
+  void columnarLookupsFilterByDistanceAndOpeningHours() {
+    restaurantGridIndex.rebuild(restaurants);
+
+    List<Restaurant> open = restaurantGridIndex.findOpenRestaurantsCloseBy(20.0, 30.0, 3.0,
+        LocalTime.of(18, 1));
+    assertEquals(ids("11", "12"),
+        open.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList()));
+    assertEquals(restaurants.get(1).getName(), open.get(0).getName());
+    assertEquals(restaurants.get(1).getAttributes(), open.get(0).getAttributes());
+    assertTrue(restaurantGridIndex.findOpenRestaurantsCloseBy(20.0, 30.0, 3.0,
+        LocalTime.of(17, 59)).isEmpty());
+
+    assertEquals(ids("10", "11", "12"), ids(restaurantGridIndex.findCandidatesOpenDuring(
+        20.0, 30.0, 3.1, LocalTime.of(17, 30), LocalTime.of(18, 0, 1))));
+    assertTrue(restaurantGridIndex.findCandidatesOpenDuring(20.0, 30.0, 3.1,
+        LocalTime.of(17, 30), LocalTime.of(18, 0)).isEmpty());
+  }
+
+  @Test
+  void precomputedCellsAnswerLikeTheGrid() {
+    Random random = new Random(7);
+    List<RestaurantEntity> scattered = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      RestaurantEntity restaurantEntity = new RestaurantEntity();
+      restaurantEntity.setRestaurantId(String.valueOf(i));
+      restaurantEntity.setLatitude(12.9 + (random.nextDouble() - 0.5) / 5);
+      restaurantEntity.setLongitude(77.6 + (random.nextDouble() - 0.5) / 5);
+      restaurantEntity.setOpensAt("00:00");
+      restaurantEntity.setClosesAt("00:00");
+      scattered.add(restaurantEntity);
+    }
+    restaurantGridIndex.rebuild(scattered);
+    assertFalse(restaurantGridIndex.hasPrecomputedCells(3.0));
+
+    double[][] points = new double[300][];
+    List<List<String>> expected = new ArrayList<>();
+    for (int i = 0; i < points.length; i++) {
+      // Half of the points right next to a restaurant, so some fall on the boundary ring.
+      RestaurantEntity near = scattered.get(random.nextInt(scattered.size()));
+      points[i] = i % 2 == 0
+          ? new double[] {12.9 + (random.nextDouble() - 0.5) / 4,
+              77.6 + (random.nextDouble() - 0.5) / 4}
+          : new double[] {near.getLatitude() + (random.nextDouble() - 0.5) * 0.06,
+              near.getLongitude() + (random.nextDouble() - 0.5) * 0.06};
+      double radius = i % 3 == 0 ? 3.0 : 5.0;
+      expected.add(restaurantIds(restaurantGridIndex.findOpenRestaurantsCloseBy(points[i][0],
+          points[i][1], radius, LocalTime.NOON)));
+    }
+
+    restaurantGridIndex.precomputeCells();
+    assertTrue(restaurantGridIndex.hasPrecomputedCells(3.0));
+    assertTrue(restaurantGridIndex.hasPrecomputedCells(5.0));
+    assertFalse(restaurantGridIndex.hasPrecomputedCells(4.0));
+    for (int i = 0; i < points.length; i++) {
+      double radius = i % 3 == 0 ? 3.0 : 5.0;
+      assertEquals(expected.get(i), restaurantIds(restaurantGridIndex.findOpenRestaurantsCloseBy(
+          points[i][0], points[i][1], radius, LocalTime.NOON)));
+    }
+
+    restaurantGridIndex.remove("0");
+    assertFalse(restaurantGridIndex.hasPrecomputedCells(3.0));
+  }
+
+  private static RestaurantEntity scatteredRestaurant(Random random, String restaurantId) {
+    RestaurantEntity restaurantEntity = new RestaurantEntity();
+    restaurantEntity.setRestaurantId(restaurantId);
+    restaurantEntity.setName("Restaurant " + random.nextInt(1000));
+    restaurantEntity.setCity("City " + random.nextInt(3));
+    restaurantEntity.setLatitude(12.9 + random.nextDouble() * 0.2 - 0.1);
+    restaurantEntity.setLongitude(77.6 + random.nextDouble() * 0.2 - 0.1);
+    restaurantEntity.setOpensAt(String.format("%02d:00", random.nextInt(12)));
+    restaurantEntity.setClosesAt(String.format("%02d:00", 12 + random.nextInt(12)));
+    List<String> attributes = new ArrayList<>();
+    for (int i = random.nextInt(3); i > 0; i--) {
+      attributes.add("Attribute " + random.nextInt(5));
+    }
+    restaurantEntity.setAttributes(attributes);
+    return restaurantEntity;
+  }
+
+  private static List<String> ids(String... restaurantIds) {
+    return Arrays.asList(restaurantIds);
+  }
+
+  private static List<String> restaurantIds(List<Restaurant> restaurants) {
+    return restaurants.stream()
+        .map(Restaurant::getRestaurantId)
+        .collect(Collectors.toList());
+  }
+
+  private static List<String> ids(List<RestaurantEntity> restaurantEntities) {
+    return restaurantEntities.stream()
+        .map(RestaurantEntity::getRestaurantId)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,53 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.configs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RedisCircuitBreakerTest {
+
+  @Test
+  void opensAfterConsecutiveFailuresAndHalfOpensAfterTheOpenPeriod() {
+    RedisCircuitBreaker circuitBreaker = new RedisCircuitBreaker(3, 5000);
+
+    assertFalse(circuitBreaker.onFailure(1000));
+    circuitBreaker.onSuccess();
+    assertFalse(circuitBreaker.onFailure(1000));
+    assertFalse(circuitBreaker.onFailure(1000));
+    assertTrue(circuitBreaker.isClosed());
+    assertTrue(circuitBreaker.onFailure(1000));
+    assertEquals(RedisCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    // Late failures of calls started before opening do not extend the open period.
+    assertFalse(circuitBreaker.onFailure(3000));
+    assertFalse(circuitBreaker.tryHalfOpen(5999));
+    assertTrue(circuitBreaker.tryHalfOpen(6000));
+    assertEquals(RedisCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.isClosed());
+  }
+
+  @Test
+  void halfOpenBreakerClosesOnSuccessAndReopensOnFailure() {
+    RedisCircuitBreaker circuitBreaker = new RedisCircuitBreaker(3, 5000);
+    assertTrue(circuitBreaker.open(0));
+    assertTrue(circuitBreaker.tryHalfOpen(5000));
+
+    assertTrue(circuitBreaker.onFailure(5000));
+    assertFalse(circuitBreaker.tryHalfOpen(9999));
+    assertTrue(circuitBreaker.tryHalfOpen(10000));
+
+    circuitBreaker.onSuccess();
+    assertTrue(circuitBreaker.isClosed());
+    assertFalse(circuitBreaker.onFailure(10000));
+    assertTrue(circuitBreaker.isClosed());
+  }
+}
@@ -0,0 +1,83 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class GetRestaurantsResponseWriterTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private GetRestaurantsResponseWriter getRestaurantsResponseWriter;
+  private GetRestaurantsResponse getRestaurantsResponse;
+
+  @BeforeEach
+  void setup() throws IOException {
+    getRestaurantsResponseWriter = new GetRestaurantsResponseWriter();
+    ReflectionTestUtils.setField(getRestaurantsResponseWriter, "objectMapper", objectMapper);
+    ReflectionTestUtils.setField(getRestaurantsResponseWriter, "flushEvery", 2);
+    getRestaurantsResponseWriter.init();
+
+    List<Restaurant> restaurants = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/normal_hours_list_of_restaurants.json"),
+        new TypeReference<List<Restaurant>>() {});
+    getRestaurantsResponse = new GetRestaurantsResponse(restaurants);
+  }
+
+  @Test
+  void streamedJsonMatchesTheBufferedResponse() throws IOException {
+    assertEquals(objectMapper.valueToTree(getRestaurantsResponse),
+        objectMapper.readTree(write(getRestaurantsResponse)));
+
+    GetRestaurantsResponse partial = new GetRestaurantsResponse(new ArrayList<>(), true);
+    assertEquals(objectMapper.valueToTree(partial), objectMapper.readTree(write(partial)));
+  }
+
+  @Test
+  void restaurantsAreWrittenAsTheSourceHandsThemOut() throws IOException {
+    List<Restaurant> restaurants = getRestaurantsResponse.getRestaurants();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    int written = getRestaurantsResponseWriter.write(consumer -> {
+      consumer.accept(restaurants.get(0));
+      consumer.accept(restaurants.get(1));
+      // flush-every is 2, so both are on the stream before the next one is looked up.
+      String sent = new String(out.toByteArray(), StandardCharsets.UTF_8);
+      assertTrue(sent.contains(
+          "\"restaurantId\":\"" + restaurants.get(1).getRestaurantId() + "\""));
+      restaurants.subList(2, restaurants.size()).forEach(consumer);
+    }, null, out);
+
+    assertEquals(restaurants.size(), written);
+    assertEquals(objectMapper.valueToTree(getRestaurantsResponse),
+        objectMapper.readTree(out.toByteArray()));
+  }
+
+  private byte[] write(GetRestaurantsResponse response) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    getRestaurantsResponseWriter.write(response.getRestaurants()::forEach, response.getPartial(),
+        out);
+    return out.toByteArray();
+  }
+}
@@ -274,8 +274,13 @@ public class RestaurantControllerTest {
     assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatus());
   }
 
+  @Test
+  public void missingRestaurantIdParamResultsInBadHttpRequest() throws Exception {
+    MockHttpServletResponse response = mvc.perform(
+        get(MENU_API_URI).accept(APPLICATION_JSON_UTF8)
+    ).andReturn().getResponse();
 
-
+    assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatus());
+  }
 
 }
-
@@ -0,0 +1,108 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.controller;
+
+import static com.crio.qeats.controller.RestaurantController.RESTAURANTS_API;
+import static com.crio.qeats.controller.RestaurantController.RESTAURANT_API_ENDPOINT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.exchanges.GetRestaurantsRequest;
+import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.services.RestaurantService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+class StreamingRestaurantControllerTest {
+
+  private static final String RESTAURANT_API_URI = RESTAURANT_API_ENDPOINT + RESTAURANTS_API;
+
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private RestaurantService restaurantService;
+  private MockMvc mvc;
+
+  @BeforeEach
+  void setup() {
+    restaurantService = Mockito.mock(RestaurantService.class);
+    GetRestaurantsResponseWriter getRestaurantsResponseWriter = new GetRestaurantsResponseWriter();
+    ReflectionTestUtils.setField(getRestaurantsResponseWriter, "objectMapper", objectMapper);
+    ReflectionTestUtils.setField(getRestaurantsResponseWriter, "flushEvery", 64);
+    getRestaurantsResponseWriter.init();
+
+    RestaurantController restaurantController = new RestaurantController();
+    ReflectionTestUtils.setField(restaurantController, "restaurantService", restaurantService);
+    StreamingRestaurantController streamingRestaurantController =
+        new StreamingRestaurantController();
+    ReflectionTestUtils.setField(streamingRestaurantController, "restaurantService",
+        restaurantService);
+    ReflectionTestUtils.setField(streamingRestaurantController, "getRestaurantsResponseWriter",
+        getRestaurantsResponseWriter);
+    mvc = MockMvcBuilders.standaloneSetup(restaurantController, streamingRestaurantController)
+        .build();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void closeByRequestsAreStreamed() throws Exception {
+    Restaurant restaurant = new Restaurant();
+    restaurant.setRestaurantId("10");
+    restaurant.setName("Café Coffee Day");
+    doAnswer(invocation -> {
+      ((Consumer<Restaurant>) invocation.getArgument(2)).accept(restaurant);
+      return null;
+    }).when(restaurantService).forEachRestaurantCloseBy(any(GetRestaurantsRequest.class),
+        any(LocalTime.class), any(Consumer.class));
+
+    MvcResult result = mvc.perform(get(RESTAURANT_API_URI)
+        .param("latitude", "20").param("longitude", "30")).andReturn();
+    assertTrue(result.getRequest().isAsyncStarted());
+
+    String body = mvc.perform(asyncDispatch(result)).andReturn().getResponse()
+        .getContentAsString();
+    GetRestaurantsResponse streamed = objectMapper.readValue(body, GetRestaurantsResponse.class);
+    assertEquals("Cafe Coffee Day", streamed.getRestaurants().get(0).getName());
+  }
+
+  @Test
+  void searchesAndInvalidRequestsStaySynchronous() throws Exception {
+    when(restaurantService.findRestaurantsBySearchQuery(any(GetRestaurantsRequest.class),
+        any(LocalTime.class))).thenReturn(new GetRestaurantsResponse(new ArrayList<>()));
+
+    MvcResult search = mvc.perform(get(RESTAURANT_API_URI)
+        .param("latitude", "20").param("longitude", "30").param("searchFor", "tamil"))
+        .andReturn();
+    assertFalse(search.getRequest().isAsyncStarted());
+    assertEquals(HttpStatus.OK.value(), search.getResponse().getStatus());
+    assertEquals(objectMapper.valueToTree(new GetRestaurantsResponse(Collections.emptyList())),
+        objectMapper.readTree(search.getResponse().getContentAsString()));
+
+    MvcResult invalid = mvc.perform(get(RESTAURANT_API_URI)
+        .param("latitude", "91").param("longitude", "30")).andReturn();
+    assertFalse(invalid.getRequest().isAsyncStarted());
+    assertEquals(HttpStatus.BAD_REQUEST.value(), invalid.getResponse().getStatus());
+  }
+
+}
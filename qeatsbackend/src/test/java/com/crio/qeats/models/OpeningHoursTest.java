@@ -0,0 +1,79 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalTime;
+import org.junit.jupiter.api.Test;
+
+class OpeningHoursTest {
+
+  @Test
+  void openStrictlyBetweenOpeningAndClosingTime() {
+    OpeningHours openingHours = OpeningHours.parse("18:00", "23:00");
+
+    assertFalse(openingHours.isOpenAt(LocalTime.of(17, 59)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(18, 0)));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(18, 0, 1)));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(22, 59)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(23, 0)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(23, 1)));
+  }
+
+  @Test
+  void overnightSlotIsOpenAcrossMidnight() {
+    OpeningHours openingHours = OpeningHours.parse("18:00", "02:00");
+
+    assertTrue(openingHours.isOpenAt(LocalTime.of(23, 30)));
+    assertTrue(openingHours.isOpenAt(LocalTime.MIDNIGHT));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(1, 59)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(2, 0)));
+    assertFalse(openingHours.isOpenAt(LocalTime.NOON));
+
+    assertTrue(openingHours.isOpenDuring(LocalTime.of(1, 30), LocalTime.of(2, 0)));
+    assertTrue(openingHours.isOpenDuring(LocalTime.of(23, 30), LocalTime.MIDNIGHT));
+    assertFalse(openingHours.isOpenDuring(LocalTime.of(2, 0), LocalTime.of(2, 30)));
+  }
+
+  @Test
+  void multipleSlotsPerDay() {
+    OpeningHours openingHours = OpeningHours.parse("11:00, 18:00", "15:00, 24:00");
+
+    assertTrue(openingHours.isOpenAt(LocalTime.of(12, 0)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(16, 0)));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(23, 59)));
+    assertFalse(openingHours.isOpenDuring(LocalTime.of(15, 0), LocalTime.of(15, 30)));
+    assertTrue(openingHours.isOpenDuring(LocalTime.of(17, 30), LocalTime.of(18, 0, 1)));
+  }
+
+  @Test
+  void missingOrUnpairedHours() {
+    assertFalse(OpeningHours.parse(null, "23:00").isOpenAt(LocalTime.NOON));
+    assertTrue(OpeningHours.parse("00:00", "00:00").isOpenAt(LocalTime.NOON));
+    assertThrows(IllegalArgumentException.class,
+        () -> OpeningHours.parse("11:00,18:00", "23:00"));
+  }
+
+  @Test
+  void entityReparsesAfterHoursChange() {
+    RestaurantEntity restaurantEntity = new RestaurantEntity();
+    restaurantEntity.setOpensAt("18:00");
+    restaurantEntity.setClosesAt("23:00");
+    OpeningHours openingHours = restaurantEntity.getOpeningHours();
+    assertEquals(openingHours, restaurantEntity.getOpeningHours());
+
+    restaurantEntity.setClosesAt("02:00");
+    assertNotEquals(openingHours, restaurantEntity.getOpeningHours());
+    assertTrue(restaurantEntity.getOpeningHours().isOpenAt(LocalTime.of(1, 0)));
+  }
+}
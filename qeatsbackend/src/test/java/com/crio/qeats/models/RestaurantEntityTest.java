@@ -0,0 +1,30 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+
+class RestaurantEntityTest {
+
+  @Test
+  void locationFollowsTheCoordinates() {
+    RestaurantEntity restaurantEntity = new RestaurantEntity();
+    restaurantEntity.setLatitude(12.9);
+    assertNull(restaurantEntity.getLocation());
+
+    restaurantEntity.setLongitude(77.6);
+    assertEquals(new GeoJsonPoint(77.6, 12.9), restaurantEntity.getLocation());
+
+    restaurantEntity.setLatitude(13.0);
+    assertEquals(new GeoJsonPoint(77.6, 13.0), restaurantEntity.getLocation());
+  }
+}
@@ -0,0 +1,106 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.crio.qeats.dto.OrderItem;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OrderEventBatcherTest {
+
+  private OrderEventHandler orderEventHandler;
+  private MeterRegistry meterRegistry;
+  private OrderEventBatcher orderEventBatcher;
+
+  @BeforeEach
+  void setup() {
+    orderEventHandler = Mockito.mock(OrderEventHandler.class);
+    meterRegistry = new SimpleMeterRegistry();
+    orderEventBatcher = new OrderEventBatcher();
+    ReflectionTestUtils.setField(orderEventBatcher, "orderEventHandler", orderEventHandler);
+    ReflectionTestUtils.setField(orderEventBatcher, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(orderEventBatcher, "batchSize", 3);
+    // Long enough for every event of a test to be queued before the first batch is closed.
+    ReflectionTestUtils.setField(orderEventBatcher, "batchWaitInMillis", 500L);
+    ReflectionTestUtils.setField(orderEventBatcher, "queueCapacity", 10);
+    ReflectionTestUtils.setField(orderEventBatcher, "maxAttempts", 2);
+  }
+
+  @AfterEach
+  void teardown() throws InterruptedException {
+    orderEventBatcher.shutdown();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  void eventsPublishedInTheJvmAreHandledInBatches() {
+    orderEventBatcher.init();
+    for (int i = 0; i < 4; i++) {
+      orderEventBatcher.offer(event("order" + i));
+    }
+
+    ArgumentCaptor<List<OrderPlacedEvent>> batches = ArgumentCaptor.forClass(List.class);
+    verify(orderEventHandler, timeout(5000).times(2)).handle(batches.capture());
+    assertEquals(3, batches.getAllValues().get(0).size());
+    assertEquals("order3", batches.getAllValues().get(1).get(0).getOrderId());
+    assertEquals(4.0, meterRegistry.get("orders.events").tag("result", "handled")
+        .counter().count());
+  }
+
+  @Test
+  void brokerDeliveriesAreAcknowledgedPerChannelOnceTheirBatchIsHandled() throws Exception {
+    Channel first = Mockito.mock(Channel.class);
+    Channel second = Mockito.mock(Channel.class);
+    orderEventBatcher.init();
+    orderEventBatcher.put(event("order1"), first, 7);
+    orderEventBatcher.put(event("order2"), second, 2);
+    orderEventBatcher.put(event("order3"), first, 8);
+
+    verify(first, timeout(5000)).basicAck(8, true);
+    verify(second, timeout(5000)).basicAck(2, true);
+    verify(orderEventHandler, times(1)).handle(anyList());
+  }
+
+  @Test
+  void batchesThatKeepFailingAreRejectedWithoutRequeueing() throws Exception {
+    doThrow(new IllegalStateException("Mongo is down")).when(orderEventHandler).handle(anyList());
+    Channel channel = Mockito.mock(Channel.class);
+    orderEventBatcher.init();
+    orderEventBatcher.put(event("order1"), channel, 1);
+
+    verify(channel, timeout(5000)).basicNack(1, true, false);
+    verify(orderEventHandler, times(2)).handle(anyList());
+    verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    assertEquals(1.0, meterRegistry.get("orders.events").tag("result", "failed")
+        .counter().count());
+  }
+
+  private static OrderPlacedEvent event(String orderId) {
+    return new OrderPlacedEvent(orderId, "user1", "11",
+        Collections.singletonList(new OrderItem("1", 2)), 0);
+  }
+}
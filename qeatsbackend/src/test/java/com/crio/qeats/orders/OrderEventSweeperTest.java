@@ -0,0 +1,111 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.orders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.dto.OrderItem;
+import com.crio.qeats.models.OrderEntity;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OrderEventSweeperTest {
+
+  private MongoTemplate mongoTemplate;
+  private OrderEventPublisher orderEventPublisher;
+  private MeterRegistry meterRegistry;
+  private OrderEventSweeper orderEventSweeper;
+
+  @BeforeEach
+  void setup() {
+    mongoTemplate = Mockito.mock(MongoTemplate.class);
+    orderEventPublisher = Mockito.mock(OrderEventPublisher.class);
+    meterRegistry = new SimpleMeterRegistry();
+    orderEventSweeper = new OrderEventSweeper();
+    ReflectionTestUtils.setField(orderEventSweeper, "mongoTemplate", mongoTemplate);
+    ReflectionTestUtils.setField(orderEventSweeper, "orderEventPublisher", orderEventPublisher);
+    ReflectionTestUtils.setField(orderEventSweeper, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(orderEventSweeper, "republishAfterInSeconds", 60L);
+    ReflectionTestUtils.setField(orderEventSweeper, "sweepIntervalInMillis", 0L);
+    ReflectionTestUtils.setField(orderEventSweeper, "sweepBatchSize", 2);
+    orderEventSweeper.init();
+  }
+
+  @AfterEach
+  void teardown() {
+    orderEventSweeper.shutdown();
+  }
+
+  @Test
+  void ordersLeftPlacedAreClaimedAndGetTheirEventsPublishedAgain() {
+    OrderEntity first = new OrderEntity("order-1", "user-1", "11",
+        Collections.singletonList(new OrderItem("1", 2)), 240, OrderEntity.PLACED, 1000, null);
+    OrderEntity second = new OrderEntity("order-2", "user-2", "12",
+        Collections.singletonList(new OrderItem("3", 1)), 80, OrderEntity.PLACED, 2000, null);
+    when(mongoTemplate.findAndModify(any(Query.class), any(Update.class),
+        eq(OrderEntity.class))).thenReturn(first, second, null);
+    long startedAt = System.currentTimeMillis();
+
+    assertEquals(2, orderEventSweeper.sweep());
+
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> claim = ArgumentCaptor.forClass(Update.class);
+    verify(mongoTemplate, times(2)).findAndModify(query.capture(), claim.capture(),
+        eq(OrderEntity.class));
+    Document criteria = query.getValue().getQueryObject();
+    assertEquals(OrderEntity.PLACED, criteria.get("status"));
+    long placedBefore = ((Document) criteria.get("placedAt")).getLong("$lt");
+    assertTrue(placedBefore <= startedAt - 60000);
+    // Orders claimed by another instance within republish-after-seconds are skipped.
+    assertEquals(Arrays.asList(new Document("republishedAt", new Document("$exists", false)),
+        new Document("republishedAt", new Document("$lt", placedBefore))), criteria.get("$or"));
+    long claimedAt = claim.getValue().getUpdateObject().get("$set", Document.class)
+        .getLong("republishedAt");
+    assertTrue(claimedAt >= startedAt);
+
+    ArgumentCaptor<OrderPlacedEvent> events = ArgumentCaptor.forClass(OrderPlacedEvent.class);
+    verify(orderEventPublisher, times(2)).publish(events.capture());
+    assertEquals(new OrderPlacedEvent("order-1", "user-1", "11",
+        Collections.singletonList(new OrderItem("1", 2)), 1000), events.getAllValues().get(0));
+    assertEquals("order-2", events.getAllValues().get(1).getOrderId());
+    assertEquals(2.0, meterRegistry.get("orders.events").tag("result", "republished")
+        .counter().count());
+  }
+
+  @Test
+  void aSweepClaimsAtMostOneBatch() {
+    OrderEntity placed = new OrderEntity("order-1", "user-1", "11",
+        Collections.singletonList(new OrderItem("1", 2)), 240, OrderEntity.PLACED, 1000, null);
+    when(mongoTemplate.findAndModify(any(Query.class), any(Update.class),
+        eq(OrderEntity.class))).thenReturn(placed);
+
+    assertEquals(2, orderEventSweeper.sweep());
+
+    verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(Update.class),
+        eq(OrderEntity.class));
+  }
+
+}
@@ -22,7 +22,7 @@ public class EmbededRedis {
   }
 
   @PreDestroy
-  public void stopRedis() {
+  public void stopRedis() throws IOException {
     redisServer.stop();
   }
 }
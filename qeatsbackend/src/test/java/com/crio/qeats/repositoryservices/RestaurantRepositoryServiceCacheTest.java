@@ -8,6 +8,7 @@ import static org.mockito.Mockito.when;
 
 import ch.hsr.geohash.GeoHash;
 import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.cache.NearbyRestaurantCache;
 import com.crio.qeats.configs.RedisConfiguration;
 import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.models.RestaurantEntity;
@@ -67,7 +68,7 @@ class RestaurantRepositoryServiceCacheTest {
   }
 
   @AfterEach
-  void teardown() {
+  void teardown() throws IOException {
     redisConfiguration.destroyCache();
     server.stop();
   }
@@ -90,7 +91,7 @@ class RestaurantRepositoryServiceCacheTest {
     GeoHash geoHash = GeoHash.withCharacterPrecision(20.0, 30.0, 7);
 
     verify(mockRestaurantRepository, times(1)).findAll();
-    assertNotNull(jedis.get(geoHash.toBase32()));
+    assertNotNull(jedis.get(NearbyRestaurantCache.keyOf(geoHash, 3.0, LocalTime.of(18, 1))));
     assertEquals(2, allRestaurantsCloseBy.size());
     assertEquals("11", allRestaurantsCloseBy.get(0).getRestaurantId());
     assertEquals("12", allRestaurantsCloseBy.get(1).getRestaurantId());
@@ -18,6 +18,7 @@ import static org.mockito.Mockito.when;
 import com.crio.qeats.QEatsApplication;
 import com.crio.qeats.configs.RedisConfiguration;
 import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.MenuEntity;
 import com.crio.qeats.models.RestaurantEntity;
 import com.crio.qeats.repositories.RestaurantRepository;
 import com.crio.qeats.utils.FixtureHelpers;
@@ -88,12 +89,16 @@ public class RestaurantRepositoryServiceTest {
     for (RestaurantEntity restaurantEntity : allRestaurants) {
       mongoTemplate.save(restaurantEntity, "restaurants");
     }
+    for (MenuEntity menuEntity : listOfMenus()) {
+      mongoTemplate.save(menuEntity, "menus");
+    }
     when(restaurantRepository.findAll()).thenReturn(allRestaurants);
   }
 
   @AfterEach
-  void teardown() {
+  void teardown() throws IOException {
     mongoTemplate.dropCollection("restaurants");
+    mongoTemplate.dropCollection("menus");
     redisConfiguration.destroyCache();
     server.stop();
   }
@@ -189,7 +194,29 @@ public class RestaurantRepositoryServiceTest {
     assertEquals("A2B Adyar Ananda Bhavan", foundRestaurantsList.get(1).getName());
   }
 
+  @Test
+  void foundRestaurantsByItemNameAreCloseByWithExactMatchesFirst() {
+    List<Restaurant> exactMatches = restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "Fish Briyani", LocalTime.of(18, 1), 3.0);
+    assertEquals(1, exactMatches.size());
+    assertEquals("12", exactMatches.get(0).getRestaurantId());
+
+    // Restaurant 13 also serves a briyani, but is not within the serving radius.
+    List<Restaurant> partialMatches = restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "Briyani", LocalTime.of(18, 1), 3.0);
+    assertEquals(2, partialMatches.size());
+    assertEquals("11", partialMatches.get(0).getRestaurantId());
+    assertEquals("12", partialMatches.get(1).getRestaurantId());
+  }
 
+  @Test
+  void foundRestaurantsByItemAttributesAreCloseBy() {
+    List<Restaurant> foundRestaurantsList = restaurantRepositoryService
+        .findRestaurantsByItemAttributes(20.0, 30.0, "Mughal", LocalTime.of(18, 1), 3.0);
+    assertEquals(2, foundRestaurantsList.size());
+    assertEquals("11", foundRestaurantsList.get(0).getRestaurantId());
+    assertEquals("12", foundRestaurantsList.get(1).getRestaurantId());
+  }
 
   void searchedAttributesIsSubsetOfRetrievedRestaurantAttributes() {
   }
@@ -204,4 +231,12 @@ public class RestaurantRepositoryServiceTest {
     return objectMapper.readValue(fixture, new TypeReference<List<RestaurantEntity>>() {
     });
   }
+
+  private List<MenuEntity> listOfMenus() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_menus.json");
+
+    return objectMapper.readValue(fixture, new TypeReference<List<MenuEntity>>() {
+    });
+  }
 }
@@ -0,0 +1,119 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+class RestaurantSearchEngineTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Mock
+  private MenuRepository menuRepository;
+  @Mock
+  private RestaurantSearchIndex restaurantSearchIndex;
+  @InjectMocks
+  private RestaurantSearchEngine restaurantSearchEngine;
+
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private List<Restaurant> restaurants;
+
+  @BeforeEach
+  void setup() throws IOException {
+    MockitoAnnotations.initMocks(this);
+
+    restaurants = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<Restaurant>>() {
+        });
+    List<MenuEntity> menus = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_menus.json"),
+        new TypeReference<List<MenuEntity>>() {
+        });
+    when(menuRepository.findMenusByRestaurantIdIn(any())).thenAnswer(invocation -> {
+      Collection<String> restaurantIds = invocation.getArgument(0);
+      return menus.stream()
+          .filter(menu -> restaurantIds.contains(menu.getRestaurantId()))
+          .collect(Collectors.toList());
+    });
+  }
+
+  @Test
+  void exactNameMatchesComeBeforePartialOnesWithoutReadingMenus() {
+    List<Restaurant> found = restaurantSearchEngine.search(restaurants, "a2b");
+
+    assertEquals(Arrays.asList("10", "11", "12", "13", "14"), ids(found));
+    verifyZeroInteractions(menuRepository);
+  }
+
+  @Test
+  void restaurantMatchesComeBeforeItemMatches() {
+    restaurants.get(3).setName("Briyani House");
+
+    List<Restaurant> found = restaurantSearchEngine.search(restaurants, "Briyani");
+
+    assertEquals(Arrays.asList("13", "11", "12"), ids(found));
+    verify(menuRepository, times(1)).findMenusByRestaurantIdIn(any());
+  }
+
+  @Test
+  void itemNamesAndItemAttributesMatchIgnoringCase() {
+    assertEquals(Arrays.asList("12"),
+        ids(restaurantSearchEngine.search(restaurants, "fish briyani")));
+    assertEquals(Arrays.asList("11", "12", "13"),
+        ids(restaurantSearchEngine.search(restaurants, "MUGHAL")));
+  }
+
+  @Test
+  void onlyRequestedCategoriesCount() {
+    restaurants.get(3).setName("Briyani House");
+
+    assertEquals(Arrays.asList("11", "12", "13"), ids(restaurantSearchEngine.search(
+        restaurants, "briyani", EnumSet.of(SearchCategory.ITEM_NAME))));
+    assertEquals(Arrays.asList("13"), ids(restaurantSearchEngine.search(
+        restaurants, "briyani", EnumSet.of(SearchCategory.RESTAURANT_NAME))));
+  }
+
+  @Test
+  void everyRestaurantIsReturnedOnce() {
+    List<Restaurant> candidates = new ArrayList<>(restaurants);
+    candidates.addAll(restaurants);
+
+    assertEquals(5, restaurantSearchEngine.search(candidates, "Tamil").size());
+    assertTrue(restaurantSearchEngine.search(candidates, "  ").isEmpty());
+  }
+
+  private static List<String> ids(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList());
+  }
+}
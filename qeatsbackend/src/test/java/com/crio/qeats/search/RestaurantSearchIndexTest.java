@@ -0,0 +1,112 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RestaurantSearchIndexTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+  private static final List<String> ALL = Arrays.asList("10", "11", "12", "13", "14");
+  private static final Set<SearchCategory> ALL_CATEGORIES = EnumSet.allOf(SearchCategory.class);
+
+  private RestaurantSearchIndex restaurantSearchIndex;
+  private List<RestaurantEntity> restaurants;
+  private List<MenuEntity> menus;
+
+  @BeforeEach
+  void setup() throws IOException {
+    ObjectMapper objectMapper = new ObjectMapper();
+    restaurants = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+    menus = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_menus.json"),
+        new TypeReference<List<MenuEntity>>() {
+        });
+    restaurantSearchIndex = new RestaurantSearchIndex();
+  }
+
+  @Test
+  void nothingIsRankedUntilBuilt() {
+    assertFalse(restaurantSearchIndex.isLoaded());
+    assertTrue(restaurantSearchIndex.rank(ALL, "a2b", ALL_CATEGORIES).isEmpty());
+  }
+
+  @Test
+  void ranksFollowTheSearchOrder() {
+    restaurants.get(4).setName("Briyani Bhavan");
+    restaurantSearchIndex.rebuild(restaurants, menus);
+
+    Map<String, Integer> expected = new HashMap<>();
+    expected.put("10", RestaurantSearchEngine.NO_MATCH);
+    expected.put("11", RestaurantSearchEngine.ITEM_NAME_PARTIAL);
+    expected.put("12", RestaurantSearchEngine.ITEM_NAME_PARTIAL);
+    expected.put("13", RestaurantSearchEngine.ITEM_NAME_PARTIAL);
+    expected.put("14", RestaurantSearchEngine.NAME_PARTIAL);
+    assertEquals(expected, restaurantSearchIndex.rank(ALL, "briyani", ALL_CATEGORIES));
+
+    Map<String, Integer> ranks = restaurantSearchIndex.rank(ALL, "fish briyani", ALL_CATEGORIES);
+    assertEquals(RestaurantSearchEngine.ITEM_NAME_EXACT, (int) ranks.get("12"));
+    assertEquals(RestaurantSearchEngine.NO_MATCH, (int) ranks.get("11"));
+
+    ranks = restaurantSearchIndex.rank(ALL, "a2b", ALL_CATEGORIES);
+    assertEquals(RestaurantSearchEngine.NAME_EXACT, (int) ranks.get("10"));
+    assertEquals(RestaurantSearchEngine.NO_MATCH, (int) ranks.get("14"));
+
+    ranks = restaurantSearchIndex.rank(ALL, "ug", ALL_CATEGORIES);
+    assertEquals(RestaurantSearchEngine.ITEM_ATTRIBUTE, (int) ranks.get("11"));
+    assertEquals(RestaurantSearchEngine.NO_MATCH, (int) ranks.get("10"));
+
+    assertEquals(RestaurantSearchEngine.ATTRIBUTE,
+        (int) restaurantSearchIndex.rank(ALL, "south", ALL_CATEGORIES).get("13"));
+  }
+
+  @Test
+  void updatesAreVisibleToLookups() {
+    restaurantSearchIndex.rebuild(restaurants, menus);
+
+    Item dosa = new Item(null, "2", "Masala Dosa", null, Collections.singletonList("Veg"), 80);
+    restaurantSearchIndex.upsertMenu(
+        new MenuEntity(null, "10", Collections.singletonList(dosa), null));
+    restaurantSearchIndex.upsertMenu(new MenuEntity(null, "11", Collections.emptyList(), null));
+    RestaurantEntity renamed = restaurants.get(2);
+    renamed.setName("Dosa Corner");
+    restaurantSearchIndex.upsertRestaurant(renamed);
+    restaurantSearchIndex.removeRestaurant("13");
+
+    Map<String, Integer> ranks = restaurantSearchIndex.rank(ALL, "dosa", ALL_CATEGORIES);
+    assertEquals(RestaurantSearchEngine.ITEM_NAME_PARTIAL, (int) ranks.get("10"));
+    assertEquals(RestaurantSearchEngine.NAME_PARTIAL, (int) ranks.get("12"));
+    assertFalse(ranks.containsKey("13"));
+
+    ranks = restaurantSearchIndex.rank(ALL, "briyani", ALL_CATEGORIES);
+    assertEquals(RestaurantSearchEngine.NO_MATCH, (int) ranks.get("11"));
+    assertEquals(RestaurantSearchEngine.ITEM_NAME_PARTIAL, (int) ranks.get("12"));
+  }
+}
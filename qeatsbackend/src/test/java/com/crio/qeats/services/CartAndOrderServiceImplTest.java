@@ -0,0 +1,122 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.cart.RedisCartStore;
+import com.crio.qeats.catalog.ItemResolver;
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Order;
+import com.crio.qeats.dto.OrderItem;
+import com.crio.qeats.exceptions.EmptyCartException;
+import com.crio.qeats.exchanges.PostOrderRequest;
+import com.crio.qeats.models.OrderEntity;
+import com.crio.qeats.orders.OrderEventPublisher;
+import com.crio.qeats.orders.OrderPlacedEvent;
+import com.crio.qeats.repositories.OrderRepository;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+class CartAndOrderServiceImplTest {
+
+  @Mock
+  private RedisCartStore redisCartStore;
+  @Mock
+  private ItemResolver itemResolver;
+  @Mock
+  private OrderRepository orderRepository;
+  @Mock
+  private OrderEventPublisher orderEventPublisher;
+  @InjectMocks
+  private CartAndOrderServiceImpl cartAndOrderService;
+
+  @BeforeEach
+  void setup() {
+    MockitoAnnotations.initMocks(this);
+    Map<String, Item> items = new HashMap<>();
+    items.put("1", new Item("1", "1", "Masala Dosa", "www.google.com",
+        Collections.singletonList("South Indian"), 225));
+    items.put("3", new Item("3", "3", "Vada", "www.google.com",
+        Collections.singletonList("South Indian"), 45));
+    when(itemResolver.resolveItems(eq("11"), anyCollection())).thenReturn(items);
+    when(orderRepository.save(any(OrderEntity.class))).thenAnswer(invocation -> {
+      OrderEntity orderEntity = invocation.getArgument(0);
+      orderEntity.setId("order1");
+      return orderEntity;
+    });
+  }
+
+  @Test
+  void postOrderSavesAPlacedOrderAndPublishesItsEvent() {
+    PostOrderRequest postOrderRequest = new PostOrderRequest("user1", "11",
+        Arrays.asList(new OrderItem("1", 2), new OrderItem("3", 1)));
+
+    Order order = cartAndOrderService.postOrder(postOrderRequest);
+
+    assertEquals("order1", order.getId());
+    assertEquals(OrderEntity.PLACED, order.getStatus());
+    assertEquals(2, order.getItems().size());
+    assertEquals(495.0, order.getTotal());
+    ArgumentCaptor<OrderPlacedEvent> event = ArgumentCaptor.forClass(OrderPlacedEvent.class);
+    verify(orderEventPublisher).publish(event.capture());
+    assertEquals("order1", event.getValue().getOrderId());
+    assertEquals("11", event.getValue().getRestaurantId());
+    assertEquals(order.getPlacedAt(), event.getValue().getPlacedAt());
+    verify(redisCartStore, never()).clear(any());
+  }
+
+  @Test
+  void postOrderWithoutItemsOrdersTheCartItTakes() {
+    Map<String, Integer> quantities = new HashMap<>();
+    quantities.put("3", 4);
+    when(redisCartStore.take("user1")).thenReturn(new RedisCartStore.StoredCart("11", quantities));
+
+    Order order = cartAndOrderService.postOrder(new PostOrderRequest("user1", null, null));
+
+    assertEquals("11", order.getRestaurantId());
+    assertEquals(Arrays.asList(new OrderItem("3", 4)), order.getItems());
+    assertEquals(180.0, order.getTotal());
+    verify(redisCartStore, never()).restore(any(), any());
+
+    when(redisCartStore.take("user2"))
+        .thenReturn(new RedisCartStore.StoredCart(null, new HashMap<>()));
+    assertThrows(EmptyCartException.class,
+        () -> cartAndOrderService.postOrder(new PostOrderRequest("user2", null, null)));
+  }
+
+  @Test
+  void theTakenCartIsRestoredWhenTheOrderIsNotSaved() {
+    RedisCartStore.StoredCart storedCart =
+        new RedisCartStore.StoredCart("11", Collections.singletonMap("1", 2));
+    when(redisCartStore.take("user1")).thenReturn(storedCart);
+    when(orderRepository.save(any(OrderEntity.class)))
+        .thenThrow(new IllegalStateException("Mongo is down"));
+
+    assertThrows(IllegalStateException.class,
+        () -> cartAndOrderService.postOrder(new PostOrderRequest("user1", null, null)));
+
+    verify(redisCartStore).restore("user1", storedCart);
+    verify(orderEventPublisher, never()).publish(any());
+  }
+}
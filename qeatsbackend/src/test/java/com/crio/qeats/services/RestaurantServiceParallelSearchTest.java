@@ -0,0 +1,128 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.exchanges.GetRestaurantsRequest;
+import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.repositoryservices.RestaurantRepositoryService;
+import com.crio.qeats.search.RestaurantSearchEngine;
+import com.crio.qeats.search.SearchCategory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RestaurantServiceParallelSearchTest {
+
+  @Mock
+  private RestaurantRepositoryService restaurantRepositoryService;
+  @Mock
+  private RestaurantSearchEngine restaurantSearchEngine;
+  @InjectMocks
+  private RestaurantServiceImpl restaurantService;
+
+  private ExecutorService searchExecutor = Executors.newFixedThreadPool(4);
+
+  @BeforeEach
+  void setup() {
+    MockitoAnnotations.initMocks(this);
+    ReflectionTestUtils.setField(restaurantService, "searchExecutor", searchExecutor);
+    ReflectionTestUtils.setField(restaurantService, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(restaurantService, "searchMode",
+        RestaurantServiceImpl.PARALLEL_SEARCH_MODE);
+    ReflectionTestUtils.setField(restaurantService, "searchDeadlineInMillis", 500L);
+
+    when(restaurantRepositoryService.findAllRestaurantsCloseBy(any(), any(), any(), any()))
+        .thenReturn(restaurants("11", "12", "13", "14"));
+    stubCategory(SearchCategory.RESTAURANT_NAME, "12");
+    stubCategory(SearchCategory.RESTAURANT_ATTRIBUTES, "11", "12");
+    stubCategory(SearchCategory.ITEM_NAME, "13", "11");
+    stubCategory(SearchCategory.ITEM_ATTRIBUTES, "14");
+  }
+
+  @AfterEach
+  void teardown() {
+    searchExecutor.shutdownNow();
+  }
+
+  @Test
+  void categoriesAreMergedInPriorityOrder() {
+    GetRestaurantsResponse response = search();
+
+    assertEquals(Arrays.asList("12", "11", "13", "14"), ids(response));
+    assertNull(response.getPartial());
+    verify(restaurantRepositoryService, times(1))
+        .findAllRestaurantsCloseBy(any(), any(), any(), any());
+  }
+
+  @Test
+  void categoriesMissingTheDeadlineMakeThePartialResponse() {
+    when(restaurantSearchEngine.search(anyList(), anyString(),
+        eq(EnumSet.of(SearchCategory.ITEM_NAME)))).thenAnswer(invocation -> {
+          Thread.sleep(5000);
+          return restaurants("13");
+        });
+
+    long start = System.currentTimeMillis();
+    GetRestaurantsResponse response = search();
+
+    assertTrue(System.currentTimeMillis() - start < 2000);
+    assertEquals(Arrays.asList("12", "11", "14"), ids(response));
+    assertTrue(response.getPartial());
+  }
+
+  private GetRestaurantsResponse search() {
+    GetRestaurantsRequest request = new GetRestaurantsRequest(20.0, 30.0);
+    request.setSearchFor("A2B");
+    return restaurantService.findRestaurantsBySearchQuery(request, LocalTime.of(18, 0));
+  }
+
+  private void stubCategory(SearchCategory category, String... restaurantIds) {
+    when(restaurantSearchEngine.search(anyList(), anyString(), eq(EnumSet.of(category))))
+        .thenReturn(restaurants(restaurantIds));
+  }
+
+  private static List<Restaurant> restaurants(String... restaurantIds) {
+    return Arrays.stream(restaurantIds).map(restaurantId -> {
+      Restaurant restaurant = new Restaurant();
+      restaurant.setRestaurantId(restaurantId);
+      restaurant.setAttributes(Collections.emptyList());
+      return restaurant;
+    }).collect(Collectors.toList());
+  }
+
+  private static List<String> ids(GetRestaurantsResponse response) {
+    return response.getRestaurants().stream()
+        .map(Restaurant::getRestaurantId)
+        .collect(Collectors.toList());
+  }
+}
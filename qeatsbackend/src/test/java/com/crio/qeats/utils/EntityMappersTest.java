@@ -0,0 +1,60 @@
+
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.ItemEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+class EntityMappersTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void restaurantsMapLikeModelMapper() throws IOException {
+    List<RestaurantEntity> restaurantEntities = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+        new TypeReference<List<RestaurantEntity>>() {
+        });
+
+    List<Restaurant> restaurants = EntityMappers.toRestaurants(restaurantEntities);
+
+    assertEquals(restaurantEntities.size(), restaurants.size());
+    for (int i = 0; i < restaurants.size(); i++) {
+      assertEquals(
+          objectMapper.writeValueAsString(
+              new ModelMapper().map(restaurantEntities.get(i), Restaurant.class)),
+          objectMapper.writeValueAsString(restaurants.get(i)));
+      assertNotSame(restaurantEntities.get(i).getAttributes(),
+          restaurants.get(i).getAttributes());
+    }
+  }
+
+  @Test
+  void itemsMapLikeModelMapper() throws IOException {
+    ItemEntity itemEntity = objectMapper.readValue(
+        FixtureHelpers.fixture(FIXTURES + "/item_dosai.json"), ItemEntity.class);
+
+    Item item = EntityMappers.toItem(itemEntity);
+
+    assertEquals(new ModelMapper().map(itemEntity, Item.class), item);
+    assertEquals(75, item.getPrice());
+  }
+}
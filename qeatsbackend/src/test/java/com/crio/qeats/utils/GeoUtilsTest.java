@@ -11,6 +11,9 @@ package com.crio.qeats.utils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 class GeoUtilsTest {
@@ -29,4 +32,57 @@ class GeoUtilsTest {
     assertEquals(3.04, distanceBetweenA2bHsrAndA2bBtm, 0.1);
   }
 
+  @Test
+  public void batchMatchesSingleDistanceAroundTheGlobe() {
+    Random random = new Random(42);
+    double[][] sources = {{20.0, 30.0}, {12.9, 77.6}, {0.0, 179.99}, {-33.9, -179.95},
+        {89.99, 10.0}, {-89.95, -120.0}};
+    double[] radii = {0.5, 3.0, 5.0, 50.0, 20000.0, 21000.0};
+    int count = 10000;
+    double[] latitudes = new double[count];
+    double[] longitudes = new double[count];
+    int[] matches = new int[count];
+
+    for (double[] source : sources) {
+      for (int i = 0; i < count; i++) {
+        // Mostly within a few degrees of the source, so every radius has matches and misses.
+        double spread = i % 10 == 0 ? 180 : 0.2;
+        latitudes[i] = Math.max(-90, Math.min(90,
+            source[0] + (random.nextDouble() - 0.5) * spread));
+        longitudes[i] = source[1] + (random.nextDouble() - 0.5) * 2 * spread;
+        longitudes[i] = longitudes[i] > 180 ? longitudes[i] - 360
+            : longitudes[i] < -180 ? longitudes[i] + 360 : longitudes[i];
+      }
+      for (double radius : radii) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+          if (GeoUtils.findDistanceInKm(source[0], source[1], latitudes[i], longitudes[i])
+              < radius) {
+            expected.add(i);
+          }
+        }
+
+        int found = GeoUtils.findWithinRadius(source[0], source[1], latitudes, longitudes,
+            count, radius, matches);
+
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 0; i < found; i++) {
+          actual.add(matches[i]);
+        }
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void batchSkipsUnknownCoordinates() {
+    double[] latitudes = {20.0, Double.NaN, 20.01};
+    double[] longitudes = {30.0, 30.0, Double.NaN};
+    int[] matches = new int[3];
+
+    assertEquals(1, GeoUtils.findWithinRadius(20.0, 30.0, latitudes, longitudes, 3, 5.0,
+        matches));
+    assertEquals(0, matches[0]);
+  }
+
 }